@@ -0,0 +1,47 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.entity.BankCard;
+import com.example.bankcards.entity.CardStatus;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+// Операции сущности карты, которые выполняются в каждом переводе
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BankCardBenchmark {
+    private static final BigDecimal AMOUNT = new BigDecimal("10.00");
+
+    private BankCard card;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        card = new BankCard("4000000000000001", "John Doe", LocalDate.now().plusYears(3), null);
+        card.setStatus(CardStatus.ACTIVE);
+        // Баланса хватает на все списания итерации
+        card.setBalance(new BigDecimal("1000000000000.00"));
+    }
+
+    @Benchmark
+    public BigDecimal withdraw() {
+        card.withdraw(AMOUNT);
+        return card.getBalance();
+    }
+
+    @Benchmark
+    public BigDecimal deposit() {
+        card.deposit(AMOUNT);
+        return card.getBalance();
+    }
+
+    @Benchmark
+    public boolean isActive() {
+        return card.isActive();
+    }
+}
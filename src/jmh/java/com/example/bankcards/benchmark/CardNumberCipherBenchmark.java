@@ -0,0 +1,67 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.security.CardNumberCipher;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+// Шифрование номера карты: прежняя реализация (дополнение ключа, SecretKeySpec и Cipher.getInstance на каждый вызов)
+// против CardNumberCipher с ключом, выведенным при старте, и Cipher, переиспользуемыми потоком
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CardNumberCipherBenchmark {
+    private static final String SECRET_KEY = "benchmarkSecretKey";
+    private static final String CARD_NUMBER = "4000123456789010";
+
+    private CardNumberCipher cardNumberCipher;
+    private String encryptedNumber;
+
+    @Setup
+    public void setUp() {
+        cardNumberCipher = new CardNumberCipher(SECRET_KEY, "benchmarkBlindIndexKey");
+        encryptedNumber = cardNumberCipher.encrypt(CARD_NUMBER);
+    }
+
+    @Benchmark
+    public String encryptPerCall() throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, legacyKey());
+        return Base64.getEncoder().encodeToString(cipher.doFinal(CARD_NUMBER.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public String decryptPerCall() throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.DECRYPT_MODE, legacyKey());
+        return new String(cipher.doFinal(Base64.getDecoder().decode(encryptedNumber)), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String encryptReused() {
+        return cardNumberCipher.encrypt(CARD_NUMBER);
+    }
+
+    @Benchmark
+    public String decryptReused() {
+        return cardNumberCipher.decrypt(encryptedNumber);
+    }
+
+    @Benchmark
+    public String blindIndex() {
+        return cardNumberCipher.blindIndex(CARD_NUMBER);
+    }
+
+    // Ключ так, как его готовил BankCardService до выноса шифрования
+    private static SecretKeySpec legacyKey() {
+        String key = String.format("%-32s", SECRET_KEY).replace(' ', '0');
+        return new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "AES");
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.config.JwtConfig;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.RevokedTokenRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.UserPrincipal;
+import com.example.bankcards.service.JwtTokenProvider;
+import com.example.bankcards.service.TokenDenylistService;
+import com.example.bankcards.service.TokenVersionService;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.Authentication;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+
+// Стоимость работы с JWT на каждый аутентифицированный запрос
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtTokenProviderBenchmark {
+    private JwtTokenProvider jwtTokenProvider;
+    private TokenDenylistService tokenDenylistService;
+    private User user;
+    private String token;
+    private String legacyToken;
+
+    @Setup
+    public void setUp() {
+        JwtConfig jwtConfig = new JwtConfig();
+        jwtConfig.setSecret("mySuperSecretKeyForJWTEncryption1234567890");
+        jwtConfig.setExpirationMs(86_400_000L);
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findTokenVersionById(42L)).thenReturn(Optional.of(0));
+        TokenVersionService tokenVersionService = new TokenVersionService(userRepository, jwtConfig);
+        jwtTokenProvider = new JwtTokenProvider(jwtConfig, Keys.hmacShaKeyFor(jwtConfig.getSecret().getBytes(StandardCharsets.UTF_8)), tokenVersionService, new SimpleMeterRegistry());
+
+        user = new User("encoded-password", "John", "Doe", Role.ROLE_USER);
+        user.setId(42L);
+        token = jwtTokenProvider.generateToken(user);
+        jwtConfig.setTokenFormat(JwtConfig.TokenFormat.LEGACY);
+        legacyToken = jwtTokenProvider.generateToken(user);
+        jwtConfig.setTokenFormat(JwtConfig.TokenFormat.COMPACT);
+
+        // Denylist с 100 000 отозванных токенов (только в памяти)
+        jwtConfig.getDenylist().setPersistent(false);
+        tokenDenylistService = new TokenDenylistService(mock(RevokedTokenRepository.class), jwtConfig, new SimpleMeterRegistry());
+        Date expiresAt = new Date(System.currentTimeMillis() + 3_600_000L);
+        for (int i = 0; i < 100_000; i++) tokenDenylistService.revoke(UUID.randomUUID().toString(), expiresAt);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtTokenProvider.generateToken(user);
+    }
+
+    @Benchmark
+    public boolean isValid() {
+        return jwtTokenProvider.isValid(token);
+    }
+
+    @Benchmark
+    public Authentication getAuthentication() {
+        return jwtTokenProvider.getAuthentication(token);
+    }
+
+    // Разбор токена без кэша: прежний формат (имя дважды, роль строкой, iat) против компактного
+    @Benchmark
+    public Authentication parseLegacyToken() {
+        return jwtTokenProvider.parseValidClaims(legacyToken).map(jwtTokenProvider::getAuthentication).orElse(null);
+    }
+
+    @Benchmark
+    public Authentication parseCompactToken() {
+        return jwtTokenProvider.parseValidClaims(token).map(jwtTokenProvider::getAuthentication).orElse(null);
+    }
+
+    // Прежняя схема JwtAuthenticationFilter: токен разбирается и проверяется дважды
+    @Benchmark
+    public Authentication filterRequestParseTwice() {
+        return jwtTokenProvider.isValid(token) ? jwtTokenProvider.getAuthentication(token) : null;
+    }
+
+    // Один разбор токена на запрос, без кэша
+    @Benchmark
+    public Authentication filterRequestParseOnce() {
+        return jwtTokenProvider.parseValidClaims(token).map(jwtTokenProvider::getAuthentication).orElse(null);
+    }
+
+    // Текущая схема фильтра: повторный запрос с тем же токеном попадает в кэш
+    @Benchmark
+    public Authentication filterRequest() {
+        return jwtTokenProvider.authenticate(token).orElse(null);
+    }
+
+    // Фильтр вместе с проверкой jti по denylist: разница с filterRequest - один lookup в ConcurrentHashMap
+    @Benchmark
+    public Authentication filterRequestWithDenylist() {
+        Authentication authentication = jwtTokenProvider.authenticate(token).orElse(null);
+        if (authentication == null || tokenDenylistService.isRevoked(((UserPrincipal) authentication.getPrincipal()).getTokenId())) return null;
+        return authentication;
+    }
+}
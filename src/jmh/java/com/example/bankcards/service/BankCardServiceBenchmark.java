@@ -0,0 +1,93 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.BankCard;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.CardNumberCipher;
+import com.example.bankcards.security.UserPrincipal;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+
+// Шифрование номеров карт и список карт getMyCards (маска из card_last4, без расшифровки).
+// Лежит в пакете service, так как encrypt/decrypt доступны только внутри пакета
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BankCardServiceBenchmark {
+    private static final String CARD_NUMBER = "4000123456789010";
+
+    private BankCardService bankCardService;
+    private User owner;
+    private String encryptedNumber;
+    private int requestedCards;
+
+    // Число карт пользователя задаётся только для getMyCards
+    @State(Scope.Thread)
+    public static class MyCards {
+        @Param({"1", "10", "50"})
+        public int cards;
+    }
+
+    @Setup
+    public void setUp() {
+        owner = new User("encoded-password", "John", "Doe", Role.ROLE_USER);
+        owner.setId(1L);
+        BankCardRepository bankCardRepository = mock(BankCardRepository.class);
+        UserRepository userRepository = mock(UserRepository.class);
+        bankCardService = new BankCardService(bankCardRepository, userRepository, mock(LedgerService.class), new CurrentUserService(userRepository),
+                new CardNumberCipher("benchmarkSecretKey", "benchmarkBlindIndexKey"));
+        encryptedNumber = bankCardService.encrypt(CARD_NUMBER);
+
+        // Каждый вызов получает новый список, как после запроса к БД
+        when(bankCardRepository.findByOwnerId(1L)).thenAnswer(invocation -> newCards(requestedCards));
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                new UserPrincipal(owner.getId(), owner.getFirstName(), owner.getLastName(), owner.getRole(), owner.getTokenVersion()), null, List.of()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return bankCardService.encrypt(CARD_NUMBER);
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return bankCardService.decrypt(encryptedNumber);
+    }
+
+    @Benchmark
+    public List<BankCard> getMyCards(MyCards myCards) {
+        requestedCards = myCards.cards;
+        return bankCardService.getMyCards();
+    }
+
+    private List<BankCard> newCards(int cards) {
+        List<BankCard> result = new ArrayList<>(cards);
+        for (int i = 0; i < cards; i++) {
+            BankCard card = new BankCard(encryptedNumber, "John Doe", LocalDate.now().plusYears(3), owner);
+            card.setId((long) i);
+            card.setStatus(CardStatus.ACTIVE);
+            card.setCardLast4(CARD_NUMBER.substring(12));
+            result.add(card);
+        }
+        return result;
+    }
+}
@@ -8,6 +8,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import javax.crypto.SecretKey;
+import java.time.Duration;
 
 @Data
 @Configuration
@@ -15,6 +16,52 @@ import javax.crypto.SecretKey;
 public class JwtConfig {
     private String secret;
     private long expirationMs;
+    // Формат выдаваемых токенов. Разбираются оба; LEGACY оставлен на время выкатки, пока не все экземпляры понимают COMPACT
+    private TokenFormat tokenFormat = TokenFormat.COMPACT;
+    private Cache cache = new Cache();
+    private TokenVersion tokenVersion = new TokenVersion();
+    private RefreshToken refreshToken = new RefreshToken();
+    private Denylist denylist = new Denylist();
+
+    public enum TokenFormat {
+        // sub, username, firstName, lastName, role, ver, jti, iat, exp
+        LEGACY,
+        // sub, v (версия формата), r (код роли), tv (версия токенов, если не 0), jti, exp
+        COMPACT
+    }
+
+    // Кэш уже проверенных токенов: повторный запрос с тем же токеном не проверяет подпись заново
+    @Data
+    public static class Cache {
+        private boolean enabled = true;
+        private int maxSize = 10_000;
+        // Верхняя граница жизни записи; запись никогда не живёт дольше exp самого токена
+        private Duration maxTtl = Duration.ofMinutes(10);
+    }
+
+    // Кэш версий токенов пользователей: сверка версии не ходит в БД на каждый запрос
+    @Data
+    public static class TokenVersion {
+        private int maxSize = 10_000;
+        // Через сколько перечитывать версию из БД (смена роли на другом экземпляре приложения)
+        private Duration ttl = Duration.ofSeconds(30);
+    }
+
+    // Refresh-токены: access-токен (expirationMs) короткий, сессия продлевается обменом refresh-токена
+    @Data
+    public static class RefreshToken {
+        private Duration ttl = Duration.ofDays(30);
+    }
+
+    // Отозванные при logout токены
+    @Data
+    public static class Denylist {
+        // Дублировать отзывы в таблицу revoked_tokens, чтобы они переживали рестарт
+        private boolean persistent = true;
+        // Насколько назад от прошлого опроса перечитывать отзывы: транзакция фиксируется позже revoked_at,
+        // а часы экземпляров расходятся. Повторно прочитанные записи ничего не меняют
+        private Duration refreshOverlap = Duration.ofMinutes(1);
+    }
 
     @Bean
     public SecretKey secretKey() {
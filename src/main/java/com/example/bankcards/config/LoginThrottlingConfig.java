@@ -0,0 +1,30 @@
+package com.example.bankcards.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+// Ограничение частоты попыток входа: отдельные token bucket на имя пользователя и на IP клиента
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "login-throttling")
+public class LoginThrottlingConfig {
+    private boolean enabled = true;
+    private Limit username = new Limit(5, Duration.ofSeconds(30));
+    private Limit ip = new Limit(20, Duration.ofSeconds(3));
+    // Сколько бакетов держим в памяти на каждый вид ключа; новый ключ сверх лимита отклоняется, пока очистка не освободит место
+    private int maxKeys = 100_000;
+
+    // capacity попыток подряд, затем одна попытка за каждый refillInterval
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Limit {
+        private int capacity;
+        private Duration refillInterval;
+    }
+}
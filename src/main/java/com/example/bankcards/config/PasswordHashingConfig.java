@@ -0,0 +1,16 @@
+package com.example.bankcards.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+// Пул для BCrypt: хэширование и проверка паролей не занимают HTTP-потоки сверх этого лимита
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "password-hashing")
+public class PasswordHashingConfig {
+    private int threads = 4;
+    // Сколько операций может ждать свободного потока; при переполнении отвечаем 503
+    private int queueCapacity = 64;
+    private long retryAfterSeconds = 1;
+}
@@ -0,0 +1,62 @@
+package com.example.bankcards.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "transfer")
+public class TransferConfig {
+    // PESSIMISTIC - блокируем строки карт (SELECT ... FOR UPDATE), OPTIMISTIC - проверяем версию карты и повторяем при конфликте,
+    // CONDITIONAL_UPDATE - без чтения карт: списание и зачисление условными UPDATE, успех определяется числом обновлённых строк,
+    // LEDGER - балансы карт не обновляются, перевод дописывает проводки в ledger_entries (карта списания блокируется, карта зачисления - разделяемой блокировкой)
+    private Mode mode = Mode.PESSIMISTIC;
+
+    // Настройки повторов для оптимистичного режима
+    private int maxAttempts = 5;
+    private long initialBackoffMs = 10;
+    private long maxBackoffMs = 200;
+
+    private Idempotency idempotency = new Idempotency();
+
+    private CardLocks cardLocks = new CardLocks();
+
+    private Async async = new Async();
+
+    @Data
+    public static class Idempotency {
+        // Сколько хранить ключи идемпотентности (повторы клиента после таймаутов приходят в пределах минут)
+        private Duration ttl = Duration.ofHours(24);
+        // Размер кэша ключей в памяти перед таблицей idempotency_keys
+        private int cacheSize = 10_000;
+    }
+
+    // Блокировки карт внутри JVM (только для развёртывания в один экземпляр)
+    @Data
+    public static class CardLocks {
+        private boolean enabled = false;
+        private int stripes = 64;
+        private long timeoutMs = 5000;
+    }
+
+    // Асинхронные переводы: ограниченный пул обработчиков и очередь перед ним
+    @Data
+    public static class Async {
+        private int workers = 4;
+        private int queueCapacity = 1000;
+        // Через сколько PENDING-перевод считается потерянным (например, после перезапуска) и ставится в очередь заново
+        private Duration staleAfter = Duration.ofMinutes(5);
+        // Значение Retry-After, когда очередь заполнена
+        private long retryAfterSeconds = 1;
+    }
+
+    public enum Mode {
+        PESSIMISTIC,
+        OPTIMISTIC,
+        CONDITIONAL_UPDATE,
+        LEDGER
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.bankcards.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+// Кэш учётных данных для логина: хэш пароля, id и роль пользователя по имени "Имя Фамилия"
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "user-details-cache")
+public class UserDetailsCacheConfig {
+    private boolean enabled = true;
+    private int maxSize = 10_000;
+    // Локальные изменения вытесняют запись сразу; TTL ограничивает устаревание при изменениях на другом экземпляре
+    private Duration ttl = Duration.ofSeconds(30);
+}
@@ -0,0 +1,17 @@
+package com.example.bankcards.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+// Bloom-фильтр имён пользователей: заведомо несуществующее "Имя Фамилия" не проверяется в БД
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "user-name-filter")
+public class UserNameFilterConfig {
+    private boolean enabled = true;
+    // Целевая доля ложноположительных ответов (имя "возможно есть", а в БД его нет)
+    private double falsePositiveRate = 0.01;
+    // Минимальная ёмкость фильтра; при перестроении берётся не меньше удвоенного числа пользователей
+    private int expectedInsertions = 100_000;
+}
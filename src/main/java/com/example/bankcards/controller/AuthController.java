@@ -2,12 +2,15 @@ package com.example.bankcards.controller;
 
 
 import com.example.bankcards.dto.request.AuthRequest;
+import com.example.bankcards.dto.request.RefreshTokenRequest;
 import com.example.bankcards.dto.response.AuthResponse;
 import com.example.bankcards.service.AuthService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import java.util.Date;
 
@@ -22,9 +25,16 @@ public class AuthController {
         return ResponseEntity.ok("Bank Cards API is running! Use /api endpoints.");
     }
 
+    // Адрес клиента для лимита попыток входа. За прокси его подставляет Tomcat из X-Forwarded-For (server.forward-headers-strategy)
     @PostMapping("/login")
-    public ResponseEntity<AuthResponse> login(@Valid @RequestBody AuthRequest authRequest){
-        AuthResponse response = authService.authenticate(authRequest);
+    public ResponseEntity<AuthResponse> login(@Valid @RequestBody AuthRequest authRequest, HttpServletRequest request){
+        AuthResponse response = authService.authenticate(authRequest, request.getRemoteAddr());
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/refresh")
+    public ResponseEntity<AuthResponse> refresh(@Valid @RequestBody RefreshTokenRequest refreshTokenRequest) {
+        AuthResponse response = authService.refresh(refreshTokenRequest);
         return ResponseEntity.ok(response);
     }
 
@@ -41,8 +51,10 @@ public class AuthController {
     }
 
     @PostMapping("/logout")
-    public ResponseEntity<Void> logout() {
-        authService.logout();
+    public ResponseEntity<Void> logout(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+                                       @RequestBody(required = false) RefreshTokenRequest refreshTokenRequest) {
+        String accessToken = authorization != null && authorization.startsWith("Bearer ") ? authorization.substring(7) : null;
+        authService.logout(accessToken, refreshTokenRequest != null ? refreshTokenRequest.getRefreshToken() : null);
         return ResponseEntity.ok().build();
     }
 
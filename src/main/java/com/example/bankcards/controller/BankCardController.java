@@ -1,6 +1,7 @@
 package com.example.bankcards.controller;
 
 
+import com.example.bankcards.dto.request.CardLookupRequest;
 import com.example.bankcards.dto.response.BankCardResponse;
 import com.example.bankcards.entity.BankCard;
 import com.example.bankcards.entity.CardStatus;
@@ -9,6 +10,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.validation.Valid;
 import java.math.BigDecimal;
 import java.util.List;
 
@@ -37,6 +39,13 @@ public class BankCardController {
         return ResponseEntity.ok(cardNumber);
     }
 
+    // Найти карту по полному номеру
+    @PostMapping("/admin/lookup")
+    public ResponseEntity<BankCard> lookupCard(@Valid @RequestBody CardLookupRequest request) {
+        BankCard card = bankCardService.findCardByNumber(request.getCardNumber());
+        return ResponseEntity.ok(card);
+    }
+
     @PatchMapping("/admin/{cardId}/activate")
     public ResponseEntity<BankCard> activateCard(@PathVariable Long cardId){
         BankCard card = bankCardService.activateCardByAdmin(cardId);
@@ -1,12 +1,17 @@
 package com.example.bankcards.controller;
 
+import com.example.bankcards.dto.request.BatchTransferRequest;
+import com.example.bankcards.dto.response.BatchTransferResponse;
 import com.example.bankcards.entity.Transaction;
+import com.example.bankcards.service.AsyncTransferService;
 import com.example.bankcards.service.TransactionService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.validation.Valid;
 import java.math.BigDecimal;
+import java.net.URI;
 import java.util.List;
 
 @RestController
@@ -14,18 +19,44 @@ import java.util.List;
 @RequiredArgsConstructor
 public class TransactionController {
     private final TransactionService transactionService;
+    private final AsyncTransferService asyncTransferService;
 
-    // Перевод между своими картами
+    // Перевод между своими картами. Необязательный заголовок Idempotency-Key защищает от повторного списания при повторе запроса
     @PostMapping("/transfer/my-cards")
-    public ResponseEntity<Transaction> transferBetweenMyCards(@RequestParam Long fromCardId, @RequestParam Long toCardId, @RequestParam BigDecimal amount, @RequestParam(required = false) String description) {
-        Transaction transaction = transactionService.transferBetweenMyCards(fromCardId, toCardId, amount, description);
+    public ResponseEntity<Transaction> transferBetweenMyCards(@RequestParam Long fromCardId, @RequestParam Long toCardId, @RequestParam BigDecimal amount, @RequestParam(required = false) String description,
+                                                              @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        Transaction transaction = transactionService.transferBetweenMyCards(fromCardId, toCardId, amount, description, idempotencyKey);
         return ResponseEntity.ok(transaction);
     }
 
+    // Асинхронный перевод между своими картами: 202 с id перевода в статусе PENDING, результат - через GET /transactions/{id}
+    @PostMapping("/transfer/my-cards/async")
+    public ResponseEntity<Transaction> submitTransferBetweenMyCards(@RequestParam Long fromCardId, @RequestParam Long toCardId, @RequestParam BigDecimal amount, @RequestParam(required = false) String description,
+                                                                    @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        Transaction transaction = asyncTransferService.submitTransfer(fromCardId, toCardId, amount, description, idempotencyKey);
+        return ResponseEntity.accepted()
+                .location(URI.create("/transactions/" + transaction.getId()))
+                .body(transaction);
+    }
+
+    // Пакетный перевод между своими картами в одной транзакции БД
+    @PostMapping("/transfer/batch")
+    public ResponseEntity<BatchTransferResponse> transferBatch(@Valid @RequestBody BatchTransferRequest request) {
+        BatchTransferResponse response = transactionService.transferBatch(request.getTransfers(), request.isAllOrNothing());
+        return ResponseEntity.ok(response);
+    }
+
     // Получить историю транзакций текущего пользователя
     @GetMapping("/my")
     public ResponseEntity<List<Transaction>> getMyTransactions() {
         List<Transaction> transactions = transactionService.muTransactions();
         return ResponseEntity.ok(transactions);
     }
+
+    // Получить свою транзакцию по id (опрос статуса асинхронного перевода)
+    @GetMapping("/{id}")
+    public ResponseEntity<Transaction> getTransaction(@PathVariable Long id) {
+        Transaction transaction = transactionService.getMyTransaction(id);
+        return ResponseEntity.ok(transaction);
+    }
 }
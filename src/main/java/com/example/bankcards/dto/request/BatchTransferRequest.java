@@ -0,0 +1,18 @@
+package com.example.bankcards.dto.request;
+
+import lombok.Data;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+@Data
+public class BatchTransferRequest {
+    @NotEmpty(message = "Transfers list is required")
+    @Size(max = 1000, message = "Batch must not exceed 1000 transfers")
+    private List<@Valid TransferRequest> transfers;
+
+    // true - если хоть один перевод не прошёл, не применяется ни один; false - применяются все корректные переводы
+    private boolean allOrNothing = true;
+}
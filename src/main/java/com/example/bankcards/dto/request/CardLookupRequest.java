@@ -0,0 +1,15 @@
+package com.example.bankcards.dto.request;
+
+import lombok.Data;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.Pattern;
+
+// Номер передаётся в теле запроса, а не в URL, чтобы не попадать в логи доступа
+@Data
+public class CardLookupRequest {
+
+    @NotBlank(message = "Card number is required")
+    @Pattern(regexp = "^[0-9]{16}$", message = "Card number must be 16 digits")
+    private String cardNumber;
+}
@@ -8,6 +8,8 @@ public class AuthResponse {
     private String lastName;
     private String role;
     private String token;
+    // Одноразовый токен для получения новой пары через /auth/refresh
+    private String refreshToken;
     private Long userId;
 
 }
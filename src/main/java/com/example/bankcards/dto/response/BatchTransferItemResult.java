@@ -0,0 +1,16 @@
+package com.example.bankcards.dto.response;
+
+import com.example.bankcards.entity.TransactionStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchTransferItemResult {
+    private int index;               // Позиция перевода в запросе
+    private TransactionStatus status;
+    private Long transactionId;      // Заполнен только для успешных переводов
+    private String error;
+}
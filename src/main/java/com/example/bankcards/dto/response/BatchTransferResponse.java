@@ -0,0 +1,12 @@
+package com.example.bankcards.dto.response;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchTransferResponse {
+    private int succeeded;
+    private int failed;
+    private List<BatchTransferItemResult> results;
+}
@@ -0,0 +1,55 @@
+package com.example.bankcards.entity;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+// Снимок баланса карты: баланс с учётом всех проводок по карте с id <= lastEntryId
+@Entity
+@Table(name = "card_balance_snapshots",
+        uniqueConstraints = @UniqueConstraint(name = "uk_card_balance_snapshots_card_entry", columnNames = {"card_id", "last_entry_id"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@ToString
+public class BalanceSnapshot {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "card_id", nullable = false)
+    private Long cardId;
+
+    // Только для схемы: внешний ключ с каскадным удалением, как в миграции
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "card_id", insertable = false, updatable = false, foreignKey = @ForeignKey(name = "fk_balance_snapshot_card"))
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private BankCard card;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal balance;
+
+    @Column(name = "last_entry_id", nullable = false)
+    private Long lastEntryId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public BalanceSnapshot(Long cardId, BigDecimal balance, Long lastEntryId) {
+        this.cardId = cardId;
+        this.balance = balance;
+        this.lastEntryId = lastEntryId;
+        this.createdAt = LocalDateTime.now();
+    }
+}
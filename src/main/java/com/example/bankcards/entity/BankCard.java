@@ -16,6 +16,7 @@ import lombok.Setter;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import lombok.ToString;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 @Entity
 @Table(name = "bank_cards")
@@ -33,11 +34,23 @@ public class BankCard {
     private Boolean blockRequested = false; // Флаг запроса на блокировку
     private String blockRequestReason;  // Причина запроса блокировки
 
-    @Column(name = "card_number", nullable = false, length = 16, unique = true)
+    // Номер хранится зашифрованным и в ответы не попадает: полный номер админ получает отдельным запросом.
+    // Формат 16 цифр проверяется до шифрования, шифротекст AES в base64 занимает 44 символа
+    @Column(name = "card_number", nullable = false, length = 64, unique = true)
     @NotBlank(message = "Card number is required")
-    @Pattern(regexp = "^[0-9]{16}$", message = "Card number must contain 16 digits")
+    @JsonIgnore
     private String cardNumber;
 
+    // Слепой индекс номера (HMAC-SHA256, hex): поиск по номеру и его уникальность без расшифровки
+    @Column(name = "card_number_hash", length = 64, unique = true)
+    @JsonIgnore
+    private String cardNumberHash;
+
+    // Последние 4 цифры открытым текстом: маска строится без расшифровки номера
+    @Column(name = "card_last4", length = 4)
+    @JsonIgnore
+    private String cardLast4;
+
     @Column(name = "card_owner_name", nullable = false, length = 100)
     @NotBlank(message = "Card owner name is required")
     @Size(max = 100, message = "Card holder name must not exceed 100 characters")
@@ -63,6 +76,11 @@ public class BankCard {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    // Версия для оптимистичной блокировки при переводах
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false, foreignKey = @ForeignKey(name = "fk_card_user"))
     @NotNull(message = "Card owner is required")
@@ -80,12 +98,11 @@ public class BankCard {
     @PostLoad
     @PostPersist
     @PostUpdate
-    // Маскируем номер карты, оставляя только последние 4 цифры
+    // Маскируем номер карты, оставляя только последние 4 цифры.
+    // Пишем в transient-поле: само поле cardNumber не трогаем, иначе Hibernate посчитает сущность изменённой
+    // и при любом flush (например, при переводе) перезапишет номер карты маской
     private void maskCardNumber(){
-        if (cardNumber != null && cardNumber.length() >=4){
-            String lastFour = cardNumber.substring(cardNumber.length() - 4);
-            cardNumber = "**** **** **** " + lastFour;
-        }else cardNumber = "**** **** **** ****";
+        maskedCardNumber = "**** **** **** " + getFourDigits();
     }
 
 
@@ -183,14 +200,23 @@ public class BankCard {
     }
 
     // Получить последние 4 цифры номера карты
+    // Пока фоновое заполнение не дошло до карты, колонка пуста
     public String getFourDigits(){
-        if (cardNumber != null && cardNumber.length() >= 4)return cardNumber.substring(cardNumber.length() - 4);
-        return "****";
+        return cardLast4 != null ? cardLast4 : "****";
+    }
+
+    // Последние 4 цифры открытого номера карты
+    public static String lastFourOf(String cardNumber){
+        return cardNumber.substring(cardNumber.length() - 4);
     }
 
     // Проверка владельца карты
     public boolean isOwnedBy(User user){
-        return this.owner.getId().equals(user.getId());
+        return isOwnedBy(user.getId());
+    }
+
+    public boolean isOwnedBy(Long userId){
+        return this.owner.getId().equals(userId);
     }
 
     @Override
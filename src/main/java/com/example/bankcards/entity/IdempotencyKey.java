@@ -0,0 +1,47 @@
+package com.example.bankcards.entity;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+// Ключ идемпотентности перевода: повтор запроса с тем же ключом возвращает уже созданную транзакцию
+@Entity
+@Table(name = "idempotency_keys",
+        uniqueConstraints = @UniqueConstraint(name = "uk_idempotency_keys_user_key", columnNames = {"user_id", "idempotency_key"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@ToString
+public class IdempotencyKey {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "idempotency_key", nullable = false, length = 100)
+    private String key;
+
+    // Параметры исходного перевода: тот же ключ с другими параметрами - ошибка клиента
+    @Column(name = "request_fingerprint", nullable = false, length = 100)
+    private String requestFingerprint;
+
+    @Column(name = "transaction_id", nullable = false)
+    private Long transactionId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public IdempotencyKey(Long userId, String key, String requestFingerprint, Long transactionId) {
+        this.userId = userId;
+        this.key = key;
+        this.requestFingerprint = requestFingerprint;
+        this.transactionId = transactionId;
+        this.createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.bankcards.entity;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+// Проводка по карте. Таблица только дополняется: каждый перевод даёт одну DEBIT- и одну CREDIT-запись на ту же сумму
+@Entity
+@Table(name = "ledger_entries")
+@Getter
+@Setter
+@NoArgsConstructor
+@ToString
+public class LedgerEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Ссылки храним id, а не сущностями: запись проводки не должна загружать карту или транзакцию
+    @Column(name = "card_id", nullable = false)
+    private Long cardId;
+
+    @Column(name = "transaction_id", nullable = false)
+    private Long transactionId;
+
+    // Только для схемы: внешние ключи с каскадным удалением, как в миграции. Проводки удаляются вместе с картой или транзакцией
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "card_id", insertable = false, updatable = false, foreignKey = @ForeignKey(name = "fk_ledger_entry_card"))
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private BankCard card;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "transaction_id", insertable = false, updatable = false, foreignKey = @ForeignKey(name = "fk_ledger_entry_transaction"))
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private Transaction transaction;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "entry_type", nullable = false, length = 10)
+    private LedgerEntryType type;
+
+    // Сумма всегда положительная, направление задаёт type
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal amount;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public LedgerEntry(Long cardId, Long transactionId, LedgerEntryType type, BigDecimal amount) {
+        this.cardId = cardId;
+        this.transactionId = transactionId;
+        this.type = type;
+        this.amount = amount;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public static LedgerEntry debit(Transaction transaction) {
+        return new LedgerEntry(transaction.getFromCard().getId(), transaction.getId(), LedgerEntryType.DEBIT, transaction.getAmount());
+    }
+
+    public static LedgerEntry credit(Transaction transaction) {
+        return new LedgerEntry(transaction.getToCard().getId(), transaction.getId(), LedgerEntryType.CREDIT, transaction.getAmount());
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.bankcards.entity;
+
+public enum LedgerEntryType {
+    DEBIT,
+    CREDIT;
+}
@@ -1,6 +1,24 @@
 package com.example.bankcards.entity;
 
 public enum Role {
-    ROLE_USER,
-    ROLE_ADMIN;
-}
\ No newline at end of file
+    ROLE_USER(0),
+    ROLE_ADMIN(1);
+
+    // Код роли в компактном JWT. Коды не меняются при добавлении новых ролей
+    private final int code;
+
+    Role(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public static Role fromCode(int code) {
+        for (Role role : values()) {
+            if (role.code == code) return role;
+        }
+        throw new IllegalArgumentException("Unknown role code: " + code);
+    }
+}
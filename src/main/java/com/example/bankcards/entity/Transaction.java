@@ -49,6 +49,10 @@ public class Transaction {
     @Column(nullable = false, length = 20)
     private TransactionStatus status = TransactionStatus.PENDING;
 
+    // Причина отказа асинхронного перевода (для статуса FAILED)
+    @Column(name = "failure_reason", length = 255)
+    private String failureReason;
+
     @PrePersist
     protected void onCreate() {
         if (timestamp == null) timestamp = LocalDateTime.now();
@@ -71,6 +75,10 @@ public class Transaction {
     }
 
     public boolean isOwnedBy(User user) {
-        return fromCard.isOwnedBy(user) || toCard.isOwnedBy(user);
+        return isOwnedBy(user.getId());
+    }
+
+    public boolean isOwnedBy(Long userId) {
+        return fromCard.isOwnedBy(userId) || toCard.isOwnedBy(userId);
     }
 }
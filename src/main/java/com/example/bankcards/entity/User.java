@@ -15,7 +15,7 @@ import lombok.AllArgsConstructor;
 import lombok.ToString;
 
 @Entity
-@Table(name = "users")
+@Table(name = "users", uniqueConstraints = @UniqueConstraint(name = "uk_users_first_name_last_name", columnNames = {"first_name", "last_name"}))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -46,6 +46,10 @@ public class User {
     @Column(nullable= false)
     private Role role;
 
+    // Версия токенов пользователя: увеличивается при смене роли, токены со старой версией перестают приниматься
+    @Column(name = "token_version", nullable = false)
+    private int tokenVersion;
+
     @OneToMany(mappedBy = "owner", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<BankCard> cards = new ArrayList<>();
 
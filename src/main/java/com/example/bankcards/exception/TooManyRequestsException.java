@@ -0,0 +1,15 @@
+package com.example.bankcards.exception;
+
+// Клиент превысил допустимую частоту запросов: отвечаем 429 с заголовком Retry-After
+public class TooManyRequestsException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public TooManyRequestsException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.BalanceSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface BalanceSnapshotRepository extends JpaRepository<BalanceSnapshot, Long> {
+
+    // Последний снимок баланса карты
+    Optional<BalanceSnapshot> findFirstByCardIdOrderByLastEntryIdDesc(Long cardId);
+
+    // Выровнять последние снимки карт по bank_cards.balance там, где баланс карты менялся вне журнала (вход в режим LEDGER)
+    @Modifying
+    @Query("UPDATE BalanceSnapshot s SET s.balance = (SELECT c.balance FROM BankCard c WHERE c.id = s.cardId) " +
+            "WHERE s.lastEntryId = (SELECT MAX(l.lastEntryId) FROM BalanceSnapshot l WHERE l.cardId = s.cardId) " +
+            "AND s.balance <> (SELECT c.balance FROM BankCard c WHERE c.id = s.cardId)")
+    int alignLatestWithCardBalances();
+
+    // Удалить снимки карты, вытесненные более новым
+    @Modifying
+    @Query("DELETE FROM BalanceSnapshot s WHERE s.cardId = :cardId AND s.lastEntryId < :lastEntryId")
+    int deleteOlderThan(@Param("cardId") Long cardId, @Param("lastEntryId") Long lastEntryId);
+}
@@ -6,12 +6,18 @@ import com.example.bankcards.entity.CardStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -27,6 +33,52 @@ public interface BankCardRepository extends JpaRepository<BankCard, Long> {
     // Найти конкретную карту пользователя
     Optional<BankCard> findByIdAndOwnerId(Long id, Long ownerId);
 
+    // Найти карту пользователя и заблокировать строку до конца транзакции (SELECT ... FOR UPDATE).
+    // Таймаут ожидания блокировки ограничен, чтобы запрос не висел бесконечно на "горячей" карте
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "5000"))
+    @Query("SELECT c FROM BankCard c WHERE c.id = :id AND c.owner.id = :ownerId")
+    Optional<BankCard> findByIdAndOwnerIdForUpdate(@Param("id") Long id, @Param("ownerId") Long ownerId);
+
+    // Разделяемая блокировка карты (SELECT ... FOR SHARE): карта зачисления в режиме LEDGER. Зачисления друг друга не ждут,
+    // а снимок баланса, берущий FOR UPDATE, дождётся конца перевода и не пропустит его проводку
+    @Lock(LockModeType.PESSIMISTIC_READ)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "5000"))
+    @Query("SELECT c FROM BankCard c WHERE c.id = :id AND c.owner.id = :ownerId")
+    Optional<BankCard> findByIdAndOwnerIdForShare(@Param("id") Long id, @Param("ownerId") Long ownerId);
+
+    // Заблокировать строку карты по id (снимки баланса по журналу проводок)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "5000"))
+    @Query("SELECT c FROM BankCard c WHERE c.id = :id")
+    Optional<BankCard> findByIdForUpdate(@Param("id") Long id);
+
+    // То же для набора карт (пакетный перевод): строки блокируются в порядке возрастания id
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "5000"))
+    @Query("SELECT c FROM BankCard c WHERE c.id IN :ids AND c.owner.id = :ownerId ORDER BY c.id")
+    List<BankCard> findAllByIdInAndOwnerIdForUpdate(@Param("ids") Collection<Long> ids, @Param("ownerId") Long ownerId);
+
+    // Списать деньги одним запросом: строка обновится, только если карта принадлежит пользователю,
+    // активна, не просрочена и на ней хватает средств. Возвращает количество обновлённых строк (0 или 1)
+    @Modifying
+    @Query("UPDATE BankCard c SET c.balance = c.balance - :amount, c.version = c.version + 1, c.updatedAt = CURRENT_TIMESTAMP " +
+            "WHERE c.id = :id AND c.owner.id = :ownerId AND c.status = com.example.bankcards.entity.CardStatus.ACTIVE " +
+            "AND c.validityPeriod > CURRENT_DATE AND c.balance >= :amount")
+    int debitIfSufficient(@Param("id") Long id, @Param("ownerId") Long ownerId, @Param("amount") BigDecimal amount);
+
+    // Зачислить деньги одним запросом на активную непросроченную карту пользователя
+    @Modifying
+    @Query("UPDATE BankCard c SET c.balance = c.balance + :amount, c.version = c.version + 1, c.updatedAt = CURRENT_TIMESTAMP " +
+            "WHERE c.id = :id AND c.owner.id = :ownerId AND c.status = com.example.bankcards.entity.CardStatus.ACTIVE " +
+            "AND c.validityPeriod > CURRENT_DATE")
+    int creditIfActive(@Param("id") Long id, @Param("ownerId") Long ownerId, @Param("amount") BigDecimal amount);
+
+    // Записать баланс из снимка журнала проводок (режим LEDGER): колонка показывает баланс на момент последнего снимка
+    @Modifying
+    @Query("UPDATE BankCard c SET c.balance = :balance, c.version = c.version + 1, c.updatedAt = CURRENT_TIMESTAMP WHERE c.id = :id")
+    int updateBalance(@Param("id") Long id, @Param("balance") BigDecimal balance);
+
     // Найти карты по статусу
     List<BankCard> findByStatus(CardStatus status);
 
@@ -42,4 +94,26 @@ public interface BankCardRepository extends JpaRepository<BankCard, Long> {
             @Param("search") String search,
             Pageable pageable);
 
+    // Поиск карты по слепому индексу номера: одно обращение к уникальному индексу вместо расшифровки всех карт
+    Optional<BankCard> findByCardNumberHash(String cardNumberHash);
+
+    boolean existsByCardNumberHash(String cardNumberHash);
+
+    boolean existsByCardNumberHashAndIdNot(String cardNumberHash, Long id);
+
+    // Следующая порция карт без card_last4 или слепого индекса (по возрастанию id) для фонового заполнения
+    @Query("SELECT c.id AS id, c.cardNumber AS cardNumber FROM BankCard c " +
+            "WHERE (c.cardLast4 IS NULL OR c.cardNumberHash IS NULL) AND c.id > :afterId ORDER BY c.id")
+    List<CardNumber> findCardNumbersToBackfill(@Param("afterId") Long afterId, Pageable pageable);
+
+    // Версию и updatedAt не трогаем: колонки производные от номера и не должны мешать переводам
+    @Modifying
+    @Query("UPDATE BankCard c SET c.cardLast4 = COALESCE(c.cardLast4, :last4), c.cardNumberHash = COALESCE(c.cardNumberHash, :hash) " +
+            "WHERE c.id = :id")
+    int updateDerivedNumberColumns(@Param("id") Long id, @Param("last4") String last4, @Param("hash") String hash);
+
+    interface CardNumber {
+        Long getId();
+        String getCardNumber();
+    }
 }
\ No newline at end of file
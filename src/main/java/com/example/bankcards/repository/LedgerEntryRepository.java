@@ -0,0 +1,33 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.LedgerEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Repository
+public interface LedgerEntryRepository extends JpaRepository<LedgerEntry, Long> {
+
+    // Изменение баланса карты по проводкам с id в диапазоне (afterId, upToId]
+    @Query("SELECT COALESCE(SUM(CASE WHEN e.type = com.example.bankcards.entity.LedgerEntryType.CREDIT THEN e.amount ELSE -e.amount END), 0) " +
+            "FROM LedgerEntry e WHERE e.cardId = :cardId AND e.id > :afterId AND e.id <= :upToId")
+    BigDecimal sumBetween(@Param("cardId") Long cardId, @Param("afterId") Long afterId, @Param("upToId") Long upToId);
+
+    // Последняя проводка карты
+    @Query("SELECT MAX(e.id) FROM LedgerEntry e WHERE e.cardId = :cardId")
+    Long findMaxIdByCardId(@Param("cardId") Long cardId);
+
+    // Карты, у которых есть проводки после последнего снимка карты (или вообще без снимка)
+    @Query("SELECT c.id FROM BankCard c WHERE EXISTS (SELECT e.id FROM LedgerEntry e WHERE e.cardId = c.id " +
+            "AND e.id > COALESCE((SELECT MAX(s.lastEntryId) FROM BalanceSnapshot s WHERE s.cardId = c.id), 0))")
+    List<Long> findCardIdsWithEntriesAfterSnapshot();
+
+    // Другие карты в переводах с картой: их проводки удаляются каскадом вместе с транзакциями удаляемой карты
+    @Query("SELECT DISTINCT e.cardId FROM LedgerEntry e WHERE e.cardId <> :cardId AND e.transactionId IN " +
+            "(SELECT t.id FROM Transaction t WHERE t.fromCard.id = :cardId OR t.toCard.id = :cardId)")
+    List<Long> findCounterpartCardIds(@Param("cardId") Long cardId);
+}
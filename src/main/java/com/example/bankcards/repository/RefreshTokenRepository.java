@@ -0,0 +1,38 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.RefreshToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+
+    // Найти refresh-токен по хэшу
+    Optional<RefreshToken> findByTokenHash(String tokenHash);
+
+    // Пометить токен использованным, если его ещё никто не использовал. 0 - токен уже обменян параллельным запросом или раньше
+    @Modifying
+    @Query("UPDATE RefreshToken t SET t.usedAt = :usedAt WHERE t.id = :id AND t.usedAt IS NULL")
+    int markUsed(@Param("id") Long id, @Param("usedAt") LocalDateTime usedAt);
+
+    // Отозвать один refresh-токен по хэшу
+    @Modifying
+    @Query("DELETE FROM RefreshToken t WHERE t.tokenHash = :tokenHash")
+    int deleteByTokenHash(@Param("tokenHash") String tokenHash);
+
+    // Отозвать все refresh-токены пользователя
+    @Modifying
+    @Query("DELETE FROM RefreshToken t WHERE t.userId = :userId")
+    int deleteByUserId(@Param("userId") Long userId);
+
+    // Удалить истёкшие токены (одним запросом, без загрузки сущностей)
+    @Modifying
+    @Query("DELETE FROM RefreshToken t WHERE t.expiresAt < :threshold")
+    int deleteExpiredBefore(@Param("threshold") LocalDateTime threshold);
+}
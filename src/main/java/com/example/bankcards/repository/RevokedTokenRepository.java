@@ -0,0 +1,26 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.RevokedToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, String> {
+
+    // Отозванные токены, которые ещё не истекли
+    List<RevokedToken> findByExpiresAtAfter(LocalDateTime threshold);
+
+    // Ещё не истекшие токены, отозванные после указанного момента (в том числе на других экземплярах)
+    List<RevokedToken> findByRevokedAtAfterAndExpiresAtAfter(LocalDateTime revokedAfter, LocalDateTime expiresAfter);
+
+    // Удалить записи о токенах, которые истекли бы сами (одним запросом, без загрузки сущностей)
+    @Modifying
+    @Query("DELETE FROM RevokedToken t WHERE t.expiresAt < :threshold")
+    int deleteExpiredBefore(@Param("threshold") LocalDateTime threshold);
+}
@@ -0,0 +1,67 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.LedgerEntry;
+import com.example.bankcards.entity.Transaction;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Запись пакетных переводов через JDBC-батчи: Hibernate не батчит INSERT для IDENTITY-ключей,
+// а обновление карт целиком сущностями для тысяч переводов слишком дорогое
+@Repository
+@RequiredArgsConstructor
+public class TransactionBatchRepository {
+    private final JdbcTemplate jdbcTemplate;
+
+    // Записать новые балансы карт одним батчем. Строки карт должны быть заблокированы в текущей транзакции
+    public void updateBalances(Map<Long, BigDecimal> balances) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> args = new ArrayList<>(balances.size());
+        balances.forEach((cardId, balance) -> args.add(new Object[]{balance, now, cardId}));
+        jdbcTemplate.batchUpdate("UPDATE bank_cards SET balance = ?, version = version + 1, updated_at = ? WHERE id = ?", args);
+    }
+
+    // Вставить транзакции одним батчем и вернуть сгенерированные id в порядке списка
+    public List<Long> insertTransactions(List<Transaction> transactions) {
+        String sql = "INSERT INTO transactions (from_card_id, to_card_id, amount, timestamp, description, status) VALUES (?, ?, ?, ?, ?, ?)";
+        return jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql, new String[]{"id"})) {
+                for (Transaction transaction : transactions) {
+                    statement.setLong(1, transaction.getFromCard().getId());
+                    statement.setLong(2, transaction.getToCard().getId());
+                    statement.setBigDecimal(3, transaction.getAmount());
+                    statement.setTimestamp(4, Timestamp.valueOf(transaction.getTimestamp()));
+                    statement.setString(5, transaction.getDescription());
+                    statement.setString(6, transaction.getStatus().name());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+
+                List<Long> ids = new ArrayList<>(transactions.size());
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    while (keys.next()) ids.add(keys.getLong(1));
+                }
+                return ids;
+            }
+        });
+    }
+
+    // Вставить проводки журнала одним батчем
+    public void insertLedgerEntries(List<LedgerEntry> entries) {
+        List<Object[]> args = new ArrayList<>(entries.size());
+        for (LedgerEntry entry : entries) {
+            args.add(new Object[]{entry.getCardId(), entry.getTransactionId(), entry.getType().name(), entry.getAmount(), Timestamp.valueOf(entry.getCreatedAt())});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO ledger_entries (card_id, transaction_id, entry_type, amount, created_at) VALUES (?, ?, ?, ?, ?)", args);
+    }
+}
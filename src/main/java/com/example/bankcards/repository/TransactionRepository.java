@@ -6,10 +6,15 @@ import com.example.bankcards.entity.TransactionStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -41,4 +46,24 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
     // Найти транзакции за период времени
     List<Transaction> findByTimestampBetween(LocalDateTime start, LocalDateTime end);
 
+    // Найти транзакцию и заблокировать строку до конца транзакции БД (обработка асинхронного перевода)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "5000"))
+    @Query("SELECT t FROM Transaction t WHERE t.id = :id")
+    Optional<Transaction> findByIdForUpdate(@Param("id") Long id);
+
+    // Владелец карт перевода (переводы только между своими картами)
+    @Query("SELECT t.fromCard.owner.id FROM Transaction t WHERE t.id = :id")
+    Optional<Long> findOwnerIdById(@Param("id") Long id);
+
+    // id транзакций в указанном статусе, созданных раньше момента
+    @Query("SELECT t.id FROM Transaction t WHERE t.status = :status AND t.timestamp < :before ORDER BY t.id")
+    List<Long> findIdsByStatusAndTimestampBefore(@Param("status") TransactionStatus status, @Param("before") LocalDateTime before);
+
+    // Перевести транзакцию в FAILED, только если она ещё PENDING
+    @Modifying
+    @Query("UPDATE Transaction t SET t.status = com.example.bankcards.entity.TransactionStatus.FAILED, t.failureReason = :reason " +
+            "WHERE t.id = :id AND t.status = com.example.bankcards.entity.TransactionStatus.PENDING")
+    int markFailed(@Param("id") Long id, @Param("reason") String reason);
+
 }
\ No newline at end of file
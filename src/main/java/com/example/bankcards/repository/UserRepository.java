@@ -6,11 +6,14 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
@@ -46,8 +49,22 @@ public interface UserRepository extends JpaRepository<User, Long> {
     List<User> findUsersWithoutCards();
 
 
+    // Текущая версия токенов пользователя (проверка токена без загрузки всей сущности)
+    @Query("SELECT u.tokenVersion FROM User u WHERE u.id = :id")
+    Optional<Integer> findTokenVersionById(@Param("id") Long id);
+
+    // Имена пользователей с id больше заданного - потоком и без загрузки сущностей, для фильтра имён
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query("SELECT u.id AS id, u.firstName AS firstName, u.lastName AS lastName FROM User u WHERE u.id > :afterId")
+    Stream<UserName> streamNamesAfterId(@Param("afterId") Long afterId);
+
     // Для административных функций
     @Query("SELECT u FROM User u ORDER BY u.firstName, u.lastName")
     List<User> findAllOrderByName();
 
-}
\ No newline at end of file
+    interface UserName {
+        Long getId();
+        String getFirstName();
+        String getLastName();
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import lombok.Getter;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.List;
+
+// UserDetails с данными пользователя, нужными для выдачи токена: после аутентификации AuthService не читает пользователя из БД повторно
+@Getter
+public class BankUserDetails extends org.springframework.security.core.userdetails.User {
+    private final Long id;
+    private final String firstName;
+    private final String lastName;
+    private final Role role;
+    private final int tokenVersion;
+
+    public BankUserDetails(Long id, String firstName, String lastName, String password, Role role, int tokenVersion) {
+        super(firstName + " " + lastName, password, List.of(new SimpleGrantedAuthority(role.name())));
+        this.id = id;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.role = role;
+        this.tokenVersion = tokenVersion;
+    }
+
+    public BankUserDetails(User user) {
+        this(user.getId(), user.getFirstName(), user.getLastName(), user.getPassword(), user.getRole(), user.getTokenVersion());
+    }
+
+    // Новый экземпляр с теми же данными: ProviderManager стирает пароль в UserDetails после аутентификации
+    public BankUserDetails copy() {
+        return new BankUserDetails(id, firstName, lastName, getPassword(), role, tokenVersion);
+    }
+
+    // Пользователь без пароля и карт - достаточно для выдачи токенов и ответа на логин
+    public User toUser() {
+        User user = new User(null, firstName, lastName, role);
+        user.setId(id);
+        user.setTokenVersion(tokenVersion);
+        return user;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.bankcards.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.HexFormat;
+
+// Шифрование номеров карт (AES/ECB/PKCS5Padding). Ключ выводится из encryption.secret-key один раз при старте,
+// а инициализированные Cipher переиспользуются потоком: без поиска провайдера и init на каждый номер.
+// Для поиска и уникальности номера - слепой индекс HMAC-SHA256 на отдельном ключе encryption.blind-index-key
+@Component
+public class CardNumberCipher {
+    private static final String TRANSFORMATION = "AES/ECB/PKCS5Padding";
+    // AES требует ключи длиной 16, 24 или 32 байта
+    private static final int KEY_LENGTH = 32; // 256-bit
+    private static final String BLIND_INDEX_ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec keySpec;
+    private final SecretKeySpec blindIndexKeySpec;
+    private final ThreadLocal<Cipher> encryptCipher;
+    private final ThreadLocal<Cipher> decryptCipher;
+    private final ThreadLocal<Mac> blindIndexMac;
+
+    public CardNumberCipher(@Value("${encryption.secret-key:defaultSecretKey}") String secretKey,
+                            @Value("${encryption.blind-index-key:defaultBlindIndexKey}") String blindIndexKey) {
+        this.keySpec = new SecretKeySpec(ensureKeyLength(secretKey).getBytes(StandardCharsets.UTF_8), "AES");
+        this.blindIndexKeySpec = new SecretKeySpec(blindIndexKey.getBytes(StandardCharsets.UTF_8), BLIND_INDEX_ALGORITHM);
+        this.encryptCipher = ThreadLocal.withInitial(() -> newCipher(Cipher.ENCRYPT_MODE));
+        this.decryptCipher = ThreadLocal.withInitial(() -> newCipher(Cipher.DECRYPT_MODE));
+        this.blindIndexMac = ThreadLocal.withInitial(this::newMac);
+        // Неподходящий ключ обнаруживается при старте, а не на первой карте
+        encryptCipher.get();
+        blindIndexMac.get();
+    }
+
+    public String encrypt(String data) {
+        try {
+            byte[] encrypted = encryptCipher.get().doFinal(data.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(encrypted);
+        } catch (Exception e) {
+            // После ошибки состояние Cipher не определено - поток создаст новый
+            encryptCipher.remove();
+            throw new RuntimeException("Encryption failed", e);
+        }
+    }
+
+    public String decrypt(String encryptedData) {
+        try {
+            byte[] decoded = Base64.getDecoder().decode(encryptedData);
+            byte[] decrypted = decryptCipher.get().doFinal(decoded);
+            return new String(decrypted, StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            decryptCipher.remove();
+            throw new RuntimeException("Decryption failed", e);
+        }
+    }
+
+    // Слепой индекс номера: 64 hex-символа HMAC-SHA256. Одинаковые номера дают одинаковый индекс,
+    // но без ключа по индексу номер не подобрать (в отличие от простого хэша 16 цифр)
+    public String blindIndex(String cardNumber) {
+        return HexFormat.of().formatHex(blindIndexMac.get().doFinal(cardNumber.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // doFinal возвращает Cipher в состояние после init, поэтому один экземпляр служит потоку для любого числа номеров
+    private Cipher newCipher(int mode) {
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(mode, keySpec);
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Invalid card encryption key", e);
+        }
+    }
+
+    // Mac после doFinal готов к следующему номеру, как и Cipher
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(BLIND_INDEX_ALGORITHM);
+            mac.init(blindIndexKeySpec);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Invalid card blind index key", e);
+        }
+    }
+
+    // Дополняем нулями или обрезаем ключ до нужной длины - так же, как раньше, чтобы читались уже сохранённые номера
+    private static String ensureKeyLength(String key) {
+        if (key.length() == KEY_LENGTH) {
+            return key;
+        }
+        if (key.length() < KEY_LENGTH) {
+            return String.format("%-" + KEY_LENGTH + "s", key).replace(' ', '0');
+        }
+        return key.substring(0, KEY_LENGTH);
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.bankcards.security;
 
 import com.example.bankcards.service.JwtTokenProvider;
+import com.example.bankcards.service.TokenDenylistService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -12,12 +13,14 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Optional;
 
 @Component
 @RequiredArgsConstructor
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtTokenProvider jwtTokenProvider;
+    private final TokenDenylistService tokenDenylistService;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
@@ -27,10 +30,11 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
         try {
             String token = getTokenFromRequest(request);
+            // Токен разбирается и проверяется один раз, повторные запросы с тем же токеном берутся из кэша
+            Optional<Authentication> authentication = token != null ? jwtTokenProvider.authenticate(token) : Optional.empty();
 
-            if (token != null && jwtTokenProvider.isValid(token)) {
-                Authentication authentication = jwtTokenProvider.getAuthentication(token);
-                SecurityContextHolder.getContext().setAuthentication(authentication);
+            if (authentication.isPresent() && !isRevoked(authentication.get())) {
+                SecurityContextHolder.getContext().setAuthentication(authentication.get());
             } else {
                 // Если токен не валидный, возвращаем 401
                 response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
@@ -46,13 +50,20 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     }
 
 
+    // Токен отозван через logout; проверяется после кэша, чтобы отзыв действовал и на закэшированные токены
+    private boolean isRevoked(Authentication authentication) {
+        Object principal = authentication.getPrincipal();
+        return principal instanceof UserPrincipal && tokenDenylistService.isRevoked(((UserPrincipal) principal).getTokenId());
+    }
+
     private boolean isPublicEndpoint(HttpServletRequest request) {
         String path = request.getServletPath();
         return path.startsWith("/auth/") ||
                 path.startsWith("/public/") ||
                 path.contains("/swagger-ui/") ||
                 path.contains("/v3/api-docs/") ||
-                path.equals("/actuator/health");
+                path.equals("/actuator/health") ||
+                path.startsWith("/actuator/health/");
     }
 
     private String getTokenFromRequest(HttpServletRequest request) {
@@ -0,0 +1,90 @@
+package com.example.bankcards.security;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Token bucket без блокировок (GCRA): на ключ хранится одно число - момент, когда бакет снова станет полным.
+// Попытка - это CAS этого числа, поэтому отказ стоит микросекунды и не трогает БД и BCrypt
+public class TokenBucketLimiter {
+    // Бакет удалён очисткой; поток, который его видит, должен взять из карты новый
+    private static final long REMOVED = Long.MIN_VALUE;
+
+    private final long refillIntervalNanos;
+    private final long burstNanos;
+    private final int maxKeys;
+    private final LongSupplier nanoClock;
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    // Когда при переполнении можно снова пройти карту очисткой
+    private final AtomicLong nextSweepAt;
+    private final LongAdder rejectedNewKeys = new LongAdder();
+
+    public TokenBucketLimiter(int capacity, long refillIntervalNanos, int maxKeys, LongSupplier nanoClock) {
+        this.refillIntervalNanos = refillIntervalNanos;
+        this.burstNanos = refillIntervalNanos * capacity;
+        this.maxKeys = maxKeys;
+        this.nanoClock = nanoClock;
+        this.nextSweepAt = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    // 0 - попытка разрешена и токен списан; иначе через сколько наносекунд появится следующий токен.
+    // Новый ключ, для которого нет места даже после очистки, ограничивается на refillInterval: иначе перебор
+    // с уникальными ключами, заполнив карту, обходил бы лимит
+    public long tryAcquire(String key) {
+        while (true) {
+            AtomicLong bucket = buckets.get(key);
+            if (bucket == null) {
+                if (buckets.size() >= maxKeys && !makeRoom()) {
+                    rejectedNewKeys.increment();
+                    return refillIntervalNanos;
+                }
+                bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(nanoClock.getAsLong()));
+            }
+            long now = nanoClock.getAsLong();
+            long fullAt = bucket.get();
+            if (fullAt == REMOVED) {
+                buckets.remove(key, bucket);
+                continue;
+            }
+            long next = Math.max(fullAt, now) + refillIntervalNanos;
+            long wait = next - now - burstNanos;
+            if (wait > 0) return wait;
+            if (bucket.compareAndSet(fullAt, next)) return 0;
+        }
+    }
+
+    // Удалить полные бакеты: такой ключ ничем не отличается от нового. CAS в REMOVED не даёт потерять параллельное списание
+    public int evictIdle() {
+        long now = nanoClock.getAsLong();
+        int evicted = 0;
+        for (Map.Entry<String, AtomicLong> entry : buckets.entrySet()) {
+            AtomicLong bucket = entry.getValue();
+            long fullAt = bucket.get();
+            if (fullAt != REMOVED && fullAt - now <= 0 && bucket.compareAndSet(fullAt, REMOVED)) {
+                buckets.remove(entry.getKey(), bucket);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    // Синхронная очистка при переполнении. Она проходит всю карту, поэтому запускается одним потоком и не чаще раза
+    // в refillInterval (раньше ни один бакет не успеет стать полным); остальные новые ключи в это время ограничиваются
+    private boolean makeRoom() {
+        long now = nanoClock.getAsLong();
+        long sweepAt = nextSweepAt.get();
+        if (now - sweepAt >= 0 && nextSweepAt.compareAndSet(sweepAt, now + refillIntervalNanos)) evictIdle();
+        return buckets.size() < maxKeys;
+    }
+
+    // Сколько новых ключей ограничено из-за того, что для них не нашлось места
+    public long rejectedNewKeys() {
+        return rejectedNewKeys.sum();
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.bankcards.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+// SHA-256 токенов: ключ кэша проверенных access-токенов и хэш refresh-токена в таблице refresh_tokens
+public final class TokenHashes {
+
+    private TokenHashes() {
+    }
+
+    // 64 hex-символа
+    public static String sha256Hex(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.Role;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.security.Principal;
+
+// Аутентифицированный пользователь, собранный из claims JWT: сервисам не нужно искать его в БД по имени
+@Getter
+@RequiredArgsConstructor
+public class UserPrincipal implements Principal {
+    private final Long id;
+    // Имя и фамилия есть только в токенах формата LEGACY, иначе null
+    private final String firstName;
+    private final String lastName;
+    private final Role role;
+    // Версия токенов пользователя на момент выдачи токена
+    private final int tokenVersion;
+    // jti токена, по которому пользователь вошёл; по нему токен отзывается при logout. null - токен без jti
+    private final String tokenId;
+
+    public UserPrincipal(Long id, String firstName, String lastName, Role role, int tokenVersion) {
+        this(id, firstName, lastName, role, tokenVersion, null);
+    }
+
+    // Текущий пользователь из SecurityContext
+    public static UserPrincipal current() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof UserPrincipal)) {
+            throw new AccessDeniedException("User is not authenticated");
+        }
+        return (UserPrincipal) authentication.getPrincipal();
+    }
+
+    // Имя в формате "Имя Фамилия", как и раньше в Authentication.getName().
+    // Компактный токен имени не содержит - тогда имя пользователя заменяет его id
+    @Override
+    public String getName() {
+        return firstName == null ? String.valueOf(id) : firstName + " " + lastName;
+    }
+
+    public boolean isAdmin() {
+        return role == Role.ROLE_ADMIN;
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.TransferConfig;
+import com.example.bankcards.entity.Transaction;
+import com.example.bankcards.exception.CardOperationException;
+import com.example.bankcards.exception.InsufficientFundsException;
+import com.example.bankcards.exception.ResourceNotFoundException;
+import com.example.bankcards.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Асинхронные переводы: запрос сохраняет перевод в PENDING и сразу получает его id,
+// а деньги двигает ограниченный пул обработчиков. Ожидание блокировок карт в пиках не держит HTTP-потоки
+@Slf4j
+@Service
+public class AsyncTransferService {
+    private final TransactionService transactionService;
+    private final TransferConfig transferConfig;
+    private final ThreadPoolExecutor executor;
+
+    public AsyncTransferService(TransactionService transactionService, TransferConfig transferConfig, MeterRegistry meterRegistry) {
+        this.transactionService = transactionService;
+        this.transferConfig = transferConfig;
+        TransferConfig.Async config = transferConfig.getAsync();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(config.getWorkers(), config.getWorkers(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "transfer-worker-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        meterRegistry.gauge("bank.transfer.async.queue", executor, pool -> pool.getQueue().size());
+        meterRegistry.gauge("bank.transfer.async.active", executor, ThreadPoolExecutor::getActiveCount);
+    }
+
+    // Принять перевод. При заполненной очереди отвечаем 503 до записи в БД, чтобы не копить PENDING-переводы
+    public Transaction submitTransfer(Long fromCardId, Long toCardId, BigDecimal value, String description, String idempotencyKey) {
+        if (executor.getQueue().remainingCapacity() == 0) {
+            throw new ServiceUnavailableException("Transfer queue is full, please retry later", transferConfig.getAsync().getRetryAfterSeconds());
+        }
+        Transaction transaction = transactionService.createPendingTransfer(fromCardId, toCardId, value, description, idempotencyKey);
+        // Повтор с тем же Idempotency-Key может вернуть уже обработанный перевод
+        if (transaction.isPending()) dispatch(transaction.getId());
+        return transaction;
+    }
+
+    // PENDING-переводы, которые так и не обработались (перезапуск, переполненная очередь), ставим в очередь заново.
+    // Повторная обработка безопасна: обработчик блокирует строку перевода и проверяет, что он всё ещё PENDING
+    @Scheduled(fixedDelayString = "${transfer.async.recovery-interval-ms:60000}")
+    public void resubmitStale() {
+        LocalDateTime createdBefore = LocalDateTime.now().minus(transferConfig.getAsync().getStaleAfter());
+        for (Long transactionId : transactionService.findStalePendingTransferIds(createdBefore)) {
+            if (!dispatch(transactionId)) break;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Необработанные переводы останутся в PENDING и будут подобраны после запуска
+        executor.shutdownNow();
+    }
+
+    private boolean dispatch(Long transactionId) {
+        try {
+            executor.execute(() -> process(transactionId));
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.warn("Transfer queue is full, transaction {} stays pending until the next recovery run", transactionId);
+            return false;
+        }
+    }
+
+    void process(Long transactionId) {
+        try {
+            transactionService.completePendingTransfer(transactionId);
+        } catch (AccessDeniedException | CardOperationException | InsufficientFundsException | ResourceNotFoundException e) {
+            transactionService.failPendingTransfer(transactionId, e.getMessage());
+        } catch (ConcurrencyFailureException e) {
+            // Карта занята: перевод остаётся PENDING и будет повторён при восстановлении
+            log.warn("Transaction {} postponed: {}", transactionId, e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("Transaction {} failed unexpectedly and stays pending", transactionId, e);
+        }
+    }
+}
@@ -2,13 +2,17 @@ package com.example.bankcards.service;
 
 
 import com.example.bankcards.dto.request.AuthRequest;
+import com.example.bankcards.dto.request.RefreshTokenRequest;
 import com.example.bankcards.dto.response.AuthResponse;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.exception.BadRequestException;
 import com.example.bankcards.exception.ResourceNotFoundException;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.BankUserDetails;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -17,6 +21,7 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import com.example.bankcards.entity.Role;
 import java.util.Date;
+import java.util.Optional;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
@@ -29,55 +34,79 @@ public class AuthService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final JwtTokenProvider jwtTokenProvider;
+    private final LoginThrottlingService loginThrottlingService;
+    private final RefreshTokenService refreshTokenService;
+    private final TokenDenylistService tokenDenylistService;
+    private final UserNameFilter userNameFilter;
 
 
-    public AuthResponse authenticate(AuthRequest authRequest){
-        Authentication authentication = authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(authRequest.getFirstName() + " " + authRequest.getLastName(), authRequest.getPassword()));
+    public AuthResponse authenticate(AuthRequest authRequest, String clientIp){
+        String username = createUsername(authRequest.getFirstName(), authRequest.getLastName());
+        // Лимит проверяем до BCrypt и запроса в БД, чтобы перебор паролей отклонялся дёшево
+        loginThrottlingService.checkLoginAllowed(username, clientIp);
+
+        Authentication authentication = authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(username, authRequest.getPassword()));
         SecurityContextHolder.getContext().setAuthentication(authentication);
 
-        User user = userRepository.findByFirstNameAndLastName(
-                authRequest.getFirstName(),
-                authRequest.getLastName()
-        ).orElseThrow(() -> new ResourceNotFoundException("User", "firstName",  authRequest.getFirstName(), "lastName", authRequest.getLastName()));
+        // Пользователь уже загружен при проверке пароля - второй запрос в БД не нужен
+        User user = authentication.getPrincipal() instanceof BankUserDetails
+                ? ((BankUserDetails) authentication.getPrincipal()).toUser()
+                : userRepository.findByFirstNameAndLastName(
+                        authRequest.getFirstName(),
+                        authRequest.getLastName()
+                ).orElseThrow(() -> new ResourceNotFoundException("User", "firstName",  authRequest.getFirstName(), "lastName", authRequest.getLastName()));
 
-        String accessToken = jwtTokenProvider.generateToken(user);
-        return createAuthResponse(user, accessToken);
+        return issueTokens(user);
     }
 
-    public AuthResponse register(AuthRequest authRequest) {
-        if (userRepository.existsByFirstNameAndLastName(authRequest.getFirstName(), authRequest.getLastName()))
-            throw new BadRequestException("User with name '" + authRequest.getFirstName() + " " + authRequest.getLastName() + "' already exists");
-
+    // Новая пара токенов по refresh-токену; предъявленный refresh-токен больше не действует
+    public AuthResponse refresh(RefreshTokenRequest refreshTokenRequest) {
+        RefreshTokenService.Rotation rotation = refreshTokenService.rotate(refreshTokenRequest.getRefreshToken());
+        AuthResponse response = createAuthResponse(rotation.getUser(), jwtTokenProvider.generateToken(rotation.getUser()));
+        response.setRefreshToken(rotation.getRefreshToken());
+        return response;
+    }
 
+    public AuthResponse register(AuthRequest authRequest) {
         User user = new User();
         user.setFirstName(authRequest.getFirstName());
         user.setLastName(authRequest.getLastName());
         user.setPassword(passwordEncoder.encode(authRequest.getPassword()));
         user.setRole(Role.ROLE_USER);
 
-        User savedUser = userRepository.save(user);
-
-        String accessToken = jwtTokenProvider.generateToken(savedUser);
+        User savedUser = saveNewUser(user);
+        userNameFilter.added(savedUser.getFirstName(), savedUser.getLastName());
 
-        return createAuthResponse(savedUser, accessToken);
+        return issueTokens(savedUser);
     }
 
     public AuthResponse registerAdmin(AuthRequest authRequest){
-        if (userRepository.existsByFirstNameAndLastName(authRequest.getFirstName(), authRequest.getLastName()))
-            throw new BadRequestException("User with name '" + authRequest.getFirstName() + " " + authRequest.getLastName() + "' already exists");
-
-
         User user = new User();
         user.setFirstName(authRequest.getFirstName());
         user.setLastName(authRequest.getLastName());
         user.setPassword(passwordEncoder.encode(authRequest.getPassword()));
         user.setRole(Role.ROLE_ADMIN);
 
-        User savedUser = userRepository.save(user);
+        User savedUser = saveNewUser(user);
+        userNameFilter.added(savedUser.getFirstName(), savedUser.getLastName());
+
+        return issueTokens(savedUser);
+    }
 
-        String accessToken = jwtTokenProvider.generateToken(savedUser);
+    // Занятое имя (в том числе параллельной регистрацией) останавливает уникальный индекс users(first_name, last_name),
+    // отдельный запрос существования перед вставкой не нужен
+    private User saveNewUser(User user) {
+        try {
+            return userRepository.save(user);
+        } catch (DataIntegrityViolationException e) {
+            throw new BadRequestException("User with name '" + user.getFirstName() + " " + user.getLastName() + "' already exists");
+        }
+    }
 
-        return createAuthResponse(savedUser, accessToken);
+    private AuthResponse issueTokens(User user) {
+        AuthResponse response = createAuthResponse(user, jwtTokenProvider.generateToken(user));
+        response.setRefreshToken(refreshTokenService.issue(user));
+        return response;
     }
 
     AuthResponse createAuthResponse(User user, String accessToken) {
@@ -93,7 +122,18 @@ public class AuthService {
         return firstName + " " + lastName;
     }
 
-    public void logout() {
+    // Завершить сессию: access-токен отзывается до истечения его срока, иначе refresh выдал бы новый.
+    // Предъявленный refresh-токен отзывается сам по себе (он действует и при истёкшем access-токене);
+    // без него отзываются все refresh-токены владельца access-токена. Невалидный access-токен отзывать не нужно
+    public void logout(String accessToken, String refreshToken) {
+        Optional<Claims> claims = accessToken != null ? jwtTokenProvider.parseValidClaims(accessToken) : Optional.empty();
+        claims.ifPresent(valid -> tokenDenylistService.revoke(valid.getId(), valid.getExpiration()));
+
+        if (refreshToken != null && !refreshToken.isBlank()) {
+            refreshTokenService.revoke(refreshToken);
+        } else {
+            claims.ifPresent(valid -> refreshTokenService.revokeAll(Long.parseLong(valid.getSubject())));
+        }
         SecurityContextHolder.clearContext();
     }
 
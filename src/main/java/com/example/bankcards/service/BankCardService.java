@@ -4,22 +4,21 @@ package com.example.bankcards.service;
 import com.example.bankcards.entity.BankCard;
 import com.example.bankcards.entity.CardStatus;
 import com.example.bankcards.entity.User;
+import com.example.bankcards.exception.BadRequestException;
 import com.example.bankcards.exception.CardOperationException;
 import com.example.bankcards.exception.ResourceNotFoundException;
 import com.example.bankcards.repository.BankCardRepository;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.CardNumberCipher;
+import com.example.bankcards.security.UserPrincipal;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.access.AccessDeniedException;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
-import org.springframework.beans.factory.annotation.Value;
-import javax.crypto.Cipher;
-import javax.crypto.spec.SecretKeySpec;
 import java.math.BigDecimal;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
-import java.util.Base64;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import javax.transaction.Transactional;
 
@@ -27,11 +26,13 @@ import javax.transaction.Transactional;
 @RequiredArgsConstructor
 @Transactional
 public class BankCardService {
+    private static final Pattern CARD_NUMBER = Pattern.compile("^[0-9]{16}$");
+
     private final BankCardRepository bankCardRepository;
     private final UserRepository userRepository;
-
-    @Value("${encryption.secret-key:defaultSecretKey}") // Значение по умолчанию
-    private String secretKey;
+    private final LedgerService ledgerService;
+    private final CurrentUserService currentUserService;
+    private final CardNumberCipher cardNumberCipher;
 
 
 
@@ -39,89 +40,48 @@ public class BankCardService {
 
 
     String encrypt(String data) {
-        try {
-            // Проверяем и корректируем длину ключа
-            byte[] keyBytes = ensureKeyLength(secretKey).getBytes(StandardCharsets.UTF_8);
-            SecretKeySpec keySpec = new SecretKeySpec(keyBytes, "AES");
-
-            Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-            cipher.init(Cipher.ENCRYPT_MODE, keySpec);
-            byte[] encrypted = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(encrypted);
-        } catch (Exception e) {
-            throw new RuntimeException("Encryption failed", e);
-        }
+        return cardNumberCipher.encrypt(data);
     }
 
     String decrypt(String encryptedData) {
-        try {
-            // Проверяем и корректируем длину ключа
-            byte[] keyBytes = ensureKeyLength(secretKey).getBytes(StandardCharsets.UTF_8);
-            SecretKeySpec keySpec = new SecretKeySpec(keyBytes, "AES");
-
-            Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-            cipher.init(Cipher.DECRYPT_MODE, keySpec);
-            byte[] decoded = Base64.getDecoder().decode(encryptedData);
-            byte[] decrypted = cipher.doFinal(decoded);
-            return new String(decrypted, StandardCharsets.UTF_8);
-        } catch (Exception e) {
-            throw new RuntimeException("Decryption failed", e);
-        }
-    }
-
-    private String ensureKeyLength(String key) {
-        // AES требует ключи длиной 16, 24 или 32 байта
-        int requiredLength = 32; // 256-bit
-        if (key.length() == requiredLength) {
-            return key;
-        }
-
-        // Дополняем или обрезаем ключ до нужной длины
-        if (key.length() < requiredLength) {
-            // Дополняем нулями
-            return String.format("%-" + requiredLength + "s", key).replace(' ', '0');
-        } else {
-            // Обрезаем до нужной длины
-            return key.substring(0, requiredLength);
-        }
-    }
-
-    // Получить текущего пользователя
-    private User getCurrentUser() {
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        return userRepository.findByFirstNameAndLastName(username.split(" ")[0], username.split(" ")[1])
-                .orElseThrow(() -> new ResourceNotFoundException("User", "firstName",  username.split(" ")[0], "lastName", username.split(" ")[1]));
-    }
-
-    public void isUserAdmin() {
-        User currentUser = getCurrentUser();
-        if (!currentUser.isAdmin()) {
-            throw new AccessDeniedException("Only administrators can perform this action");
-        }
+        return cardNumberCipher.decrypt(encryptedData);
     }
 
     // ==== МЕТОДЫ АДМИНА ====
 
+    @PreAuthorize("hasRole('ADMIN')")
     public BankCard createNewCard(String cardNumber, String cardOwnerName, Long ownerId){
-        isUserAdmin();
+        if (cardNumber == null || !CARD_NUMBER.matcher(cardNumber).matches()) throw new BadRequestException("Card number must contain 16 digits");
         User user = userRepository.findById(ownerId)
                 .orElseThrow(() -> new ResourceNotFoundException("User", "id", ownerId));
+        // Уникальность номера проверяем по слепому индексу; параллельное создание той же карты остановит уникальный индекс
+        String cardNumberHash = cardNumberCipher.blindIndex(cardNumber);
+        if (bankCardRepository.existsByCardNumberHash(cardNumberHash)) throw new CardOperationException("Card with this number already exists");
         BankCard newCard = new BankCard(encrypt(cardNumber), cardOwnerName,LocalDate.now(), user);
+        newCard.setCardLast4(BankCard.lastFourOf(cardNumber));
+        newCard.setCardNumberHash(cardNumberHash);
         newCard.setStatus(CardStatus.ACTIVE);
         newCard.setBalance(BigDecimal.ZERO);
         return  bankCardRepository.save(newCard);
     }
 
     // Админ получает незамаскированный номер карты
+    @PreAuthorize("hasRole('ADMIN')")
     public String getCardNumberForAdmin(Long cardId){
-        isUserAdmin();
         BankCard card = bankCardRepository.findById(cardId)
                 .orElseThrow(() -> new ResourceNotFoundException("Card", "id", cardId));
         return decrypt(card.getCardNumber());
     }
 
+    // Админ находит карту по полному номеру: одно обращение к уникальному индексу card_number_hash без расшифровки карт
+    @PreAuthorize("hasRole('ADMIN')")
+    public BankCard findCardByNumber(String cardNumber){
+        return bankCardRepository.findByCardNumberHash(cardNumberCipher.blindIndex(cardNumber))
+                .orElseThrow(() -> new ResourceNotFoundException("Card", "number", "**** **** **** " + BankCard.lastFourOf(cardNumber)));
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
     public BankCard activateCardByAdmin(Long id){
-        isUserAdmin();
         BankCard card = bankCardRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Card", "id", id));
         if (card.isExpired())throw new CardOperationException("Cannot activate expired card");
@@ -129,17 +89,18 @@ public class BankCardService {
         return bankCardRepository.save(card);
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
     public void deleteCardByAdmin(Long id){
-        isUserAdmin();
+        ledgerService.prepareCardDeletion(id);
         BankCard card = bankCardRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Card", "id", id));
-        if (card.getBalance().compareTo(BigDecimal.ZERO) != 0) throw new CardOperationException("Cannot delete card with non-zero balance");
+        if (ledgerService.balanceOf(card).compareTo(BigDecimal.ZERO) != 0) throw new CardOperationException("Cannot delete card with non-zero balance");
         bankCardRepository.delete(card);
     }
 
     // Админ подтверждает запрос на блокировку от пользователя
+    @PreAuthorize("hasRole('ADMIN')")
     public BankCard approveBlockRequest(Long id, String reason){
-        isUserAdmin();
         BankCard card = bankCardRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Card", "id", id));
         if (!card.isBlockRequested()) throw new CardOperationException("No block request pending for this card");
@@ -148,8 +109,8 @@ public class BankCardService {
     }
 
     // Админ отклоняет запрос на блокировку от пользователя
+    @PreAuthorize("hasRole('ADMIN')")
     public BankCard rejectBlockRequest(Long id){
-        isUserAdmin();
         BankCard card = bankCardRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Card", "id", id));
         if (!card.isBlockRequested()) throw new CardOperationException("No block request pending for this card");
@@ -158,8 +119,8 @@ public class BankCardService {
     }
 
     // Админ блокирует карту самостоятельно
+    @PreAuthorize("hasRole('ADMIN')")
     public BankCard blockCard(Long id, String reason){
-        isUserAdmin();
         BankCard card = bankCardRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Card", "id", id));
         if (card.isBlocked()) throw new CardOperationException("Card is already blocked");
@@ -168,50 +129,36 @@ public class BankCardService {
     }
 
     // Получить все карты по статусу
+    @PreAuthorize("hasRole('ADMIN')")
     public List<BankCard> getCardsByStatus(CardStatus status) {
-        isUserAdmin();
         return bankCardRepository.findByStatus(status);
     }
 
     // Получить все карты в системе
+    @PreAuthorize("hasRole('ADMIN')")
     public List<BankCard> getAllCards() {
-        isUserAdmin();
         return bankCardRepository.findAll();
     }
 
     // === ОБЩИЕ МЕТОДЫ ===
 
-    // Пользователи получают свою карту с маскированным номером
+    // Пользователи получают свою карту с маскированным номером. Маска строится из card_last4 при загрузке карты
     public BankCard getCardById(Long cardId){
-        User currentUser = getCurrentUser();
+        UserPrincipal currentUser = UserPrincipal.current();
         BankCard card = bankCardRepository.findById(cardId)
                 .orElseThrow(() -> new ResourceNotFoundException("Card", "id", cardId));
-        if (!currentUser.isAdmin() && !card.getOwner().getId().equals(currentUser.getId())) throw new AccessDeniedException("Access denied");
-        if(!currentUser.isAdmin()) {
-            String decryptedNumber = decrypt(card.getCardNumber());
-            String maskNumber = "**** **** ****" + decryptedNumber.substring(decryptedNumber.length() - 4);
-            card.setMaskedCardNumber(maskNumber);
-            card.setCardNumber(null);
-        }
+        if (!currentUser.isAdmin() && !card.isOwnedBy(currentUser.getId())) throw new AccessDeniedException("Access denied");
         return card;
     }
 
+    // Карты текущего пользователя: номера не расшифровываются
     public List<BankCard> getMyCards(){
-        User currentUser = getCurrentUser();
-        List<BankCard> cards = bankCardRepository.findByOwnerId(currentUser.getId());
-        for (BankCard card : cards){
-            String decryptNumber = decrypt(card.getCardNumber());
-            String maskNumber = "**** **** ****" + decryptNumber.substring(decryptNumber.length() - 4);
-            card.setMaskedCardNumber(maskNumber);
-            card.setCardNumber(null);
-        }
-        return cards;
+        return bankCardRepository.findByOwnerId(currentUserService.getId());
     }
 
     // Запрос на блокировку карты
     public BankCard requestBlockCard(Long id, String reason){
-        User currentUser = getCurrentUser();
-        BankCard card = bankCardRepository.findByIdAndOwnerId(id, currentUser.getId())
+        BankCard card = bankCardRepository.findByIdAndOwnerId(id, currentUserService.getId())
                 .orElseThrow(() -> new AccessDeniedException("Card not found or access denied"));
         if (card.isBlocked()) throw new CardOperationException("Card is already blocked");
         if (card.isBlockRequested()) throw new CardOperationException("Block request already pending");
@@ -221,8 +168,7 @@ public class BankCardService {
 
     // Отменить запрос на блокировку
     public BankCard cancelRequestBlockCard(Long id){
-        User currentUser = getCurrentUser();
-        BankCard card = bankCardRepository.findByIdAndOwnerId(id, currentUser.getId())
+        BankCard card = bankCardRepository.findByIdAndOwnerId(id, currentUserService.getId())
                 .orElseThrow(() -> new AccessDeniedException("Card not found or access denied"));
         if (!card.isBlockRequested()) throw new CardOperationException("No block request pending for this card");
         card.rejectBlockRequest();
@@ -232,10 +178,9 @@ public class BankCardService {
 
     // Просмотр баланса
     public BigDecimal getCardBalance(Long cardId){
-        User currentUser = getCurrentUser();
-        BankCard card = bankCardRepository.findByIdAndOwnerId(cardId, currentUser.getId())
+        BankCard card = bankCardRepository.findByIdAndOwnerId(cardId, currentUserService.getId())
                 .orElseThrow(() -> new AccessDeniedException("Card not found or access denied"));
-        return card.getBalance();
+        return ledgerService.balanceOf(card);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,45 @@
+package com.example.bankcards.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.function.Predicate;
+
+// Ограниченный по размеру кэш в памяти для горячих путей (проверка токена, версии токенов, логин, идемпотентность).
+// Caffeine: чтения и записи не берут общую блокировку, лишние записи вытесняются по частоте и давности обращений.
+// Обслуживание выполняется в вызывающем потоке, поэтому после put размер уже не превышает maxSize
+public class BoundedCache<K, V> {
+    private final Cache<K, V> cache;
+
+    public BoundedCache(int maxSize) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .executor(Runnable::run)
+                .build();
+    }
+
+    // null - записи нет
+    public V get(K key) {
+        return cache.getIfPresent(key);
+    }
+
+    public void put(K key, V value) {
+        cache.put(key, value);
+    }
+
+    public void remove(K key) {
+        cache.invalidate(key);
+    }
+
+    public void removeIf(Predicate<V> predicate) {
+        cache.asMap().values().removeIf(predicate);
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+}
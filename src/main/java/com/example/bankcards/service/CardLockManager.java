@@ -0,0 +1,83 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.TransferConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Полосатые (striped) блокировки карт внутри JVM. При развёртывании в один экземпляр конкурирующие переводы
+// по "горячей" карте ждут здесь, а не в очереди на блокировку строки в PostgreSQL с открытой транзакцией.
+// Для нескольких экземпляров не подходит: там порядок обеспечивают только блокировки строк в БД
+@Component
+public class CardLockManager {
+    private final boolean enabled;
+    private final long timeoutMs;
+    private final ReentrantLock[] locks;
+    private final Timer[] waitTimers;
+
+    public CardLockManager(TransferConfig transferConfig, MeterRegistry meterRegistry) {
+        TransferConfig.CardLocks config = transferConfig.getCardLocks();
+        this.enabled = config.isEnabled();
+        this.timeoutMs = config.getTimeoutMs();
+        this.locks = new ReentrantLock[config.getStripes()];
+        this.waitTimers = new Timer[config.getStripes()];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+            waitTimers[i] = enabled
+                    ? Timer.builder("bank.card.lock.wait").tag("stripe", String.valueOf(i)).register(meterRegistry)
+                    : null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Выполнить действие под блокировками полос всех указанных карт. Полосы берутся по возрастанию номера, поэтому
+    // встречные переводы не могут заблокировать друг друга; одна полоса на две карты берётся один раз
+    public <T> T withCardLocks(Collection<Long> cardIds, Supplier<T> action) {
+        if (!enabled) return action.get();
+
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (Long cardId : cardIds) stripes.add(stripeOf(cardId));
+
+        Integer[] acquired = new Integer[stripes.size()];
+        int count = 0;
+        try {
+            for (Integer stripe : stripes) {
+                lock(stripe);
+                acquired[count++] = stripe;
+            }
+            return action.get();
+        } finally {
+            for (int i = count - 1; i >= 0; i--) locks[acquired[i]].unlock();
+        }
+    }
+
+    int stripeOf(Long cardId) {
+        // Перемешиваем биты, чтобы подряд идущие id не попадали в соседние полосы по одному шаблону
+        long hash = cardId * 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(hash ^ (hash >>> 32), (long) locks.length);
+    }
+
+    private void lock(int stripe) {
+        long start = System.nanoTime();
+        boolean locked;
+        try {
+            locked = locks[stripe].tryLock(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotAcquireLockException("Interrupted while waiting for card lock");
+        } finally {
+            waitTimers[stripe].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        if (!locked) throw new CannotAcquireLockException("Timed out waiting for card lock");
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.BankCard;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.security.CardNumberCipher;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+// Фоновое заполнение производных колонок номера (card_last4 и слепого индекса card_number_hash) для карт, созданных
+// до их появления: номер расшифровывается один раз здесь, а не в каждом запросе. Порции по id, каждая в своей транзакции
+@Slf4j
+@Service
+public class CardNumberBackfill {
+    // Номера, сохранённые открытым текстом (тестовые данные): шифротекст в base64 не бывает строкой из 16 цифр
+    private static final Pattern PLAIN_CARD_NUMBER = Pattern.compile("^[0-9]{16}$");
+
+    private final BankCardRepository bankCardRepository;
+    private final CardNumberCipher cardNumberCipher;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    public CardNumberBackfill(BankCardRepository bankCardRepository, CardNumberCipher cardNumberCipher, TransactionTemplate transactionTemplate,
+                              @Value("${card-number-backfill.batch-size:500}") int batchSize) {
+        this.bankCardRepository = bankCardRepository;
+        this.cardNumberCipher = cardNumberCipher;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+    }
+
+    // При старте и периодически: во время обновления старые экземпляры ещё создают карты без этих колонок
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${card-number-backfill.interval-ms:3600000}", initialDelayString = "${card-number-backfill.interval-ms:3600000}")
+    public void backfill() {
+        long afterId = 0L;
+        int filled = 0;
+        Batch batch;
+        do {
+            long from = afterId;
+            batch = transactionTemplate.execute(status -> fillBatch(from));
+            afterId = batch.getLastId();
+            filled += batch.getFilled();
+        } while (batch.getSize() == batchSize);
+        if (filled > 0) log.info("Filled derived card number columns of {} cards", filled);
+    }
+
+    private Batch fillBatch(long afterId) {
+        List<BankCardRepository.CardNumber> cards = bankCardRepository.findCardNumbersToBackfill(afterId, PageRequest.of(0, batchSize));
+        long lastId = afterId;
+        int filled = 0;
+        for (BankCardRepository.CardNumber card : cards) {
+            lastId = card.getId();
+            String number;
+            String last4;
+            try {
+                number = PLAIN_CARD_NUMBER.matcher(card.getCardNumber()).matches() ? card.getCardNumber() : cardNumberCipher.decrypt(card.getCardNumber());
+                last4 = BankCard.lastFourOf(number);
+            } catch (RuntimeException e) {
+                // Номер не расшифровывается (другой ключ или повреждённые данные): карта остаётся с маской "****" и без индекса
+                log.warn("Cannot fill derived number columns of card {}: {}", card.getId(), e.getMessage());
+                continue;
+            }
+            String hash = cardNumberCipher.blindIndex(number);
+            // Тот же номер уже есть в другой карте (например, открытым текстом и зашифрованным): индекс оставляем пустым,
+            // иначе уникальный индекс откатит всю порцию
+            if (bankCardRepository.existsByCardNumberHashAndIdNot(hash, card.getId())) {
+                log.warn("Card {} duplicates the number of another card, blind index is left empty", card.getId());
+                hash = null;
+            }
+            filled += bankCardRepository.updateDerivedNumberColumns(card.getId(), last4, hash);
+        }
+        return new Batch(cards.size(), filled, lastId);
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class Batch {
+        private final int size;
+        private final int filled;
+        private final long lastId;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.User;
+import com.example.bankcards.exception.ResourceNotFoundException;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.UserPrincipal;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+// Текущий пользователь, общий для всех сервисов. Права администратора проверяются по роли из токена (@PreAuthorize),
+// а сущность из БД нужна только для операций над своим аккаунтом: в рамках HTTP-запроса она читается
+// не больше одного раза и хранится в атрибутах запроса; вне запроса (фоновые потоки) читается каждый раз
+@Service
+@RequiredArgsConstructor
+public class CurrentUserService {
+    private static final String USER_ATTRIBUTE = CurrentUserService.class.getName() + ".user";
+
+    private final UserRepository userRepository;
+
+    // Id текущего пользователя из токена, без обращения к БД
+    public Long getId() {
+        return UserPrincipal.current().getId();
+    }
+
+    // Текущий пользователь из БД (актуальная роль, пароль)
+    public User getUser() {
+        Long userId = getId();
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            Object cached = attributes.getAttribute(USER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+            if (cached instanceof User && userId.equals(((User) cached).getId())) return (User) cached;
+        }
+
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new ResourceNotFoundException("User", "id", userId));
+        if (attributes != null) attributes.setAttribute(USER_ATTRIBUTE, user, RequestAttributes.SCOPE_REQUEST);
+        return user;
+    }
+}
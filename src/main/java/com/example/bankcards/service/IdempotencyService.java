@@ -0,0 +1,76 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.TransferConfig;
+import com.example.bankcards.entity.IdempotencyKey;
+import com.example.bankcards.exception.BadRequestException;
+import com.example.bankcards.repository.IdempotencyKeyRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.transaction.Transactional;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Ключи идемпотентности переводов: таблица idempotency_keys (уникальность user_id + ключ) и ограниченный кэш перед ней
+@Slf4j
+@Service
+public class IdempotencyService {
+    public static final int MAX_KEY_LENGTH = 100;
+
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final TransferConfig transferConfig;
+    private final BoundedCache<String, IdempotencyKey> cache;
+
+    public IdempotencyService(IdempotencyKeyRepository idempotencyKeyRepository, TransferConfig transferConfig) {
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.transferConfig = transferConfig;
+        this.cache = new BoundedCache<>(transferConfig.getIdempotency().getCacheSize());
+    }
+
+    // Параметры перевода, по которым проверяем, что ключ повторно прислали для того же самого перевода
+    public String fingerprint(Long fromCardId, Long toCardId, BigDecimal amount) {
+        return fromCardId + ":" + toCardId + ":" + (amount == null ? null : amount.stripTrailingZeros().toPlainString());
+    }
+
+    // Найти id транзакции, уже созданной по этому ключу, или null
+    public Long findTransactionId(Long userId, String key, String fingerprint) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) throw new BadRequestException("Idempotency-Key must be 1 to " + MAX_KEY_LENGTH + " characters long");
+
+        IdempotencyKey stored = cache.get(cacheKey(userId, key));
+        if (stored == null || isExpired(stored)) {
+            stored = idempotencyKeyRepository.findByUserIdAndKey(userId, key).orElse(null);
+            if (stored == null) return null;
+            cache.put(cacheKey(userId, key), stored);
+        }
+        if (!stored.getRequestFingerprint().equals(fingerprint)) throw new BadRequestException("Idempotency-Key was already used for a different transfer");
+        return stored.getTransactionId();
+    }
+
+    // Сохранить ключ в текущей транзакции перевода: при параллельном повторе уникальный индекс откатит второй перевод целиком
+    public void save(Long userId, String key, String fingerprint, Long transactionId) {
+        idempotencyKeyRepository.save(new IdempotencyKey(userId, key, fingerprint, transactionId));
+    }
+
+    // Положить ключ в кэш. Вызывается только после коммита перевода, чтобы в кэш не попали откаченные транзакции
+    public void cache(Long userId, String key, String fingerprint, Long transactionId) {
+        cache.put(cacheKey(userId, key), new IdempotencyKey(userId, key, fingerprint, transactionId));
+    }
+
+    // Периодически удаляем просроченные ключи
+    @Scheduled(fixedDelayString = "${transfer.idempotency.purge-interval-ms:3600000}")
+    @Transactional
+    public void purgeExpired() {
+        int deleted = idempotencyKeyRepository.deleteCreatedBefore(LocalDateTime.now().minus(transferConfig.getIdempotency().getTtl()));
+        cache.removeIf(this::isExpired);
+        log.debug("Purged {} expired idempotency keys", deleted);
+    }
+
+    private boolean isExpired(IdempotencyKey key) {
+        return key.getCreatedAt().isBefore(LocalDateTime.now().minus(transferConfig.getIdempotency().getTtl()));
+    }
+
+    private String cacheKey(Long userId, String key) {
+        return userId + ":" + key;
+    }
+}
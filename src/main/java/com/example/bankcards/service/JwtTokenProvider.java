@@ -1,11 +1,21 @@
 package com.example.bankcards.service;
 
 import com.example.bankcards.config.JwtConfig;
+import com.example.bankcards.entity.Role;
 import com.example.bankcards.entity.User;
+import com.example.bankcards.security.TokenHashes;
+import com.example.bankcards.security.UserPrincipal;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtBuilder;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -14,84 +24,218 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
-import java.util.Collections;
+import java.security.SecureRandom;
+import java.util.Base64;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @Component
-@RequiredArgsConstructor
 public class JwtTokenProvider {
+    // Claims компактного формата. Токен без FORMAT_CLAIM - прежний (LEGACY) формат
+    static final String FORMAT_CLAIM = "v";
+    static final String ROLE_CLAIM = "r";
+    static final String TOKEN_VERSION_CLAIM = "tv";
+    static final int COMPACT_FORMAT = 2;
+    // Список authorities одинаков для всех токенов с одной ролью
+    private static final Map<Role, List<GrantedAuthority>> AUTHORITIES = new EnumMap<>(Role.class);
+    static {
+        for (Role role : Role.values()) AUTHORITIES.put(role, List.of(new SimpleGrantedAuthority(role.name())));
+    }
+
+    private final SecureRandom secureRandom = new SecureRandom();
     private final JwtConfig jwtConfig;
     private final SecretKey secretKey;
+    // Парсер потокобезопасен: собираем один раз, а не на каждую проверку токена
+    private final JwtParser jwtParser;
+    private final TokenVersionService tokenVersionService;
+    // Кэш: sha-256 токена -> готовый Authentication и момент, до которого запись действительна
+    private final BoundedCache<String, CachedAuthentication> authenticationCache;
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+
+    public JwtTokenProvider(JwtConfig jwtConfig, SecretKey secretKey, TokenVersionService tokenVersionService, MeterRegistry meterRegistry) {
+        this.jwtConfig = jwtConfig;
+        this.secretKey = secretKey;
+        this.tokenVersionService = tokenVersionService;
+        this.jwtParser = Jwts.parserBuilder()
+                .setSigningKey(secretKey)
+                .build();
+        this.authenticationCache = new BoundedCache<>(jwtConfig.getCache().getMaxSize());
+        this.cacheHits = meterRegistry.counter("bank.jwt.cache", "result", "hit");
+        this.cacheMisses = meterRegistry.counter("bank.jwt.cache", "result", "miss");
+        meterRegistry.gauge("bank.jwt.cache.size", authenticationCache, BoundedCache::size);
+    }
 
     public String generateToken(User user) {
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + jwtConfig.getExpirationMs());
 
-        return Jwts.builder()
+        if (jwtConfig.getTokenFormat() == JwtConfig.TokenFormat.LEGACY) {
+            return Jwts.builder()
+                    .setId(newTokenId())
+                    .setSubject(user.getId().toString())
+                    .claim("username", user.getFirstName() + " " + user.getLastName())
+                    .claim("firstName", user.getFirstName())
+                    .claim("lastName", user.getLastName())
+                    .claim("role", user.getRole().name())
+                    .claim("ver", user.getTokenVersion())
+                    .setIssuedAt(now)
+                    .setExpiration(expiryDate)
+                    .signWith(secretKey, SignatureAlgorithm.HS256)
+                    .compact();
+        }
+
+        // Компактный формат: только то, что нужно для авторизации запроса. Имя пользователя в токен не пишем -
+        // оно есть в ответе на логин, а сервисы берут пользователя по id
+        JwtBuilder builder = Jwts.builder()
+                .setId(newTokenId())
                 .setSubject(user.getId().toString())
-                .claim("username", user.getFirstName() + " " + user.getLastName())
-                .claim("firstName", user.getFirstName())
-                .claim("lastName", user.getLastName())
-                .claim("role", user.getRole().name())
-                .setIssuedAt(now)
-                .setExpiration(expiryDate)
-                .signWith(secretKey, SignatureAlgorithm.HS256)
-                .compact();
+                .claim(FORMAT_CLAIM, COMPACT_FORMAT)
+                .claim(ROLE_CLAIM, user.getRole().getCode())
+                .setExpiration(expiryDate);
+        if (user.getTokenVersion() != 0) builder.claim(TOKEN_VERSION_CLAIM, user.getTokenVersion());
+        return builder.signWith(secretKey, SignatureAlgorithm.HS256).compact();
     }
 
-    public boolean isValid(String token) {
+    // Проверить подпись и срок действия токена и вернуть его claims. Пустой результат - токен невалиден.
+    // Фильтр вызывает этот метод один раз на запрос и строит Authentication из тех же claims
+    public Optional<Claims> parseValidClaims(String token) {
         try {
-            Jwts.parserBuilder()
-                    .setSigningKey(secretKey)
-                    .build()
-                    .parseClaimsJws(token);
-            return true;
+            return Optional.of(jwtParser.parseClaimsJws(token).getBody());
         } catch (JwtException | IllegalArgumentException e) {
-            return false;
+            return Optional.empty();
         }
     }
 
-    public Authentication getAuthentication(String token) {
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(secretKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+    // Authentication для токена из заголовка запроса. Повторные запросы с тем же токеном берутся из кэша
+    // без проверки подписи и разбора claims; пустой результат - токен невалиден
+    public Optional<Authentication> authenticate(String token) {
+        return verify(token).filter(this::hasCurrentTokenVersion);
+    }
 
-        String username = claims.get("username", String.class);
-        String role = claims.get("role", String.class);
+    // Токен выдан до смены роли (или пользователь удалён) - такой токен больше не принимается
+    private boolean hasCurrentTokenVersion(Authentication authentication) {
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        return tokenVersionService.isCurrent(principal.getId(), principal.getTokenVersion());
+    }
 
-        List<GrantedAuthority> authorities = Collections.singletonList(
-                new SimpleGrantedAuthority(role)
-        );
+    private Optional<Authentication> verify(String token) {
+        if (!jwtConfig.getCache().isEnabled()) {
+            return parseValidClaims(token).flatMap(this::authenticationOf);
+        }
+
+        String key = TokenHashes.sha256Hex(token);
+        long now = System.currentTimeMillis();
+        CachedAuthentication cached = authenticationCache.get(key);
+        if (cached != null) {
+            if (cached.getExpiresAt() > now) {
+                cacheHits.increment();
+                return Optional.of(cached.getAuthentication());
+            }
+            authenticationCache.remove(key);
+        }
+        cacheMisses.increment();
+
+        Optional<Claims> claims = parseValidClaims(token);
+        Optional<Authentication> authentication = claims.flatMap(this::authenticationOf);
+        if (authentication.isEmpty()) return Optional.empty();
+
+        long expiresAt = Math.min(claims.get().getExpiration().getTime(), now + jwtConfig.getCache().getMaxTtl().toMillis());
+        authenticationCache.put(key, new CachedAuthentication(authentication.get(), expiresAt));
+        return authentication;
+    }
+
+    // Подпись верна, но формат токена неизвестен (например, выдан более новой версией приложения) - токен не принимаем
+    private Optional<Authentication> authenticationOf(Claims claims) {
+        try {
+            return Optional.of(getAuthentication(claims));
+        } catch (JwtException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    // Сбросить кэш проверенных токенов
+    public void clearAuthenticationCache() {
+        authenticationCache.clear();
+    }
+
+    public boolean isValid(String token) {
+        return parseValidClaims(token).isPresent();
+    }
+
+    public Authentication getAuthentication(String token) {
+        return getAuthentication(parseClaims(token));
+    }
+
+    // Authentication из уже проверенных claims, без повторного разбора токена.
+    // Principal несёт id, имя и роль пользователя, так что сервисам не нужно искать его в БД
+    public Authentication getAuthentication(Claims claims) {
+        Integer format = claims.get(FORMAT_CLAIM, Integer.class);
+        UserPrincipal principal;
+        if (format == null) {
+            principal = new UserPrincipal(
+                    Long.parseLong(claims.getSubject()),
+                    claims.get("firstName", String.class),
+                    claims.get("lastName", String.class),
+                    Role.valueOf(requiredClaim(claims, "role", String.class)),
+                    // Токены, выданные до появления версии, считаются версией 0
+                    Optional.ofNullable(claims.get("ver", Integer.class)).orElse(0),
+                    claims.getId()
+            );
+        } else if (format == COMPACT_FORMAT) {
+            principal = new UserPrincipal(
+                    Long.parseLong(claims.getSubject()),
+                    null,
+                    null,
+                    Role.fromCode(requiredClaim(claims, ROLE_CLAIM, Integer.class)),
+                    Optional.ofNullable(claims.get(TOKEN_VERSION_CLAIM, Integer.class)).orElse(0),
+                    claims.getId()
+            );
+        } else {
+            throw new UnsupportedJwtException("Unsupported token format: " + format);
+        }
 
         return new UsernamePasswordAuthenticationToken(
-                username,
+                principal,
                 null,
-                authorities
+                AUTHORITIES.get(principal.getRole())
         );
     }
 
     public Long getUserIdFromToken(String token) {
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(secretKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
-
-        return Long.parseLong(claims.getSubject());
+        return Long.parseLong(parseClaims(token).getSubject());
     }
 
     public Date getExpirationDateFromToken(String token) {
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(secretKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parseClaims(token).getExpiration();
+    }
 
-        return claims.getExpiration();
+    private Claims parseClaims(String token) {
+        return jwtParser.parseClaimsJws(token).getBody();
     }
 
+    // Подписанный токен без обязательного claim (например, роли) не принимаем: иначе NPE превратилась бы в 500
+    private static <T> T requiredClaim(Claims claims, String name, Class<T> type) {
+        T value = claims.get(name, type);
+        if (value == null) throw new MalformedJwtException("Token has no '" + name + "' claim");
+        return value;
+    }
 
-}
\ No newline at end of file
+    // jti обоих форматов: 128 случайных бит в base64url, 22 символа вместо 36 у UUID
+    private String newTokenId() {
+        byte[] bytes = new byte[16];
+        secureRandom.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    // В кэше храним не сам токен, а его хэш
+    @Getter
+    @RequiredArgsConstructor
+    private static class CachedAuthentication {
+        private final Authentication authentication;
+        private final long expiresAt;
+    }
+}
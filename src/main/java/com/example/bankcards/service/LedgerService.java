@@ -0,0 +1,149 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.TransferConfig;
+import com.example.bankcards.entity.BalanceSnapshot;
+import com.example.bankcards.entity.BankCard;
+import com.example.bankcards.entity.LedgerEntry;
+import com.example.bankcards.entity.Transaction;
+import com.example.bankcards.repository.BalanceSnapshotRepository;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.LedgerEntryRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.transaction.Transactional;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+
+// Журнал проводок (режим LEDGER): баланс карты = последний снимок + проводки после него.
+// Без снимка отправной точкой служит bank_cards.balance - баланс на момент включения режима.
+// Остальные режимы работают только с bank_cards.balance, поэтому при смене transfer.mode данные приводятся к новому
+// режиму при старте (reconcileMode): вне LEDGER журнал сворачивается в баланс карт, в LEDGER снимки выравниваются по картам
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@Transactional
+public class LedgerService {
+    private final LedgerEntryRepository ledgerEntryRepository;
+    private final BalanceSnapshotRepository balanceSnapshotRepository;
+    private final BankCardRepository bankCardRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransferConfig transferConfig;
+
+    public boolean isEnabled() {
+        return transferConfig.getMode() == TransferConfig.Mode.LEDGER;
+    }
+
+    // Смена режима делается с остановкой всех экземпляров: при старте экземпляр приводит журнал к своему режиму
+    @PostConstruct
+    public void reconcileMode() {
+        if (isEnabled()) {
+            openLedger();
+        } else {
+            closeLedger();
+        }
+    }
+
+    // Выход из режима LEDGER: ещё не свёрнутые проводки прибавляются к bank_cards.balance, и по карте пишется снимок
+    // на её последнюю проводку. Без этого переводы в другом режиме не видели бы часть баланса
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public void closeLedger() {
+        int folded = snapshotCards();
+        if (folded > 0) log.info("Folded ledger entries of {} cards into card balances", folded);
+    }
+
+    // Вход в режим LEDGER: в режиме LEDGER bank_cards.balance всегда равен последнему снимку карты, а проводок после
+    // снимков нет (журнал свёрнут при выходе). Расхождение - переводы в другом режиме, и снимок выравнивается по карте
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public void openLedger() {
+        Integer aligned = transactionTemplate.execute(status -> balanceSnapshotRepository.alignLatestWithCardBalances());
+        if (aligned != null && aligned > 0) log.info("Aligned {} balance snapshots with card balances changed outside the ledger", aligned);
+    }
+
+    // Текущий баланс карты. Вне режима LEDGER журнал не ведётся и баланс хранится в самой карте
+    public BigDecimal balanceOf(BankCard card) {
+        if (!isEnabled()) return card.getBalance();
+        Optional<BalanceSnapshot> snapshot = balanceSnapshotRepository.findFirstByCardIdOrderByLastEntryIdDesc(card.getId());
+        BigDecimal base = snapshot.map(BalanceSnapshot::getBalance).orElse(card.getBalance());
+        Long afterId = snapshot.map(BalanceSnapshot::getLastEntryId).orElse(0L);
+        return base.add(ledgerEntryRepository.sumBetween(card.getId(), afterId, Long.MAX_VALUE));
+    }
+
+    // Проводки перевода: списание с карты-источника и зачисление на карту-получатель
+    public List<LedgerEntry> entriesOf(List<Transaction> transactions) {
+        List<LedgerEntry> entries = new ArrayList<>(transactions.size() * 2);
+        for (Transaction transaction : transactions) {
+            entries.add(LedgerEntry.debit(transaction));
+            entries.add(LedgerEntry.credit(transaction));
+        }
+        return entries;
+    }
+
+    public void record(Transaction transaction) {
+        ledgerEntryRepository.saveAll(entriesOf(List.of(transaction)));
+    }
+
+    // Подготовка к удалению карты: её транзакции удаляются каскадом вместе с проводками обеих сторон, поэтому карты
+    // на другой стороне переводов сначала сворачивают свои проводки в снимок и их баланс не меняется.
+    // Удаляемая карта блокируется вместе с ними в порядке возрастания id, чтобы новый перевод не появился до удаления
+    public void prepareCardDeletion(Long cardId) {
+        TreeSet<Long> cardIds = new TreeSet<>(ledgerEntryRepository.findCounterpartCardIds(cardId));
+        cardIds.add(cardId);
+        for (Long id : cardIds) {
+            if (id.equals(cardId)) {
+                bankCardRepository.findByIdForUpdate(id);
+            } else {
+                snapshotCard(id);
+            }
+        }
+    }
+
+    // Периодически сворачиваем новые проводки в снимки, чтобы расчёт баланса не перебирал весь журнал.
+    // Вне режима LEDGER это сворачивание проводок экземпляров, которые при смене режима ещё работали в режиме LEDGER
+    @Scheduled(fixedDelayString = "${transfer.ledger.snapshot-interval-ms:60000}")
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public void snapshot() {
+        int snapshots = snapshotCards();
+        log.debug("Created {} balance snapshots", snapshots);
+    }
+
+    // Отметка "до какой проводки свёрнуто" своя у каждой карты - её последний снимок, и сдвигается она только коммитом
+    // снимка этой карты. Каждая карта снимается в своей транзакции: ошибка по одной карте не останавливает остальные
+    private int snapshotCards() {
+        int snapshots = 0;
+        for (Long cardId : ledgerEntryRepository.findCardIdsWithEntriesAfterSnapshot()) {
+            try {
+                if (Boolean.TRUE.equals(transactionTemplate.execute(status -> snapshotCard(cardId)))) snapshots++;
+            } catch (RuntimeException e) {
+                log.warn("Failed to snapshot balance of card {}, will retry on the next pass", cardId, e);
+            }
+        }
+        return snapshots;
+    }
+
+    // Строка карты блокируется FOR UPDATE: перевод держит блокировку своих карт до коммита (списание - FOR UPDATE,
+    // зачисление - FOR SHARE), поэтому после её получения все проводки карты закоммичены и новая не получит меньший id.
+    // Параллельный снимок на другом экземпляре ждёт ту же блокировку и не прибавит проводки второй раз.
+    // В режиме LEDGER bank_cards.balance равен последнему снимку карты, вне его - баланс с учётом переводов в другом режиме
+    private boolean snapshotCard(Long cardId) {
+        Optional<BankCard> card = bankCardRepository.findByIdForUpdate(cardId);
+        if (card.isEmpty()) return false;
+        Long afterId = balanceSnapshotRepository.findFirstByCardIdOrderByLastEntryIdDesc(cardId).map(BalanceSnapshot::getLastEntryId).orElse(0L);
+        Long upToId = ledgerEntryRepository.findMaxIdByCardId(cardId);
+        if (upToId == null || upToId <= afterId) return false;
+        BigDecimal balance = card.get().getBalance().add(ledgerEntryRepository.sumBetween(cardId, afterId, upToId));
+
+        balanceSnapshotRepository.saveAndFlush(new BalanceSnapshot(cardId, balance, upToId));
+        balanceSnapshotRepository.deleteOlderThan(cardId, upToId);
+        // Колонку карты держим равной последнему снимку, чтобы списки карт и отчёты видели почти актуальный баланс
+        bankCardRepository.updateBalance(cardId, balance);
+        return true;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.LoginThrottlingConfig;
+import com.example.bankcards.exception.TooManyRequestsException;
+import com.example.bankcards.security.TokenBucketLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Троттлинг /auth/login до проверки пароля: сначала лимит на IP клиента, затем на имя пользователя
+@Slf4j
+@Service
+public class LoginThrottlingService {
+    private final LoginThrottlingConfig config;
+    private final TokenBucketLimiter ipLimiter;
+    private final TokenBucketLimiter usernameLimiter;
+    private final Counter ipThrottled;
+    private final Counter usernameThrottled;
+
+    @Autowired
+    public LoginThrottlingService(LoginThrottlingConfig config, MeterRegistry meterRegistry) {
+        this(config, meterRegistry, System::nanoTime);
+    }
+
+    LoginThrottlingService(LoginThrottlingConfig config, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.config = config;
+        this.ipLimiter = limiter(config.getIp(), config.getMaxKeys(), nanoClock);
+        this.usernameLimiter = limiter(config.getUsername(), config.getMaxKeys(), nanoClock);
+        this.ipThrottled = meterRegistry.counter("bank.login.throttled", "key", "ip");
+        this.usernameThrottled = meterRegistry.counter("bank.login.throttled", "key", "username");
+        // Новые ключи, ограниченные из-за переполнения карты бакетов (в том числе они входят в bank.login.throttled)
+        FunctionCounter.builder("bank.login.throttling.overflow", ipLimiter, TokenBucketLimiter::rejectedNewKeys).tag("key", "ip").register(meterRegistry);
+        FunctionCounter.builder("bank.login.throttling.overflow", usernameLimiter, TokenBucketLimiter::rejectedNewKeys).tag("key", "username").register(meterRegistry);
+        meterRegistry.gauge("bank.login.throttling.buckets", Tags.of("key", "ip"), ipLimiter, TokenBucketLimiter::size);
+        meterRegistry.gauge("bank.login.throttling.buckets", Tags.of("key", "username"), usernameLimiter, TokenBucketLimiter::size);
+    }
+
+    // Бросает TooManyRequestsException, если попытку входа нужно отклонить. Отклонённая по IP попытка не тратит токен имени,
+    // иначе перебор имён с одного адреса блокировал бы вход настоящим пользователям
+    public void checkLoginAllowed(String username, String clientIp) {
+        if (!config.isEnabled()) return;
+
+        if (clientIp != null) acquire(ipLimiter, clientIp, ipThrottled);
+        acquire(usernameLimiter, username, usernameThrottled);
+    }
+
+    // Полные бакеты ничем не отличаются от отсутствующих, поэтому их можно удалить
+    @Scheduled(fixedDelayString = "${login-throttling.sweep-interval-ms:60000}")
+    public void evictIdleBuckets() {
+        int evicted = ipLimiter.evictIdle() + usernameLimiter.evictIdle();
+        log.debug("Evicted {} idle login throttling buckets", evicted);
+    }
+
+    private void acquire(TokenBucketLimiter limiter, String key, Counter throttled) {
+        long waitNanos = limiter.tryAcquire(key);
+        if (waitNanos == 0) return;
+        throttled.increment();
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        throw new TooManyRequestsException("Too many login attempts, please retry later", retryAfterSeconds);
+    }
+
+    private static TokenBucketLimiter limiter(LoginThrottlingConfig.Limit limit, int maxKeys, LongSupplier nanoClock) {
+        return new TokenBucketLimiter(limit.getCapacity(), limit.getRefillInterval().toNanos(), maxKeys, nanoClock);
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.JwtConfig;
+import com.example.bankcards.entity.RefreshToken;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.RefreshTokenRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.TokenHashes;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.stereotype.Service;
+
+import javax.transaction.Transactional;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+// Непрозрачные refresh-токены: access-токен живёт недолго и проверяется без БД, а продлевается через таблицу refresh_tokens
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RefreshTokenService {
+    private static final int TOKEN_BYTES = 32;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final UserRepository userRepository;
+    private final JwtConfig jwtConfig;
+
+    // Выдать пользователю новый refresh-токен. Клиент получает случайное значение, в БД сохраняется только его хэш
+    @Transactional
+    public String issue(User user) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        secureRandom.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        refreshTokenRepository.save(new RefreshToken(user.getId(), TokenHashes.sha256Hex(token), LocalDateTime.now().plus(jwtConfig.getRefreshToken().getTtl())));
+        return token;
+    }
+
+    // Обменять refresh-токен на новый (ротация). Повторное предъявление уже использованного токена отзывает
+    // все refresh-токены пользователя: один из двух клиентов, владеющих токеном, - злоумышленник
+    @Transactional(dontRollbackOn = BadCredentialsException.class)
+    public Rotation rotate(String token) {
+        RefreshToken stored = refreshTokenRepository.findByTokenHash(TokenHashes.sha256Hex(token))
+                .orElseThrow(() -> new BadCredentialsException("Invalid refresh token"));
+
+        LocalDateTime now = LocalDateTime.now();
+        if (stored.getExpiresAt().isBefore(now)) throw new BadCredentialsException("Refresh token has expired");
+
+        if (refreshTokenRepository.markUsed(stored.getId(), now) == 0) {
+            int revoked = refreshTokenRepository.deleteByUserId(stored.getUserId());
+            log.warn("Reuse of refresh token detected for user {}, revoked {} refresh tokens", stored.getUserId(), revoked);
+            throw new BadCredentialsException("Refresh token has already been used");
+        }
+
+        User user = userRepository.findById(stored.getUserId())
+                .orElseThrow(() -> new BadCredentialsException("Invalid refresh token"));
+        return new Rotation(user, issue(user));
+    }
+
+    // Отозвать предъявленный refresh-токен (logout). Неизвестный или уже отозванный токен - не ошибка
+    @Transactional
+    public void revoke(String token) {
+        refreshTokenRepository.deleteByTokenHash(TokenHashes.sha256Hex(token));
+    }
+
+    // Отозвать все refresh-токены пользователя: logout, когда клиент не предъявил свой refresh-токен
+    @Transactional
+    public int revokeAll(Long userId) {
+        return refreshTokenRepository.deleteByUserId(userId);
+    }
+
+    // Периодически удаляем истёкшие токены, чтобы таблица содержала только живые сессии
+    @Scheduled(fixedDelayString = "${jwt.refresh-token.purge-interval-ms:3600000}")
+    @Transactional
+    public void purgeExpired() {
+        int deleted = refreshTokenRepository.deleteExpiredBefore(LocalDateTime.now());
+        log.debug("Purged {} expired refresh tokens", deleted);
+    }
+
+    // Пользователь, которому принадлежал токен, и выданный ему взамен новый refresh-токен
+    @Getter
+    @RequiredArgsConstructor
+    public static class Rotation {
+        private final User user;
+        private final String refreshToken;
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.JwtConfig;
+import com.example.bankcards.entity.RevokedToken;
+import com.example.bankcards.repository.RevokedTokenRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.transaction.Transactional;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+// Отозванные при logout access-токены (по jti). Проверка в фильтре - один lookup в ConcurrentHashMap;
+// очередь, упорядоченная по exp, выкидывает записи, как только токен истёк бы сам.
+// Отзывы других экземпляров дочитываются из таблицы раз в jwt.denylist.refresh-interval-ms
+@Slf4j
+@Service
+public class TokenDenylistService {
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final JwtConfig jwtConfig;
+    // jti -> момент истечения токена (мс)
+    private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+    private final DelayQueue<Expiry> expiries = new DelayQueue<>();
+    // Момент начала прошлого чтения таблицы; null - таблица ещё не читалась
+    private LocalDateTime lastLoadedAt;
+
+    public TokenDenylistService(RevokedTokenRepository revokedTokenRepository, JwtConfig jwtConfig, MeterRegistry meterRegistry) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.jwtConfig = jwtConfig;
+        meterRegistry.gauge("bank.jwt.denylist.size", revokedTokens, Map::size);
+    }
+
+    // После рестарта восстанавливаем ещё не истёкшие отзывы из таблицы
+    @PostConstruct
+    public synchronized void loadRevokedTokens() {
+        if (!jwtConfig.getDenylist().isPersistent()) return;
+
+        lastLoadedAt = LocalDateTime.now();
+        revokedTokenRepository.findByExpiresAtAfter(lastLoadedAt).forEach(this::remember);
+        log.info("Loaded {} revoked tokens", revokedTokens.size());
+    }
+
+    // Дочитываем отзывы, сделанные после прошлого чтения, в том числе logout на других экземплярах
+    @Scheduled(fixedDelayString = "${jwt.denylist.refresh-interval-ms:5000}", initialDelayString = "${jwt.denylist.refresh-interval-ms:5000}")
+    public synchronized void refresh() {
+        if (!jwtConfig.getDenylist().isPersistent()) return;
+        if (lastLoadedAt == null) {
+            loadRevokedTokens();
+            return;
+        }
+
+        LocalDateTime since = lastLoadedAt.minus(jwtConfig.getDenylist().getRefreshOverlap());
+        lastLoadedAt = LocalDateTime.now();
+        int before = revokedTokens.size();
+        revokedTokenRepository.findByRevokedAtAfterAndExpiresAtAfter(since, lastLoadedAt).forEach(this::remember);
+        log.debug("Refreshed revoked tokens: {} new", revokedTokens.size() - before);
+    }
+
+    // Отозвать токен до его истечения. Уже истёкший токен и токен без jti запоминать незачем
+    @Transactional
+    public void revoke(String tokenId, Date expiresAt) {
+        if (tokenId == null || expiresAt == null || expiresAt.getTime() <= System.currentTimeMillis()) return;
+
+        if (jwtConfig.getDenylist().isPersistent()) {
+            revokedTokenRepository.save(new RevokedToken(tokenId, LocalDateTime.ofInstant(expiresAt.toInstant(), ZoneId.systemDefault())));
+        }
+        remember(tokenId, expiresAt.getTime());
+    }
+
+    public boolean isRevoked(String tokenId) {
+        return tokenId != null && revokedTokens.containsKey(tokenId);
+    }
+
+    // Удаляем записи об истёкших токенах: из очереди выходят только они, в порядке exp
+    @Scheduled(fixedDelayString = "${jwt.denylist.purge-interval-ms:60000}")
+    @Transactional
+    public void purgeExpired() {
+        int purged = 0;
+        for (Expiry expiry = expiries.poll(); expiry != null; expiry = expiries.poll()) {
+            revokedTokens.remove(expiry.getTokenId(), expiry.getExpiresAt());
+            purged++;
+        }
+        if (jwtConfig.getDenylist().isPersistent()) {
+            revokedTokenRepository.deleteExpiredBefore(LocalDateTime.now());
+        }
+        log.debug("Purged {} expired revoked tokens", purged);
+    }
+
+    public int size() {
+        return revokedTokens.size();
+    }
+
+    private void remember(RevokedToken revokedToken) {
+        remember(revokedToken.getTokenId(), revokedToken.getExpiresAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+
+    private void remember(String tokenId, long expiresAt) {
+        if (revokedTokens.put(tokenId, expiresAt) == null) {
+            expiries.add(new Expiry(tokenId, expiresAt));
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class Expiry implements Delayed {
+        private final String tokenId;
+        private final Long expiresAt;
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(expiresAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(expiresAt, ((Expiry) other).expiresAt);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.JwtConfig;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// Версии токенов пользователей. Токен принимается, только если его версия совпадает с текущей версией пользователя;
+// версии держим в ограниченном кэше и перечитываем из БД раз в jwt.token-version.ttl
+@Service
+public class TokenVersionService {
+    private final UserRepository userRepository;
+    private final JwtConfig jwtConfig;
+    private final BoundedCache<Long, CachedVersion> cache;
+
+    public TokenVersionService(UserRepository userRepository, JwtConfig jwtConfig) {
+        this.userRepository = userRepository;
+        this.jwtConfig = jwtConfig;
+        this.cache = new BoundedCache<>(jwtConfig.getTokenVersion().getMaxSize());
+    }
+
+    // Выдан ли токен с этой версией для текущей версии пользователя. Для удалённого пользователя - нет
+    public boolean isCurrent(Long userId, int tokenVersion) {
+        CachedVersion cached = cache.get(userId);
+        if (cached == null || cached.getLoadedAt() + jwtConfig.getTokenVersion().getTtl().toMillis() < System.currentTimeMillis()) {
+            cached = new CachedVersion(userRepository.findTokenVersionById(userId).orElse(null), System.currentTimeMillis());
+            cache.put(userId, cached);
+        }
+        return cached.getVersion() != null && cached.getVersion() == tokenVersion;
+    }
+
+    // Отозвать все выданные пользователю токены. Кэш обновляется только после коммита,
+    // чтобы откаченная транзакция не оставила в нём несуществующую версию
+    public void revokeTokens(User user) {
+        user.setTokenVersion(user.getTokenVersion() + 1);
+        afterCommit(() -> cache.put(user.getId(), new CachedVersion(user.getTokenVersion(), System.currentTimeMillis())));
+    }
+
+    // Пользователь удалён: его токены больше не принимаются
+    public void forget(Long userId) {
+        afterCommit(() -> cache.put(userId, new CachedVersion(null, System.currentTimeMillis())));
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class CachedVersion {
+        private final Integer version;
+        private final long loadedAt;
+    }
+}
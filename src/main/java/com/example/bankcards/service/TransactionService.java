@@ -1,43 +1,235 @@
 package com.example.bankcards.service;
+import com.example.bankcards.config.TransferConfig;
+import com.example.bankcards.dto.request.TransferRequest;
+import com.example.bankcards.dto.response.BatchTransferItemResult;
+import com.example.bankcards.dto.response.BatchTransferResponse;
 import com.example.bankcards.entity.BankCard;
 import com.example.bankcards.entity.Transaction;
-import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.TransactionStatus;
 import com.example.bankcards.exception.CardOperationException;
 import com.example.bankcards.exception.InsufficientFundsException;
 import com.example.bankcards.exception.ResourceNotFoundException;
 import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.TransactionBatchRepository;
 import com.example.bankcards.repository.TransactionRepository;
-import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.UserPrincipal;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.security.access.AccessDeniedException;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.transaction.Transactional;
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Service
 @RequiredArgsConstructor
 @Transactional
 public class TransactionService {
     private final TransactionRepository transactionRepository;
+    private final TransactionBatchRepository transactionBatchRepository;
     private final BankCardRepository bankCardRepository;
-    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransferConfig transferConfig;
+    private final IdempotencyService idempotencyService;
+    private final CardLockManager cardLockManager;
+    private final LedgerService ledgerService;
+    private final MeterRegistry meterRegistry;
 
-    private User getCurrentUser() {
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        return userRepository.findByFirstNameAndLastName(username.split(" ")[0], username.split(" ")[1])
-                .orElseThrow(() -> new ResourceNotFoundException("User", "firstName",  username.split(" ")[0], "lastName", username.split(" ")[1]));
+    // Перевод между своими картами.
+    // Транзакцию БД открываем вручную: в оптимистичном режиме каждая повторная попытка должна идти в новой транзакции
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public Transaction transferBetweenMyCards(Long fromCardId, Long toCardId, BigDecimal value, String description){
+        return transferBetweenMyCards(fromCardId, toCardId, value, description, null);
     }
 
-    // Перевод между своими картами
-    public Transaction transferBetweenMyCards(Long fromCardId, Long toCardId, BigDecimal value, String description){
-        User currentUser = getCurrentUser();
-        BankCard fromCard = bankCardRepository.findByIdAndOwnerId(fromCardId, currentUser.getId())
-                 .orElseThrow(() -> new AccessDeniedException("Source card not found or access denied"));
-        BankCard toCard = bankCardRepository.findByIdAndOwnerId(toCardId, currentUser.getId())
-                .orElseThrow(() -> new AccessDeniedException("Destination card not found or access denied"));
+    // Перевод с ключом идемпотентности: повтор запроса с тем же ключом (например, после таймаута у клиента)
+    // возвращает исходную транзакцию и не списывает деньги второй раз
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public Transaction transferBetweenMyCards(Long fromCardId, Long toCardId, BigDecimal value, String description, String idempotencyKey){
+        Long ownerId = UserPrincipal.current().getId();
+        return withIdempotencyKey(ownerId, fromCardId, toCardId, value, idempotencyKey,
+                fingerprint -> executeTransfer(ownerId, fromCardId, toCardId, value, () -> newTransaction(value, description), idempotencyKey, fingerprint));
+    }
+
+    // Асинхронный перевод, шаг 1: сохранить перевод в статусе PENDING, деньги не двигаются.
+    // Проверяются только сумма и принадлежность карт, остальное - при обработке
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public Transaction createPendingTransfer(Long fromCardId, Long toCardId, BigDecimal value, String description, String idempotencyKey) {
+        Long ownerId = UserPrincipal.current().getId();
+        return withIdempotencyKey(ownerId, fromCardId, toCardId, value, idempotencyKey,
+                fingerprint -> inTransaction(ownerId, idempotencyKey, fingerprint, () -> {
+                    if (value == null || value.compareTo(BigDecimal.ZERO) <= 0) {
+                        throw new CardOperationException("Transfer amount must be greater than zero");
+                    }
+                    Transaction transaction = newTransaction(value, description);
+                    transaction.setFromCard(findSourceCard(fromCardId, ownerId, false));
+                    transaction.setToCard(findDestinationCard(toCardId, ownerId, false));
+                    return transactionRepository.save(transaction);
+                }));
+    }
+
+    // Асинхронный перевод, шаг 2 (в потоке обработчика): провести PENDING-перевод в текущем режиме и перевести его в SUCCESS.
+    // Ошибки перевода пробрасываются, статус FAILED выставляет вызывающий через failPendingTransfer
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public Transaction completePendingTransfer(Long transactionId) {
+        Transaction pending = findTransaction(transactionId);
+        if (!pending.isPending()) return pending;
+        Long ownerId = transactionRepository.findOwnerIdById(transactionId)
+                .orElseThrow(() -> new ResourceNotFoundException("Transaction", "id", transactionId));
+        Long fromCardId = pending.getFromCard().getId();
+        Long toCardId = pending.getToCard().getId();
+        return executeTransfer(ownerId, fromCardId, toCardId, pending.getAmount(), () -> claimPending(transactionId), null, null);
+    }
+
+    // Отметить перевод неуспешным, если он всё ещё PENDING
+    public void failPendingTransfer(Long transactionId, String reason) {
+        String failureReason = reason != null && reason.length() > 255 ? reason.substring(0, 255) : reason;
+        transactionRepository.markFailed(transactionId, failureReason);
+    }
+
+    // Переводы, зависшие в PENDING (например, после перезапуска приложения)
+    public List<Long> findStalePendingTransferIds(LocalDateTime createdBefore) {
+        return transactionRepository.findIdsByStatusAndTimestampBefore(TransactionStatus.PENDING, createdBefore);
+    }
+
+    // Получить свою транзакцию (в том числе для опроса статуса асинхронного перевода)
+    public Transaction getMyTransaction(Long transactionId) {
+        Long userId = UserPrincipal.current().getId();
+        Transaction transaction = findTransaction(transactionId);
+        if (!transaction.isOwnedBy(userId)) throw new AccessDeniedException("Access denied");
+        return transaction;
+    }
+
+    // Повтор запроса с тем же ключом возвращает транзакцию, созданную первым запросом
+    private Transaction withIdempotencyKey(Long ownerId, Long fromCardId, Long toCardId, BigDecimal value, String idempotencyKey, Function<String, Transaction> execute) {
+        if (idempotencyKey == null) return execute.apply(null);
+
+        String fingerprint = idempotencyService.fingerprint(fromCardId, toCardId, value);
+        Long existingId = idempotencyService.findTransactionId(ownerId, idempotencyKey, fingerprint);
+        if (existingId != null) return findTransaction(existingId);
+        try {
+            Transaction transaction = execute.apply(fingerprint);
+            idempotencyService.cache(ownerId, idempotencyKey, fingerprint, transaction.getId());
+            return transaction;
+        } catch (DataIntegrityViolationException e) {
+            // Параллельный запрос с тем же ключом закоммитил первым, наш перевод откатился вместе с вставкой ключа
+            Long winnerId = idempotencyService.findTransactionId(ownerId, idempotencyKey, fingerprint);
+            if (winnerId == null) throw e;
+            return findTransaction(winnerId);
+        }
+    }
+
+    // Если включены блокировки карт в JVM, берём их до открытия транзакции БД.
+    // transactionSource вызывается внутри транзакции БД и даёт запись перевода: новую или заблокированную PENDING
+    private Transaction executeTransfer(Long ownerId, Long fromCardId, Long toCardId, BigDecimal value, Supplier<Transaction> transactionSource, String idempotencyKey, String fingerprint) {
+        return cardLockManager.withCardLocks(List.of(fromCardId, toCardId),
+                () -> executeTransferInMode(ownerId, fromCardId, toCardId, value, transactionSource, idempotencyKey, fingerprint));
+    }
+
+    private Transaction executeTransferInMode(Long ownerId, Long fromCardId, Long toCardId, BigDecimal value, Supplier<Transaction> transactionSource, String idempotencyKey, String fingerprint) {
+        switch (transferConfig.getMode()) {
+            case OPTIMISTIC:
+                return transferWithRetry(ownerId, fromCardId, toCardId, value, transactionSource, idempotencyKey, fingerprint);
+            case CONDITIONAL_UPDATE:
+                return inTransaction(ownerId, idempotencyKey, fingerprint, () -> transferWithConditionalUpdates(ownerId, fromCardId, toCardId, value, transactionSource));
+            case LEDGER:
+                return inTransaction(ownerId, idempotencyKey, fingerprint, () -> transferWithLedger(ownerId, fromCardId, toCardId, value, transactionSource));
+            default:
+                return inTransaction(ownerId, idempotencyKey, fingerprint, () -> transfer(ownerId, fromCardId, toCardId, value, transactionSource, true));
+        }
+    }
+
+    // Выполнить перевод в новой транзакции БД; ключ идемпотентности сохраняется в той же транзакции
+    private Transaction inTransaction(Long ownerId, String idempotencyKey, String fingerprint, Supplier<Transaction> transfer) {
+        return transactionTemplate.execute(status -> {
+            Transaction transaction = transfer.get();
+            if (idempotencyKey != null) idempotencyService.save(ownerId, idempotencyKey, fingerprint, transaction.getId());
+            return transaction;
+        });
+    }
+
+    private Transaction newTransaction(BigDecimal value, String description) {
+        Transaction transaction = new Transaction();
+        transaction.setAmount(value);
+        transaction.setDescription(description);
+        return transaction;
+    }
+
+    // Заблокировать PENDING-перевод до конца транзакции: параллельный обработчик того же перевода дождётся и получит отказ
+    private Transaction claimPending(Long transactionId) {
+        Transaction transaction = transactionRepository.findByIdForUpdate(transactionId)
+                .orElseThrow(() -> new ResourceNotFoundException("Transaction", "id", transactionId));
+        if (!transaction.isPending()) throw new CardOperationException("Transaction " + transactionId + " is already processed");
+        return transaction;
+    }
+
+    // Записать проведённый перевод
+    private Transaction complete(Transaction transaction, BankCard fromCard, BankCard toCard) {
+        transaction.setFromCard(fromCard);
+        transaction.setToCard(toCard);
+        transaction.setStatus(TransactionStatus.SUCCESS);
+        return transactionRepository.save(transaction);
+    }
+
+    private Transaction findTransaction(Long id) {
+        return transactionRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Transaction", "id", id));
+    }
+
+    // Оптимистичный режим: строки не блокируем, при конфликте версий повторяем перевод с экспоненциальной задержкой и джиттером
+    private Transaction transferWithRetry(Long ownerId, Long fromCardId, Long toCardId, BigDecimal value, Supplier<Transaction> transactionSource, String idempotencyKey, String fingerprint) {
+        int attempt = 1;
+        while (true) {
+            try {
+                return inTransaction(ownerId, idempotencyKey, fingerprint, () -> transfer(ownerId, fromCardId, toCardId, value, transactionSource, false));
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= transferConfig.getMaxAttempts()) {
+                    meterRegistry.counter("bank.transfer.optimistic.exhausted").increment();
+                    throw e;
+                }
+                meterRegistry.counter("bank.transfer.optimistic.retries").increment();
+                backoff(attempt++);
+            }
+        }
+    }
+
+    private void backoff(int attempt) {
+        long ceiling = Math.min(transferConfig.getMaxBackoffMs(), transferConfig.getInitialBackoffMs() << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CardOperationException("Transfer was interrupted");
+        }
+    }
+
+    private Transaction transfer(Long ownerId, Long fromCardId, Long toCardId, BigDecimal value, Supplier<Transaction> transactionSource, boolean lock) {
+        Transaction transaction = transactionSource.get();
+        // Читаем (и при lock = true блокируем) карты всегда в порядке возрастания id,
+        // чтобы встречные переводы A->B и B->A не приводили к дедлоку
+        BankCard fromCard;
+        BankCard toCard;
+        if (fromCardId <= toCardId) {
+            fromCard = findSourceCard(fromCardId, ownerId, lock);
+            toCard = findDestinationCard(toCardId, ownerId, lock);
+        } else {
+            toCard = findDestinationCard(toCardId, ownerId, lock);
+            fromCard = findSourceCard(fromCardId, ownerId, lock);
+        }
         if (value == null || value.compareTo(BigDecimal.ZERO) <= 0) {
             throw new CardOperationException("Transfer amount must be greater than zero");
         }
@@ -50,19 +242,189 @@ public class TransactionService {
         toCard.deposit(value);
         bankCardRepository.save(fromCard);
         bankCardRepository.save(toCard);
+        return complete(transaction, fromCard, toCard);
+    }
 
-        Transaction transaction = new Transaction();
-        transaction.setAmount(value);
-        transaction.setToCard(toCard);
-        transaction.setFromCard(fromCard);
-        transaction.setDescription(description);
-        return transactionRepository.save(transaction);
+    // Перевод без чтения карт: два условных UPDATE и вставка транзакции.
+    // Строки обновляем в порядке возрастания id (как и при блокировке), чтобы встречные переводы не давали дедлок
+    private Transaction transferWithConditionalUpdates(Long ownerId, Long fromCardId, Long toCardId, BigDecimal value, Supplier<Transaction> transactionSource) {
+        if (value == null || value.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new CardOperationException("Transfer amount must be greater than zero");
+        }
+        Transaction transaction = transactionSource.get();
+        if (fromCardId <= toCardId) {
+            debit(ownerId, fromCardId, value);
+            credit(ownerId, toCardId, value);
+        } else {
+            credit(ownerId, toCardId, value);
+            debit(ownerId, fromCardId, value);
+        }
+        return complete(transaction, bankCardRepository.getReferenceById(fromCardId), bankCardRepository.getReferenceById(toCardId));
+    }
+
+    private void debit(Long ownerId, Long cardId, BigDecimal value) {
+        if (bankCardRepository.debitIfSufficient(cardId, ownerId, value) == 1) return;
+        // Строка не обновилась - дочитываем карту только ради понятной ошибки
+        BankCard card = findSourceCard(cardId, ownerId, false);
+        if (!card.isActive()) throw new CardOperationException("Source card is not active");
+        throw new InsufficientFundsException("Insufficient funds on source card. Available: " + card.getBalance());
+    }
+
+    private void credit(Long ownerId, Long cardId, BigDecimal value) {
+        if (bankCardRepository.creditIfActive(cardId, ownerId, value) == 1) return;
+        findDestinationCard(cardId, ownerId, false);
+        throw new CardOperationException("Destination card is not active");
+    }
+
+    // Перевод через журнал проводок: строки карт не обновляются, дописываются две проводки.
+    // Карта списания блокируется FOR UPDATE (списания с одной карты идут по очереди, чтобы не уйти в минус),
+    // карта зачисления - FOR SHARE: зачисления на карту друг друга не ждут, но снимок баланса дождётся коммита перевода.
+    // Блокировки берутся в порядке возрастания id, как в пессимистичном режиме, чтобы встречные переводы не дали дедлок
+    private Transaction transferWithLedger(Long ownerId, Long fromCardId, Long toCardId, BigDecimal value, Supplier<Transaction> transactionSource) {
+        Transaction transaction = transactionSource.get();
+        BankCard fromCard;
+        BankCard toCard;
+        if (fromCardId.compareTo(toCardId) < 0) {
+            fromCard = findSourceCard(fromCardId, ownerId, true);
+            toCard = findDestinationCardForShare(toCardId, ownerId);
+        } else {
+            toCard = findDestinationCardForShare(toCardId, ownerId);
+            fromCard = findSourceCard(fromCardId, ownerId, true);
+        }
+        if (value == null || value.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new CardOperationException("Transfer amount must be greater than zero");
+        }
+
+        if (!fromCard.isActive()) throw new CardOperationException("Source card is not active");
+        if (!toCard.isActive()) throw new CardOperationException("Destination card is not active");
+        BigDecimal available = ledgerService.balanceOf(fromCard);
+        if (available.compareTo(value) < 0) throw new InsufficientFundsException("Insufficient funds on source card. Available: " + available);
+
+        transaction = complete(transaction, fromCard, toCard);
+        ledgerService.record(transaction);
+        return transaction;
+    }
+
+    private BankCard findSourceCard(Long cardId, Long ownerId, boolean lock) {
+        return findCard(cardId, ownerId, lock)
+                .orElseThrow(() -> new AccessDeniedException("Source card not found or access denied"));
+    }
+
+    private BankCard findDestinationCard(Long cardId, Long ownerId, boolean lock) {
+        return findCard(cardId, ownerId, lock)
+                .orElseThrow(() -> new AccessDeniedException("Destination card not found or access denied"));
+    }
+
+    private BankCard findDestinationCardForShare(Long cardId, Long ownerId) {
+        return bankCardRepository.findByIdAndOwnerIdForShare(cardId, ownerId)
+                .orElseThrow(() -> new AccessDeniedException("Destination card not found or access denied"));
+    }
+
+    private Optional<BankCard> findCard(Long cardId, Long ownerId, boolean lock) {
+        return lock ? bankCardRepository.findByIdAndOwnerIdForUpdate(cardId, ownerId)
+                : bankCardRepository.findByIdAndOwnerId(cardId, ownerId);
+    }
+
+    // Пакетный перевод между своими картами в одной транзакции БД.
+    // Все карты пакета блокируются одним запросом, переводы проверяются и применяются в памяти,
+    // затем новые балансы и записи транзакций уходят в БД JDBC-батчами
+    public BatchTransferResponse transferBatch(List<TransferRequest> transfers, boolean allOrNothing) {
+        Long ownerId = UserPrincipal.current().getId();
+        TreeSet<Long> cardIds = new TreeSet<>();
+        for (TransferRequest transfer : transfers) {
+            cardIds.add(transfer.getFromCardId());
+            cardIds.add(transfer.getToCardId());
+        }
+        Map<Long, BankCard> cards = new HashMap<>();
+        Map<Long, BigDecimal> balances = new TreeMap<>();
+        for (BankCard card : bankCardRepository.findAllByIdInAndOwnerIdForUpdate(cardIds, ownerId)) {
+            cards.put(card.getId(), card);
+            balances.put(card.getId(), ledgerService.balanceOf(card));
+        }
+
+        List<BatchTransferItemResult> results = new ArrayList<>(transfers.size());
+        List<Transaction> applied = new ArrayList<>();
+        List<BatchTransferItemResult> appliedResults = new ArrayList<>();
+        for (int i = 0; i < transfers.size(); i++) {
+            TransferRequest transfer = transfers.get(i);
+            try {
+                applyInMemory(transfer, cards, balances);
+            } catch (AccessDeniedException | CardOperationException | InsufficientFundsException e) {
+                results.add(new BatchTransferItemResult(i, TransactionStatus.FAILED, null, e.getMessage()));
+                continue;
+            }
+            Transaction transaction = new Transaction();
+            transaction.setAmount(transfer.getAmount());
+            transaction.setFromCard(cards.get(transfer.getFromCardId()));
+            transaction.setToCard(cards.get(transfer.getToCardId()));
+            transaction.setDescription(transfer.getDescription());
+            transaction.setTimestamp(LocalDateTime.now());
+            transaction.setStatus(TransactionStatus.SUCCESS);
+            applied.add(transaction);
+
+            BatchTransferItemResult result = new BatchTransferItemResult(i, TransactionStatus.SUCCESS, null, null);
+            appliedResults.add(result);
+            results.add(result);
+        }
+
+        int failed = transfers.size() - applied.size();
+        if (allOrNothing && failed > 0) {
+            // Ничего не записываем: все переводы пакета считаются неуспешными
+            for (BatchTransferItemResult result : appliedResults) {
+                result.setStatus(TransactionStatus.FAILED);
+                result.setError("Batch rejected because other transfers failed");
+            }
+            return batchResponse(results, 0, transfers.size());
+        }
+
+        if (!applied.isEmpty()) {
+            if (!ledgerService.isEnabled()) {
+                balances.keySet().removeIf(cardId -> balances.get(cardId).compareTo(cards.get(cardId).getBalance()) == 0);
+                transactionBatchRepository.updateBalances(balances);
+            }
+            List<Long> ids = transactionBatchRepository.insertTransactions(applied);
+            for (int i = 0; i < appliedResults.size(); i++) {
+                applied.get(i).setId(ids.get(i));
+                appliedResults.get(i).setTransactionId(ids.get(i));
+            }
+            // В режиме LEDGER вместо обновления балансов дописываем проводки
+            if (ledgerService.isEnabled()) transactionBatchRepository.insertLedgerEntries(ledgerService.entriesOf(applied));
+        }
+        return batchResponse(results, applied.size(), failed);
+    }
+
+    // Проверить перевод пакета по текущим (уже изменённым предыдущими переводами) балансам и применить его
+    private void applyInMemory(TransferRequest transfer, Map<Long, BankCard> cards, Map<Long, BigDecimal> balances) {
+        BankCard fromCard = cards.get(transfer.getFromCardId());
+        if (fromCard == null) throw new AccessDeniedException("Source card not found or access denied");
+        BankCard toCard = cards.get(transfer.getToCardId());
+        if (toCard == null) throw new AccessDeniedException("Destination card not found or access denied");
+        BigDecimal value = transfer.getAmount();
+        if (value == null || value.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new CardOperationException("Transfer amount must be greater than zero");
+        }
+
+        if (!fromCard.isActive()) throw new CardOperationException("Source card is not active");
+        if (!toCard.isActive()) throw new CardOperationException("Destination card is not active");
+        BigDecimal available = balances.get(fromCard.getId());
+        if (available.compareTo(value) < 0) throw new InsufficientFundsException("Insufficient funds on source card. Available: " + available);
+
+        balances.put(fromCard.getId(), available.subtract(value));
+        balances.merge(toCard.getId(), value, BigDecimal::add);
+    }
+
+    private BatchTransferResponse batchResponse(List<BatchTransferItemResult> results, int succeeded, int failed) {
+        BatchTransferResponse response = new BatchTransferResponse();
+        response.setResults(results);
+        response.setSucceeded(succeeded);
+        response.setFailed(failed);
+        return response;
     }
 
     // Получить список транзакций текущего пользователя
     public List<Transaction> muTransactions(){
-        User currentUser = getCurrentUser();
-        return transactionRepository.findByFromCardOwnerIdOrToCardOwnerId(currentUser.getId(), currentUser.getId());
+        Long userId = UserPrincipal.current().getId();
+        return transactionRepository.findByFromCardOwnerIdOrToCardOwnerId(userId, userId);
     }
 
 
@@ -1,18 +1,41 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.config.UserDetailsCacheConfig;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.BankUserDetails;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 @Service
-@RequiredArgsConstructor
 public class UserDetailsServiceImpl implements UserDetailsService {
 
     private final UserRepository userRepository;
+    private final UserDetailsCacheConfig cacheConfig;
+    private final UserNameFilter userNameFilter;
+    // Кэш: "Имя Фамилия" -> учётные данные на момент загрузки. Наружу отдаём только копии:
+    // ProviderManager стирает пароль в возвращённом UserDetails
+    private final BoundedCache<String, CachedUserDetails> cache;
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+
+    public UserDetailsServiceImpl(UserRepository userRepository, UserDetailsCacheConfig cacheConfig, UserNameFilter userNameFilter, MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.cacheConfig = cacheConfig;
+        this.userNameFilter = userNameFilter;
+        this.cache = new BoundedCache<>(cacheConfig.getMaxSize());
+        this.cacheHits = meterRegistry.counter("bank.user.details.cache", "result", "hit");
+        this.cacheMisses = meterRegistry.counter("bank.user.details.cache", "result", "miss");
+        meterRegistry.gauge("bank.user.details.cache.size", cache, BoundedCache::size);
+    }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
@@ -25,14 +48,49 @@ public class UserDetailsServiceImpl implements UserDetailsService {
         String firstName = names[0];
         String lastName = names[1];
 
+        if (cacheConfig.isEnabled()) {
+            CachedUserDetails cached = cache.get(username);
+            if (cached != null && cached.getLoadedAt() + cacheConfig.getTtl().toMillis() > System.currentTimeMillis()) {
+                cacheHits.increment();
+                return cached.getUserDetails().copy();
+            }
+            cacheMisses.increment();
+        }
+
+        // Неизвестное имя (перебор логинов) отклоняем без поиска по имени. Созданных другими экземплярами фильтр видит
+        // после refresh: до него такой пользователь получает обычный отказ в логине и может повторить вход
+        if (!userNameFilter.mightExist(firstName, lastName)) {
+            throw new UsernameNotFoundException("User not found with name: " + firstName + " " + lastName);
+        }
+
         User user = userRepository.findByFirstNameAndLastName(firstName, lastName)
                 .orElseThrow(() -> new UsernameNotFoundException(
                         "User not found with name: " + firstName + " " + lastName));
 
-        return org.springframework.security.core.userdetails.User.builder()
-                .username(username)
-                .password(user.getPassword())
-                .roles(user.getRole().name().replace("ROLE_", "")) // "ROLE_ADMIN" -> "ADMIN"
-                .build();
+        BankUserDetails userDetails = new BankUserDetails(user);
+        if (cacheConfig.isEnabled()) cache.put(username, new CachedUserDetails(userDetails.copy(), System.currentTimeMillis()));
+        return userDetails;
+    }
+
+    // Пароль, роль или сам пользователь изменились: следующий логин прочитает его из БД.
+    // Вытесняем и сразу, и после коммита, чтобы параллельный логин не вернул в кэш данные до изменения
+    public void evict(User user) {
+        String username = user.getFirstName() + " " + user.getLastName();
+        cache.remove(username);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.remove(username);
+                }
+            });
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class CachedUserDetails {
+        private final BankUserDetails userDetails;
+        private final long loadedAt;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,213 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.UserNameFilterConfig;
+import com.example.bankcards.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.transaction.Transactional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+// Bloom-фильтр имён "Имя Фамилия" всех пользователей. Используется только для отказа в логине без запроса в БД:
+// ответ "нет" точен для пользователей, уже попавших в фильтр, а созданных другими экземплярами приложения фильтр видит
+// с задержкой refresh. Дубликаты при регистрации фильтр не проверяет - их отклоняет уникальный индекс.
+// Пока фильтр не построен или выключен, ответ всегда "возможно"
+@Slf4j
+@Service
+public class UserNameFilter {
+    private final UserRepository userRepository;
+    private final UserNameFilterConfig config;
+    private final Counter absent;
+    private final Counter mightExist;
+
+    private volatile BloomFilter current;
+    // Фильтр, который сейчас перестраивается: новые имена пишутся и в него, чтобы не потеряться при замене
+    private volatile BloomFilter next;
+    // Наибольший id, уже попавший в фильтр: новых пользователей других экземпляров дочитываем по id
+    private volatile long maxUserId;
+    private final AtomicInteger deletedSinceRebuild = new AtomicInteger();
+
+    public UserNameFilter(UserRepository userRepository, UserNameFilterConfig config, MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.config = config;
+        this.absent = meterRegistry.counter("bank.user.name.filter", "result", "absent");
+        this.mightExist = meterRegistry.counter("bank.user.name.filter", "result", "maybe");
+    }
+
+    // false - имени нет в фильтре. Пользователи других экземпляров, ещё не дочитанные refresh, сюда не входят
+    public boolean mightExist(String firstName, String lastName) {
+        BloomFilter filter = current;
+        if (!config.isEnabled() || filter == null) return true;
+
+        if (filter.mightContain(key(firstName, lastName))) {
+            mightExist.increment();
+            return true;
+        }
+        absent.increment();
+        return false;
+    }
+
+    // Пользователь создан. В фильтр попадает после коммита: перестроение читает БД и не должно разойтись с фильтром
+    public void added(String firstName, String lastName) {
+        afterCommit(() -> put(key(firstName, lastName)));
+    }
+
+    // Bloom-фильтр не умеет удалять: имя остаётся ложноположительным до перестроения. Учитываем только закоммиченное
+    // удаление, иначе откат сдвинул бы счётчик и фильтр перестраивался бы без нужды
+    public void removed() {
+        afterCommit(deletedSinceRebuild::incrementAndGet);
+    }
+
+    // Построить фильтр заново потоковым запросом, не загружая сущности. Периодическое перестроение подбирает и тех
+    // пользователей других экземпляров, чей id оказался меньше уже прочитанного (транзакция закоммичена позже)
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${user-name-filter.rebuild-interval-ms:3600000}", initialDelayString = "${user-name-filter.rebuild-interval-ms:3600000}")
+    @Transactional
+    public synchronized void rebuild() {
+        if (!config.isEnabled()) return;
+
+        long users = userRepository.count();
+        BloomFilter filter = new BloomFilter((int) Math.max(config.getExpectedInsertions(), users * 2), config.getFalsePositiveRate());
+        next = filter;
+        deletedSinceRebuild.set(0);
+        long maxId = load(filter, 0L);
+
+        current = filter;
+        next = null;
+        maxUserId = maxId;
+        log.info("User name filter rebuilt: {} users, {} bits, {} hash functions", users, filter.bitCount(), filter.hashFunctions());
+    }
+
+    // Дочитать пользователей, созданных другими экземплярами приложения; перестроить фильтр, если он переполнен
+    // или в нём накопилось много удалённых имён
+    @Scheduled(fixedDelayString = "${user-name-filter.refresh-interval-ms:5000}")
+    @Transactional
+    public synchronized void refresh() {
+        BloomFilter filter = current;
+        if (!config.isEnabled() || filter == null) return;
+
+        if (filter.size() > filter.capacity() || deletedSinceRebuild.get() > filter.capacity() / 10) {
+            rebuild();
+            return;
+        }
+        maxUserId = load(filter, maxUserId);
+    }
+
+    private long load(BloomFilter filter, long afterId) {
+        long maxId = afterId;
+        try (Stream<UserRepository.UserName> names = userRepository.streamNamesAfterId(afterId)) {
+            for (UserRepository.UserName name : (Iterable<UserRepository.UserName>) names::iterator) {
+                filter.put(key(name.getFirstName(), name.getLastName()));
+                maxId = Math.max(maxId, name.getId());
+            }
+        }
+        return maxId;
+    }
+
+    private void put(String key) {
+        BloomFilter filter = current;
+        if (filter != null) filter.put(key);
+        BloomFilter rebuilding = next;
+        if (rebuilding != null) rebuilding.put(key);
+    }
+
+    private String key(String firstName, String lastName) {
+        return firstName + " " + lastName;
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    // Bloom-фильтр на AtomicLongArray: добавление без блокировок, k индексов из двух 64-битных хэшей (double hashing)
+    static class BloomFilter {
+        private final AtomicLongArray words;
+        private final long bits;
+        private final int hashFunctions;
+        private final int capacity;
+        private final AtomicInteger size = new AtomicInteger();
+
+        BloomFilter(int capacity, double falsePositiveRate) {
+            // m = -n ln p / (ln 2)^2, k = m / n * ln 2
+            long m = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.words = new AtomicLongArray((int) ((m + 63) / 64));
+            this.bits = words.length() * 64L;
+            this.hashFunctions = Math.max(1, (int) Math.round((double) bits / capacity * Math.log(2)));
+            this.capacity = capacity;
+        }
+
+        void put(String key) {
+            long h1 = hash(key, 0);
+            long h2 = hash(key, 0x9E3779B97F4A7C15L) | 1;
+            for (int i = 0; i < hashFunctions; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+                long mask = 1L << bit;
+                int word = (int) (bit >>> 6);
+                long value = words.get(word);
+                while ((value & mask) == 0 && !words.compareAndSet(word, value, value | mask)) {
+                    value = words.get(word);
+                }
+            }
+            size.incrementAndGet();
+        }
+
+        boolean mightContain(String key) {
+            long h1 = hash(key, 0);
+            long h2 = hash(key, 0x9E3779B97F4A7C15L) | 1;
+            for (int i = 0; i < hashFunctions; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        int size() {
+            return size.get();
+        }
+
+        int capacity() {
+            return capacity;
+        }
+
+        long bitCount() {
+            return bits;
+        }
+
+        int hashFunctions() {
+            return hashFunctions;
+        }
+
+        // FNV-1a по символам строки и финальное перемешивание MurmurHash3 (fmix64)
+        private static long hash(String key, long seed) {
+            long h = 0xcbf29ce484222325L ^ seed;
+            for (int i = 0; i < key.length(); i++) {
+                h ^= key.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
@@ -7,10 +7,10 @@ import com.example.bankcards.exception.BadRequestException;
 import com.example.bankcards.exception.ResourceNotFoundException;
 import com.example.bankcards.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
-import org.springframework.security.access.AccessDeniedException;
 import javax.transaction.Transactional;
 import java.util.List;
 
@@ -20,77 +20,81 @@ import java.util.List;
 public class UserService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
-
-    //Получить текущего пользователя для дальнейшей проверки прав доступа
-    private User getCurrentUser() {
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        return userRepository.findByFirstNameAndLastName(username.split(" ")[0], username.split(" ")[1])
-                .orElseThrow(() -> new ResourceNotFoundException("User", "firstName",  username.split(" ")[0], "lastName", username.split(" ")[1]));
-    }
-
-    public void isUserAdmin() {
-        User currentUser = getCurrentUser();
-        if (!currentUser.isAdmin()) {
-            throw new AccessDeniedException("Only administrators can perform this action");
-        }
-    }
+    private final CurrentUserService currentUserService;
+    private final TokenVersionService tokenVersionService;
+    private final UserDetailsServiceImpl userDetailsService;
+    private final UserNameFilter userNameFilter;
 
     // ==== МЕТОДЫ АДМИНА ====
 
+    @PreAuthorize("hasRole('ADMIN')")
     public User createUser(String password, String firstName, String lastName, Role role){
-        isUserAdmin();
-        if (userRepository.existsByFirstNameAndLastName(firstName, lastName)) throw new BadRequestException("User with name '" + firstName + " " + lastName + "' already exists");
         User user = new User( passwordEncoder.encode(password), firstName, lastName, role);
-        return userRepository.save(user);
+        User savedUser;
+        try {
+            savedUser = userRepository.save(user);
+        } catch (DataIntegrityViolationException e) {
+            // Имя занято: сработал уникальный индекс users(first_name, last_name)
+            throw new BadRequestException("User with name '" + firstName + " " + lastName + "' already exists");
+        }
+        userNameFilter.added(firstName, lastName);
+        return savedUser;
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
     public void deleteUser(Long id){
-        isUserAdmin();
         User userToDelete = findUserBuId(id);
-        User currentUser = getCurrentUser();
-        if (userToDelete.getId().equals(currentUser.getId())) throw new BadRequestException("You can not delete your own account");
+        if (userToDelete.getId().equals(currentUserService.getId())) throw new BadRequestException("You can not delete your own account");
         userRepository.delete(userToDelete);
+        tokenVersionService.forget(userToDelete.getId());
+        userDetailsService.evict(userToDelete);
+        userNameFilter.removed();
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
     public void changeUserRole(Long id, Role role){
-        isUserAdmin();
         User user = findUserBuId(id);
         user.setRole(role);
+        // Токены со старой ролью перестают приниматься, пользователь должен войти заново
+        tokenVersionService.revokeTokens(user);
         userRepository.save(user);
+        userDetailsService.evict(user);
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
     public User findUserBuId(Long id){
-        isUserAdmin();
         return userRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("User", "id", id));
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
     public User findUserByName(String firstName, String lastName){
-        isUserAdmin();
         return userRepository.findByFirstNameAndLastName(firstName, lastName)
                 .orElseThrow(() -> new ResourceNotFoundException("User", "firstName", firstName, "lastName", lastName));
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
     public List<User> findUsersByRole(Role role){
-        isUserAdmin();
         return userRepository.findByRole(role);
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
     public List<User> getAllUsers(){
-        isUserAdmin();
         return userRepository.findAll();
     }
 
     // ==== ОБЩИЕ МЕТОДЫ ====
     public User getMyAccount(){
-        return getCurrentUser();
+        return currentUserService.getUser();
     }
 
     public void changeMyPassword(String newPassword){
         if (newPassword == null || newPassword.length() < 6) throw new BadRequestException("New password must be at least 6 characters long");
-        User currentUser = getCurrentUser();
+        User currentUser = currentUserService.getUser();
         currentUser.setPassword(passwordEncoder.encode(newPassword));
         userRepository.save(currentUser);
+        // Иначе старый пароль продолжал бы подходить для логина до истечения TTL кэша
+        userDetailsService.evict(currentUser);
     }
 
 
@@ -0,0 +1,73 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.service.JwtTokenProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Доступ к эндпоинтам actuator через настоящую цепочку фильтров безопасности
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class SecurityConfigTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private JwtTokenProvider jwtTokenProvider;
+
+    @BeforeEach
+    void setUp() {
+        when(jwtTokenProvider.authenticate("user-token")).thenReturn(Optional.of(authentication("ROLE_USER")));
+        when(jwtTokenProvider.authenticate("admin-token")).thenReturn(Optional.of(authentication("ROLE_ADMIN")));
+    }
+
+    @Test
+    void health_WithoutToken_ShouldBePublic() throws Exception {
+        mockMvc.perform(actuator("/health"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void metrics_AsUser_ShouldReturnForbidden() throws Exception {
+        mockMvc.perform(actuator("/metrics").header("Authorization", "Bearer user-token"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void metrics_AsAdmin_ShouldBeAllowed() throws Exception {
+        mockMvc.perform(actuator("/metrics").header("Authorization", "Bearer admin-token"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void metrics_WithoutToken_ShouldReturnUnauthorized() throws Exception {
+        mockMvc.perform(actuator("/metrics"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    // Приложение работает с context-path /api, фильтр JWT смотрит на servlet path внутри него (DispatcherServlet на "/")
+    private MockHttpServletRequestBuilder actuator(String path) {
+        return get("/api/actuator" + path).contextPath("/api").servletPath("/actuator" + path);
+    }
+
+    private UsernamePasswordAuthenticationToken authentication(String role) {
+        return new UsernamePasswordAuthenticationToken("user", null, List.of(new SimpleGrantedAuthority(role)));
+    }
+}
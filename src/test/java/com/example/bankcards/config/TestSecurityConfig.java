@@ -2,6 +2,7 @@ package com.example.bankcards.config;
 
 import com.example.bankcards.security.JwtAuthenticationFilter;
 import com.example.bankcards.service.JwtTokenProvider;
+import com.example.bankcards.service.TokenDenylistService;
 import org.mockito.Mockito;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
@@ -18,8 +19,13 @@ public class TestSecurityConfig {
     }
 
     @Bean
-    public JwtAuthenticationFilter jwtAuthenticationFilter(JwtTokenProvider jwtTokenProvider) {
-        return new JwtAuthenticationFilter(jwtTokenProvider);
+    public TokenDenylistService tokenDenylistService() {
+        return Mockito.mock(TokenDenylistService.class);
+    }
+
+    @Bean
+    public JwtAuthenticationFilter jwtAuthenticationFilter(JwtTokenProvider jwtTokenProvider, TokenDenylistService tokenDenylistService) {
+        return new JwtAuthenticationFilter(jwtTokenProvider, tokenDenylistService);
     }
 
     @Bean
@@ -1,10 +1,12 @@
 package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.request.AuthRequest;
+import com.example.bankcards.dto.request.RefreshTokenRequest;
 import com.example.bankcards.dto.response.AuthResponse;
 import com.example.bankcards.exception.BadRequestException;
 import com.example.bankcards.exception.GlobalExceptionHandler;
 import com.example.bankcards.exception.ResourceNotFoundException;
+import com.example.bankcards.exception.TooManyRequestsException;
 import com.example.bankcards.service.AuthService;
 import com.example.bankcards.service.JwtTokenProvider;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -15,11 +17,13 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.MediaType;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -64,7 +68,7 @@ class AuthControllerTest {
     @Test
     void login_ShouldReturnAuthResponse() throws Exception {
         // Arrange
-        when(authService.authenticate(any(AuthRequest.class))).thenReturn(authResponse);
+        when(authService.authenticate(any(AuthRequest.class), any())).thenReturn(authResponse);
 
         // Act & Assert
         mockMvc.perform(post("/auth/login")
@@ -77,10 +81,29 @@ class AuthControllerTest {
                 .andExpect(jsonPath("$.lastName").value("Doe"));
     }
 
+    @Test
+    void login_ShouldThrottleByClientAddressResolvedByServer() throws Exception {
+        // Arrange
+        when(authService.authenticate(any(AuthRequest.class), any())).thenReturn(authResponse);
+
+        // Act - адрес, который Tomcat подставил из X-Forwarded-For доверенного прокси
+        mockMvc.perform(post("/auth/login")
+                        .with(request -> {
+                            request.setRemoteAddr("203.0.113.7");
+                            return request;
+                        })
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(validAuthRequest)))
+                .andExpect(status().isOk());
+
+        // Assert
+        verify(authService).authenticate(any(AuthRequest.class), eq("203.0.113.7"));
+    }
+
     @Test
     void login_WithInvalidCredentials_ShouldReturnUnauthorized() throws Exception {
         // Arrange
-        when(authService.authenticate(any(AuthRequest.class)))
+        when(authService.authenticate(any(AuthRequest.class), any()))
                 .thenThrow(new ResourceNotFoundException("User", "firstName", "John", "lastName", "Doe"));
 
         // Act & Assert
@@ -93,6 +116,53 @@ class AuthControllerTest {
                 .andExpect(jsonPath("$.error").value("Resource Not Found"));
     }
 
+    @Test
+    void login_Throttled_ShouldReturnTooManyRequestsWithRetryAfter() throws Exception {
+        // Arrange
+        when(authService.authenticate(any(AuthRequest.class), any()))
+                .thenThrow(new TooManyRequestsException("Too many login attempts, please retry later", 30));
+
+        // Act & Assert
+        mockMvc.perform(post("/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(validAuthRequest)))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "30"))
+                .andExpect(jsonPath("$.status").value(429));
+    }
+
+    @Test
+    void refresh_ShouldReturnNewTokens() throws Exception {
+        // Arrange
+        RefreshTokenRequest refreshTokenRequest = new RefreshTokenRequest();
+        refreshTokenRequest.setRefreshToken("old-refresh-token");
+        authResponse.setRefreshToken("new-refresh-token");
+        when(authService.refresh(any(RefreshTokenRequest.class))).thenReturn(authResponse);
+
+        // Act & Assert
+        mockMvc.perform(post("/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(refreshTokenRequest)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.token").value("jwt-token-123"))
+                .andExpect(jsonPath("$.refreshToken").value("new-refresh-token"));
+    }
+
+    @Test
+    void refresh_WithReusedToken_ShouldReturnUnauthorized() throws Exception {
+        // Arrange
+        RefreshTokenRequest refreshTokenRequest = new RefreshTokenRequest();
+        refreshTokenRequest.setRefreshToken("used-refresh-token");
+        when(authService.refresh(any(RefreshTokenRequest.class)))
+                .thenThrow(new BadCredentialsException("Refresh token has already been used"));
+
+        // Act & Assert
+        mockMvc.perform(post("/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(refreshTokenRequest)))
+                .andExpect(status().isUnauthorized());
+    }
+
     @Test
     void register_ShouldReturnAuthResponse() throws Exception {
         // Arrange
@@ -160,13 +230,33 @@ class AuthControllerTest {
     @Test
     void logout_ShouldReturnOk() throws Exception {
         // Arrange
-        doNothing().when(authService).logout();
+        doNothing().when(authService).logout(null, null);
 
         // Act & Assert
         mockMvc.perform(post("/auth/logout"))
                 .andExpect(status().isOk());
     }
 
+    @Test
+    void logout_WithBearerToken_ShouldPassTokenToService() throws Exception {
+        // Act & Assert
+        mockMvc.perform(post("/auth/logout")
+                        .header("Authorization", "Bearer jwt-token-123"))
+                .andExpect(status().isOk());
+        verify(authService).logout("jwt-token-123", null);
+    }
+
+    @Test
+    void logout_WithRefreshToken_ShouldPassBothTokensToService() throws Exception {
+        // Act & Assert
+        mockMvc.perform(post("/auth/logout")
+                        .header("Authorization", "Bearer jwt-token-123")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"refreshToken\":\"refresh-token-123\"}"))
+                .andExpect(status().isOk());
+        verify(authService).logout("jwt-token-123", "refresh-token-123");
+    }
+
     @Test
     void testEndpoint_ShouldReturnWorkingMessage() throws Exception {
         // Act & Assert
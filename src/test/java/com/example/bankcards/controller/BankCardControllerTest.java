@@ -112,6 +112,32 @@ class BankCardControllerTest {
                 .andExpect(content().string("1234567812345678"));
     }
 
+    @Test
+    void lookupCard_ShouldReturnCard() throws Exception {
+        // Arrange
+        when(bankCardService.findCardByNumber("1234567812345678")).thenReturn(testCard);
+
+        // Act & Assert
+        mockMvc.perform(post("/cards/admin/lookup")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"cardNumber\":\"1234567812345678\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(1))
+                .andExpect(jsonPath("$.maskedCardNumber").value("**** **** **** 1234"))
+                .andExpect(jsonPath("$.cardNumber").doesNotExist());
+    }
+
+    @Test
+    void lookupCard_InvalidNumber_ShouldReturnBadRequest() throws Exception {
+        // Act & Assert
+        mockMvc.perform(post("/cards/admin/lookup")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"cardNumber\":\"1234\"}"))
+                .andExpect(status().isBadRequest());
+
+        verify(bankCardService, never()).findCardByNumber(anyString());
+    }
+
     @Test
     void activateCard_ShouldReturnActivatedCard() throws Exception {
         // Arrange
@@ -1,9 +1,14 @@
 package com.example.bankcards.controller;
 
+import com.example.bankcards.dto.response.BatchTransferItemResult;
+import com.example.bankcards.dto.response.BatchTransferResponse;
 import com.example.bankcards.entity.Transaction;
+import com.example.bankcards.entity.TransactionStatus;
 import com.example.bankcards.exception.CardOperationException;
 import com.example.bankcards.exception.GlobalExceptionHandler;
 import com.example.bankcards.exception.InsufficientFundsException;
+import com.example.bankcards.exception.ServiceUnavailableException;
+import com.example.bankcards.service.AsyncTransferService;
 import com.example.bankcards.service.TransactionService;
 import com.example.bankcards.service.JwtTokenProvider;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -14,6 +19,7 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.test.web.servlet.MockMvc;
@@ -35,6 +41,9 @@ class TransactionControllerTest {
     @Mock
     private TransactionService transactionService;
 
+    @Mock
+    private AsyncTransferService asyncTransferService;
+
     @Mock
     private JwtTokenProvider jwtTokenProvider;
 
@@ -57,7 +66,7 @@ class TransactionControllerTest {
         transaction.setId(1L);
         transaction.setAmount(new BigDecimal("100.00"));
 
-        when(transactionService.transferBetweenMyCards(anyLong(), anyLong(), any(BigDecimal.class), anyString()))
+        when(transactionService.transferBetweenMyCards(anyLong(), anyLong(), any(BigDecimal.class), anyString(), isNull()))
                 .thenReturn(transaction);
 
         // Act & Assert
@@ -78,7 +87,7 @@ class TransactionControllerTest {
         transaction.setId(1L);
         transaction.setAmount(new BigDecimal("50.00"));
 
-        when(transactionService.transferBetweenMyCards(anyLong(), anyLong(), any(BigDecimal.class), isNull()))
+        when(transactionService.transferBetweenMyCards(anyLong(), anyLong(), any(BigDecimal.class), isNull(), isNull()))
                 .thenReturn(transaction);
 
         // Act & Assert
@@ -91,10 +100,30 @@ class TransactionControllerTest {
                 .andExpect(jsonPath("$.amount").value(50.00));
     }
 
+    @Test
+    void transferBetweenMyCards_WithIdempotencyKey_ShouldPassKeyToService() throws Exception {
+        // Arrange
+        Transaction transaction = new Transaction();
+        transaction.setId(7L);
+        transaction.setAmount(new BigDecimal("100.00"));
+
+        when(transactionService.transferBetweenMyCards(anyLong(), anyLong(), any(BigDecimal.class), isNull(), eq("retry-key-1")))
+                .thenReturn(transaction);
+
+        // Act & Assert
+        mockMvc.perform(post("/transactions/transfer/my-cards")
+                        .header("Idempotency-Key", "retry-key-1")
+                        .param("fromCardId", "1")
+                        .param("toCardId", "2")
+                        .param("amount", "100.00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(7));
+    }
+
     @Test
     void transferBetweenMyCards_WithAccessDenied_ShouldReturnForbidden() throws Exception {
         // Arrange
-        when(transactionService.transferBetweenMyCards(anyLong(), anyLong(), any(BigDecimal.class), anyString()))
+        when(transactionService.transferBetweenMyCards(anyLong(), anyLong(), any(BigDecimal.class), anyString(), isNull()))
                 .thenThrow(new AccessDeniedException("Source card not found or access denied"));
 
         // Act & Assert
@@ -112,7 +141,7 @@ class TransactionControllerTest {
     @Test
     void transferBetweenMyCards_WithInactiveCard_ShouldReturnBadRequest() throws Exception {
         // Arrange
-        when(transactionService.transferBetweenMyCards(anyLong(), anyLong(), any(BigDecimal.class), anyString()))
+        when(transactionService.transferBetweenMyCards(anyLong(), anyLong(), any(BigDecimal.class), anyString(), isNull()))
                 .thenThrow(new CardOperationException("Source card is not active"));
 
         // Act & Assert
@@ -130,7 +159,7 @@ class TransactionControllerTest {
     @Test
     void transferBetweenMyCards_WithInsufficientFunds_ShouldReturnBadRequest() throws Exception {
         // Arrange
-        when(transactionService.transferBetweenMyCards(anyLong(), anyLong(), any(BigDecimal.class), anyString()))
+        when(transactionService.transferBetweenMyCards(anyLong(), anyLong(), any(BigDecimal.class), anyString(), isNull()))
                 .thenThrow(new InsufficientFundsException("Insufficient funds on source card. Available: 50.00"));
 
         // Act & Assert
@@ -179,4 +208,93 @@ class TransactionControllerTest {
                 .andExpect(jsonPath("$").isEmpty());
     }
 
-}
\ No newline at end of file
+    @Test
+    void transferBatch_ShouldReturnPerItemResults() throws Exception {
+        // Arrange
+        BatchTransferResponse response = new BatchTransferResponse();
+        response.setSucceeded(1);
+        response.setFailed(1);
+        response.setResults(List.of(
+                new BatchTransferItemResult(0, TransactionStatus.SUCCESS, 5L, null),
+                new BatchTransferItemResult(1, TransactionStatus.FAILED, null, "Source card is not active")));
+
+        when(transactionService.transferBatch(anyList(), eq(false))).thenReturn(response);
+
+        // Act & Assert
+        mockMvc.perform(post("/transactions/transfer/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"allOrNothing\": false, \"transfers\": [" +
+                                "{\"fromCardId\": 1, \"toCardId\": 2, \"amount\": 10.00}," +
+                                "{\"fromCardId\": 3, \"toCardId\": 2, \"amount\": 20.00}]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.succeeded").value(1))
+                .andExpect(jsonPath("$.results[0].transactionId").value(5))
+                .andExpect(jsonPath("$.results[1].status").value("FAILED"))
+                .andExpect(jsonPath("$.results[1].error").value("Source card is not active"));
+    }
+
+    @Test
+    void transferBatch_WithInvalidItem_ShouldReturnBadRequest() throws Exception {
+        // Act & Assert
+        mockMvc.perform(post("/transactions/transfer/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"transfers\": [{\"fromCardId\": 1, \"toCardId\": 2, \"amount\": 0}]}"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(transactionService);
+    }
+
+    @Test
+    void submitTransferBetweenMyCards_ShouldReturnAcceptedWithLocation() throws Exception {
+        // Arrange
+        Transaction transaction = new Transaction();
+        transaction.setId(9L);
+        transaction.setAmount(new BigDecimal("100.00"));
+
+        when(asyncTransferService.submitTransfer(eq(1L), eq(2L), any(BigDecimal.class), isNull(), isNull()))
+                .thenReturn(transaction);
+
+        // Act & Assert
+        mockMvc.perform(post("/transactions/transfer/my-cards/async")
+                        .param("fromCardId", "1")
+                        .param("toCardId", "2")
+                        .param("amount", "100.00"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/transactions/9"))
+                .andExpect(jsonPath("$.id").value(9))
+                .andExpect(jsonPath("$.status").value("PENDING"));
+    }
+
+    @Test
+    void submitTransferBetweenMyCards_QueueFull_ShouldReturnServiceUnavailable() throws Exception {
+        // Arrange
+        when(asyncTransferService.submitTransfer(anyLong(), anyLong(), any(BigDecimal.class), isNull(), isNull()))
+                .thenThrow(new ServiceUnavailableException("Transfer queue is full, please retry later", 2));
+
+        // Act & Assert
+        mockMvc.perform(post("/transactions/transfer/my-cards/async")
+                        .param("fromCardId", "1")
+                        .param("toCardId", "2")
+                        .param("amount", "100.00"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "2"))
+                .andExpect(jsonPath("$.message").value("Transfer queue is full, please retry later"));
+    }
+
+    @Test
+    void getTransaction_ShouldReturnTransactionStatus() throws Exception {
+        // Arrange
+        Transaction transaction = new Transaction();
+        transaction.setId(9L);
+        transaction.setStatus(TransactionStatus.FAILED);
+        transaction.setFailureReason("Source card is not active");
+
+        when(transactionService.getMyTransaction(9L)).thenReturn(transaction);
+
+        // Act & Assert
+        mockMvc.perform(get("/transactions/9"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("FAILED"))
+                .andExpect(jsonPath("$.failureReason").value("Source card is not active"));
+    }
+}
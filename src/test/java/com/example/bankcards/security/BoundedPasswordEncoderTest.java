@@ -0,0 +1,107 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.config.PasswordHashingConfig;
+import com.example.bankcards.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class BoundedPasswordEncoderTest {
+
+    private PasswordHashingConfig config;
+    private SimpleMeterRegistry meterRegistry;
+    private BoundedPasswordEncoder passwordEncoder;
+    private ExecutorService callers;
+
+    @BeforeEach
+    void setUp() {
+        config = new PasswordHashingConfig();
+        config.setThreads(1);
+        config.setQueueCapacity(1);
+        config.setRetryAfterSeconds(2);
+        meterRegistry = new SimpleMeterRegistry();
+        callers = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+        if (passwordEncoder != null) passwordEncoder.shutdown();
+    }
+
+    @Test
+    void encodeAndMatches_ShouldDelegateToBCryptAndRecordLatency() {
+        // Arrange
+        passwordEncoder = new BoundedPasswordEncoder(new BCryptPasswordEncoder(4), config, meterRegistry);
+
+        // Act
+        String encoded = passwordEncoder.encode("password123");
+
+        // Assert
+        assertTrue(passwordEncoder.matches("password123", encoded));
+        assertFalse(passwordEncoder.matches("wrong-password", encoded));
+        assertEquals(1, meterRegistry.timer("bank.password.hashing.duration", "operation", "encode").count());
+        assertEquals(2, meterRegistry.timer("bank.password.hashing.duration", "operation", "matches").count());
+    }
+
+    @Test
+    void matches_PoolAndQueueFull_ShouldFailFastWithServiceUnavailable() throws Exception {
+        // Arrange: один поток занят, одна операция ждёт в очереди
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder slowEncoder = mock(PasswordEncoder.class);
+        when(slowEncoder.matches(any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return true;
+        });
+        passwordEncoder = new BoundedPasswordEncoder(slowEncoder, config, meterRegistry);
+        Future<Boolean> running = callers.submit(() -> passwordEncoder.matches("a", "hash"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<Boolean> queued = callers.submit(() -> passwordEncoder.matches("b", "hash"));
+        waitForQueueDepth(1);
+
+        // Act & Assert
+        ServiceUnavailableException exception = assertThrows(ServiceUnavailableException.class,
+                () -> passwordEncoder.matches("c", "hash"));
+        assertEquals(2, exception.getRetryAfterSeconds());
+        assertEquals(1.0, meterRegistry.get("bank.password.hashing.queue").gauge().value());
+        assertEquals(1.0, meterRegistry.get("bank.password.hashing.active").gauge().value());
+
+        release.countDown();
+        assertTrue(running.get(5, TimeUnit.SECONDS));
+        assertTrue(queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void encode_DelegateFails_ShouldRethrowOriginalException() {
+        // Arrange
+        PasswordEncoder failingEncoder = mock(PasswordEncoder.class);
+        when(failingEncoder.encode(any())).thenThrow(new IllegalArgumentException("rawPassword cannot be null"));
+        passwordEncoder = new BoundedPasswordEncoder(failingEncoder, config, meterRegistry);
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> passwordEncoder.encode(null));
+    }
+
+    private void waitForQueueDepth(int depth) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (meterRegistry.get("bank.password.hashing.queue").gauge().value() < depth) {
+            if (System.currentTimeMillis() > deadline) fail("Queue did not reach depth " + depth);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.bankcards.security;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardNumberCipherTest {
+
+    @Test
+    void encrypt_ShortKey_ShouldMatchPreviouslyStoredNumbers() throws Exception {
+        // Arrange - номер, зашифрованный прежним способом: ключ дополнен нулями до 32 символов
+        SecretKeySpec legacyKey = new SecretKeySpec("shortKey000000000000000000000000".getBytes(StandardCharsets.UTF_8), "AES");
+        Cipher legacy = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        legacy.init(Cipher.ENCRYPT_MODE, legacyKey);
+        String stored = Base64.getEncoder().encodeToString(legacy.doFinal("4000123456789010".getBytes(StandardCharsets.UTF_8)));
+        CardNumberCipher cipher = new CardNumberCipher("shortKey", "testBlindIndexKey");
+
+        // Act & Assert
+        assertEquals(stored, cipher.encrypt("4000123456789010"));
+        assertEquals("4000123456789010", cipher.decrypt(stored));
+    }
+
+    @Test
+    void decrypt_CorruptedData_ShouldFailAndKeepWorking() {
+        // Arrange
+        CardNumberCipher cipher = new CardNumberCipher("testSecretKey12345678901234567890", "testBlindIndexKey");
+        String encrypted = cipher.encrypt("1234567812345678");
+
+        // Act & Assert - после ошибки поток получает новый Cipher
+        assertThrows(RuntimeException.class, () -> cipher.decrypt(Base64.getEncoder().encodeToString(new byte[15])));
+        assertEquals("1234567812345678", cipher.decrypt(encrypted));
+    }
+
+    @Test
+    void encryptDecrypt_ConcurrentThreads_ShouldRoundTrip() throws Exception {
+        // Arrange
+        CardNumberCipher cipher = new CardNumberCipher("testSecretKey12345678901234567890", "testBlindIndexKey");
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+
+        // Act
+        try {
+            for (int i = 0; i < 8; i++) {
+                int thread = i;
+                results.add(pool.submit(() -> {
+                    start.await();
+                    for (int n = 0; n < 1000; n++) {
+                        String number = String.format("4%03d%012d", thread, n);
+                        if (!number.equals(cipher.decrypt(cipher.encrypt(number)))) return false;
+                    }
+                    return true;
+                }));
+            }
+            start.countDown();
+
+            // Assert
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void blindIndex_ShouldBeDeterministicAndKeyed() {
+        // Arrange
+        CardNumberCipher cipher = new CardNumberCipher("testSecretKey12345678901234567890", "testBlindIndexKey");
+        CardNumberCipher otherKey = new CardNumberCipher("testSecretKey12345678901234567890", "anotherBlindIndexKey");
+
+        // Act
+        String index = cipher.blindIndex("4000123456789010");
+
+        // Assert
+        assertEquals(64, index.length());
+        assertEquals(index, cipher.blindIndex("4000123456789010"));
+        assertNotEquals(index, cipher.blindIndex("4000123456789011"));
+        assertNotEquals(index, otherKey.blindIndex("4000123456789010"));
+    }
+
+    @Test
+    void constructor_KeyOfInvalidLength_ShouldFailAtStartup() {
+        // Act & Assert - 32 символа, но больше 32 байт в UTF-8
+        assertThrows(IllegalStateException.class, () -> new CardNumberCipher("ключ".repeat(8), "testBlindIndexKey"));
+    }
+}
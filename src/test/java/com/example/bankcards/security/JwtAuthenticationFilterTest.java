@@ -0,0 +1,120 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.service.JwtTokenProvider;
+import com.example.bankcards.service.TokenDenylistService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JwtAuthenticationFilterTest {
+
+    @Mock
+    private JwtTokenProvider jwtTokenProvider;
+
+    @Mock
+    private TokenDenylistService tokenDenylistService;
+
+    @InjectMocks
+    private JwtAuthenticationFilter jwtAuthenticationFilter;
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void doFilter_ValidToken_ShouldParseTokenOnceAndAuthenticate() throws Exception {
+        // Arrange
+        Authentication authentication = new UsernamePasswordAuthenticationToken("John Doe", null, List.of());
+        when(jwtTokenProvider.authenticate("valid-token")).thenReturn(Optional.of(authentication));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/cards/my");
+        request.setServletPath("/cards/my");
+        request.addHeader("Authorization", "Bearer valid-token");
+        MockFilterChain filterChain = new MockFilterChain();
+
+        // Act
+        jwtAuthenticationFilter.doFilter(request, new MockHttpServletResponse(), filterChain);
+
+        // Assert
+        assertSame(authentication, SecurityContextHolder.getContext().getAuthentication());
+        assertNotNull(filterChain.getRequest());
+        verify(jwtTokenProvider, times(1)).authenticate("valid-token");
+        verify(jwtTokenProvider, never()).isValid(anyString());
+        verify(jwtTokenProvider, never()).getAuthentication(anyString());
+    }
+
+    @Test
+    void doFilter_InvalidToken_ShouldReturnUnauthorized() throws Exception {
+        // Arrange
+        when(jwtTokenProvider.authenticate("bad-token")).thenReturn(Optional.empty());
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/cards/my");
+        request.setServletPath("/cards/my");
+        request.addHeader("Authorization", "Bearer bad-token");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain filterChain = new MockFilterChain();
+
+        // Act
+        jwtAuthenticationFilter.doFilter(request, response, filterChain);
+
+        // Assert
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, response.getStatus());
+        assertNull(filterChain.getRequest());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void doFilter_RevokedToken_ShouldReturnUnauthorized() throws Exception {
+        // Arrange
+        UserPrincipal principal = new UserPrincipal(7L, "John", "Doe", Role.ROLE_USER, 0, "revoked-token-id");
+        when(jwtTokenProvider.authenticate("revoked-token"))
+                .thenReturn(Optional.of(new UsernamePasswordAuthenticationToken(principal, null, List.of())));
+        when(tokenDenylistService.isRevoked("revoked-token-id")).thenReturn(true);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/cards/my");
+        request.setServletPath("/cards/my");
+        request.addHeader("Authorization", "Bearer revoked-token");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain filterChain = new MockFilterChain();
+
+        // Act
+        jwtAuthenticationFilter.doFilter(request, response, filterChain);
+
+        // Assert
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, response.getStatus());
+        assertNull(filterChain.getRequest());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void doFilter_PublicEndpoint_ShouldSkipTokenCheck() throws Exception {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/auth/login");
+        request.setServletPath("/auth/login");
+        MockFilterChain filterChain = new MockFilterChain();
+
+        // Act
+        jwtAuthenticationFilter.doFilter(request, new MockHttpServletResponse(), filterChain);
+
+        // Assert
+        assertNotNull(filterChain.getRequest());
+        verifyNoInteractions(jwtTokenProvider);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.bankcards.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketLimiterTest {
+
+    @Test
+    void tryAcquire_ConcurrentAttempts_ShouldGrantExactlyCapacity() throws Exception {
+        // Arrange
+        TokenBucketLimiter limiter = new TokenBucketLimiter(10, TimeUnit.MINUTES.toNanos(1), 100, () -> 0L);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> results = new ArrayList<>();
+
+        // Act
+        try {
+            for (int i = 0; i < 100; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return limiter.tryAcquire("John Doe");
+                }));
+            }
+            start.countDown();
+
+            // Assert
+            int granted = 0;
+            for (Future<Long> result : results) {
+                if (result.get(5, TimeUnit.SECONDS) == 0) granted++;
+            }
+            assertEquals(10, granted);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void evictIdle_ShouldRemoveOnlyFullBuckets() {
+        // Arrange
+        AtomicLong clock = new AtomicLong();
+        TokenBucketLimiter limiter = new TokenBucketLimiter(2, 100, 100, clock::get);
+        limiter.tryAcquire("idle");
+        clock.addAndGet(100);
+        limiter.tryAcquire("busy");
+
+        // Act
+        int evicted = limiter.evictIdle();
+
+        // Assert
+        assertEquals(1, evicted);
+        assertEquals(1, limiter.size());
+        assertEquals(0, limiter.tryAcquire("busy"));
+        assertEquals(100, limiter.tryAcquire("busy"));
+    }
+
+    @Test
+    void tryAcquire_NewKeyWhenFull_ShouldBeThrottledUntilBucketsBecomeIdle() {
+        // Arrange - карта заполнена занятыми бакетами
+        AtomicLong clock = new AtomicLong();
+        TokenBucketLimiter limiter = new TokenBucketLimiter(2, 100, 2, clock::get);
+        limiter.tryAcquire("first");
+        limiter.tryAcquire("second");
+
+        // Act & Assert - новые ключи не проходят без ограничения
+        assertEquals(100, limiter.tryAcquire("sprayed 1"));
+        assertEquals(100, limiter.tryAcquire("sprayed 2"));
+        assertEquals(2, limiter.rejectedNewKeys());
+        assertEquals(2, limiter.size());
+
+        // Бакеты снова полные: синхронная очистка освобождает место без планировщика
+        clock.addAndGet(100);
+        assertEquals(0, limiter.tryAcquire("sprayed 1"));
+        assertEquals(0, limiter.tryAcquire("sprayed 1"));
+        assertEquals(100, limiter.tryAcquire("sprayed 1"));
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.CardNumberCipher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+// Админские методы сервисов защищены @PreAuthorize: роль берётся из токена, пользователь из БД не читается
+@SpringJUnitConfig(AdminMethodSecurityTest.Config.class)
+class AdminMethodSecurityTest {
+
+    @Configuration
+    @EnableGlobalMethodSecurity(prePostEnabled = true)
+    @Import({UserService.class, BankCardService.class, CardNumberCipher.class, CurrentUserService.class})
+    static class Config {
+    }
+
+    @MockBean
+    private UserRepository userRepository;
+
+    @MockBean
+    private BankCardRepository bankCardRepository;
+
+    @MockBean
+    private PasswordEncoder passwordEncoder;
+
+    @MockBean
+    private TokenVersionService tokenVersionService;
+
+    @MockBean
+    private UserDetailsServiceImpl userDetailsService;
+
+    @MockBean
+    private UserNameFilter userNameFilter;
+
+    @MockBean
+    private LedgerService ledgerService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private BankCardService bankCardService;
+
+    private User adminUser;
+    private User regularUser;
+
+    @BeforeEach
+    void setUp() {
+        adminUser = new User("encoded-password", "Admin", "User", Role.ROLE_ADMIN);
+        adminUser.setId(1L);
+        regularUser = new User("encoded-password", "John", "Doe", Role.ROLE_USER);
+        regularUser.setId(2L);
+        SecurityContextHolder.clearContext();
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void getAllUsers_AdminToken_ShouldNotLoadCurrentUser() {
+        // Arrange
+        SecurityContextHolder.getContext().setAuthentication(TestUtils.authenticationOf(adminUser));
+        when(userRepository.findAll()).thenReturn(List.of(adminUser, regularUser));
+
+        // Act
+        List<User> users = userService.getAllUsers();
+
+        // Assert
+        assertEquals(2, users.size());
+        verify(userRepository, never()).findById(any());
+    }
+
+    @Test
+    void getAllCards_AdminToken_ShouldNotLoadCurrentUser() {
+        // Arrange
+        SecurityContextHolder.getContext().setAuthentication(TestUtils.authenticationOf(adminUser));
+        when(bankCardRepository.findAll()).thenReturn(List.of());
+
+        // Act
+        bankCardService.getAllCards();
+
+        // Assert
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void createUser_NonAdminUser_ShouldThrowAccessDeniedException() {
+        // Arrange
+        SecurityContextHolder.getContext().setAuthentication(TestUtils.authenticationOf(regularUser));
+
+        // Act & Assert
+        assertThrows(AccessDeniedException.class, () ->
+                userService.createUser("password", "New", "User", Role.ROLE_USER));
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void deleteUser_NonAdminUser_ShouldThrowAccessDeniedException() {
+        // Arrange
+        SecurityContextHolder.getContext().setAuthentication(TestUtils.authenticationOf(regularUser));
+
+        // Act & Assert
+        assertThrows(AccessDeniedException.class, () ->
+                userService.deleteUser(3L));
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void getAllUsers_NonAdminUser_ShouldThrowAccessDeniedException() {
+        // Arrange
+        SecurityContextHolder.getContext().setAuthentication(TestUtils.authenticationOf(regularUser));
+
+        // Act & Assert
+        assertThrows(AccessDeniedException.class, () ->
+                userService.getAllUsers());
+    }
+
+    @Test
+    void activateCardByAdmin_NonAdminUser_ShouldThrowAccessDeniedException() {
+        // Arrange
+        SecurityContextHolder.getContext().setAuthentication(TestUtils.authenticationOf(regularUser));
+
+        // Act & Assert
+        assertThrows(AccessDeniedException.class, () ->
+                bankCardService.activateCardByAdmin(1L));
+        verifyNoInteractions(bankCardRepository);
+    }
+
+    @Test
+    void getMyAccount_RegularUser_ShouldBeAllowed() {
+        // Arrange
+        SecurityContextHolder.getContext().setAuthentication(TestUtils.authenticationOf(regularUser));
+        when(userRepository.findById(2L)).thenReturn(Optional.of(regularUser));
+
+        // Act & Assert
+        assertEquals(regularUser, userService.getMyAccount());
+    }
+}
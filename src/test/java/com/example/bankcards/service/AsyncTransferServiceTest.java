@@ -0,0 +1,138 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.TransferConfig;
+import com.example.bankcards.entity.BankCard;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.Transaction;
+import com.example.bankcards.entity.TransactionStatus;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.TransactionBatchRepository;
+import com.example.bankcards.repository.TransactionRepository;
+import com.example.bankcards.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Асинхронные переводы на H2: PENDING сразу, затем SUCCESS или FAILED после обработки пулом
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@Import({AsyncTransferService.class, TransactionService.class, IdempotencyService.class, CardLockManager.class, LedgerService.class,
+        TransactionBatchRepository.class, TransferConfig.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class AsyncTransferServiceTest {
+
+    @Autowired
+    private AsyncTransferService asyncTransferService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private BankCardRepository bankCardRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private Long salaryCardId;
+    private Long savingsCardId;
+
+    @BeforeEach
+    void setUp() {
+        User owner = userRepository.save(new User("encoded-password", "John", "Doe", Role.ROLE_USER));
+        salaryCardId = bankCardRepository.save(card("4000000000000001", "1000.00", owner)).getId();
+        savingsCardId = bankCardRepository.save(card("4000000000000002", "0.00", owner)).getId();
+        SecurityContextHolder.clearContext(); // Unit-тесты сервисов оставляют в потоке мок SecurityContext
+        SecurityContextHolder.getContext().setAuthentication(TestUtils.authenticationOf(owner));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        transactionRepository.deleteAll();
+        bankCardRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void submitTransfer_ShouldCompleteInBackground() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            Transaction accepted = asyncTransferService.submitTransfer(salaryCardId, savingsCardId, new BigDecimal("100.00"), "async " + i, null);
+            assertEquals(TransactionStatus.PENDING, accepted.getStatus());
+            ids.add(accepted.getId());
+        }
+
+        List<Transaction> processed = awaitProcessed(ids);
+
+        // Денег хватает ровно на 10 переводов, остальные должны завершиться отказом с причиной
+        assertEquals(10, processed.stream().filter(Transaction::isSuccessful).count());
+        List<Transaction> failed = processed.stream().filter(Transaction::isFailed).toList();
+        assertEquals(2, failed.size());
+        assertTrue(failed.get(0).getFailureReason().startsWith("Insufficient funds"));
+        assertEquals(0, BigDecimal.ZERO.compareTo(bankCardRepository.findById(salaryCardId).orElseThrow().getBalance()));
+        assertEquals(0, new BigDecimal("1000.00").compareTo(bankCardRepository.findById(savingsCardId).orElseThrow().getBalance()));
+    }
+
+    @Test
+    void resubmitStale_ShouldProcessTransfersLeftPending() throws Exception {
+        Transaction pending = transactionService.createPendingTransfer(salaryCardId, savingsCardId, new BigDecimal("250.00"), "lost", null);
+        pending.setTimestamp(LocalDateTime.now().minusHours(1));
+        transactionRepository.save(pending);
+
+        asyncTransferService.resubmitStale();
+
+        assertTrue(awaitProcessed(List.of(pending.getId())).get(0).isSuccessful());
+        assertEquals(0, new BigDecimal("250.00").compareTo(bankCardRepository.findById(savingsCardId).orElseThrow().getBalance()));
+    }
+
+    @Test
+    void processTwice_ShouldMoveMoneyOnce() throws Exception {
+        Transaction pending = transactionService.createPendingTransfer(salaryCardId, savingsCardId, new BigDecimal("300.00"), "twice", null);
+
+        asyncTransferService.process(pending.getId());
+        asyncTransferService.process(pending.getId());
+
+        assertTrue(transactionRepository.findById(pending.getId()).orElseThrow().isSuccessful());
+        assertEquals(0, new BigDecimal("700.00").compareTo(bankCardRepository.findById(salaryCardId).orElseThrow().getBalance()));
+    }
+
+    private List<Transaction> awaitProcessed(List<Long> ids) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (System.currentTimeMillis() < deadline) {
+            List<Transaction> transactions = transactionRepository.findAllById(ids);
+            if (transactions.stream().noneMatch(Transaction::isPending)) return transactions;
+            Thread.sleep(20);
+        }
+        throw new AssertionError("Transfers were not processed in time");
+    }
+
+    private BankCard card(String number, String balance, User owner) {
+        BankCard card = new BankCard(number, "John Doe", LocalDate.now().plusYears(3), owner);
+        card.setStatus(CardStatus.ACTIVE);
+        card.setBalance(new BigDecimal(balance));
+        return card;
+    }
+}
@@ -1,18 +1,24 @@
 package com.example.bankcards.service;
 
 import com.example.bankcards.dto.request.AuthRequest;
+import com.example.bankcards.dto.request.RefreshTokenRequest;
 import com.example.bankcards.dto.response.AuthResponse;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.entity.Role;
 import com.example.bankcards.exception.BadRequestException;
 import com.example.bankcards.exception.ResourceNotFoundException;
+import com.example.bankcards.exception.TooManyRequestsException;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.BankUserDetails;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -21,6 +27,7 @@ import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import static com.example.bankcards.service.TestUtils.*;
+import java.util.Date;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -42,6 +49,18 @@ class AuthServiceTest {
     @Mock
     private JwtTokenProvider jwtTokenProvider;
 
+    @Mock
+    private LoginThrottlingService loginThrottlingService;
+
+    @Mock
+    private RefreshTokenService refreshTokenService;
+
+    @Mock
+    private TokenDenylistService tokenDenylistService;
+
+    @Mock
+    private UserNameFilter userNameFilter;
+
     @Mock
     private SecurityContext securityContext;
 
@@ -78,6 +97,9 @@ class AuthServiceTest {
 
         // Мокируем SecurityContext
         SecurityContextHolder.setContext(securityContext);
+
+        // По умолчанию фильтр имён отвечает "возможно", и проверка идёт в БД
+        lenient().when(userNameFilter.mightExist(anyString(), anyString())).thenReturn(true);
     }
 
     @Test
@@ -88,13 +110,15 @@ class AuthServiceTest {
         when(userRepository.findByFirstNameAndLastName("John", "Doe"))
                 .thenReturn(Optional.of(testUser));
         when(jwtTokenProvider.generateToken(testUser)).thenReturn("jwt-token");
+        when(refreshTokenService.issue(testUser)).thenReturn("refresh-token");
 
         // Act
-        AuthResponse response = authService.authenticate(validAuthRequest);
+        AuthResponse response = authService.authenticate(validAuthRequest, "127.0.0.1");
 
         // Assert
         assertNotNull(response);
         assertEquals("jwt-token", response.getToken());
+        assertEquals("refresh-token", response.getRefreshToken());
         assertEquals(1L, response.getUserId());
         assertEquals("John", response.getFirstName());
         assertEquals("Doe", response.getLastName());
@@ -105,6 +129,24 @@ class AuthServiceTest {
         );
     }
 
+    @Test
+    void authenticate_WithBankUserDetailsPrincipal_ShouldNotQueryUserAgain() {
+        // Arrange
+        when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
+                .thenReturn(authentication);
+        when(authentication.getPrincipal()).thenReturn(new BankUserDetails(testUser));
+        when(jwtTokenProvider.generateToken(any(User.class))).thenReturn("jwt-token");
+
+        // Act
+        AuthResponse response = authService.authenticate(validAuthRequest, "127.0.0.1");
+
+        // Assert
+        assertEquals(1L, response.getUserId());
+        assertEquals("John", response.getFirstName());
+        verify(jwtTokenProvider).generateToken(argThat(user -> user.getId().equals(1L) && user.getRole() == Role.ROLE_USER));
+        verifyNoInteractions(userRepository);
+    }
+
     @Test
     void authenticate_InvalidCredentials_ShouldThrowBadCredentials() {
         // Arrange
@@ -113,7 +155,38 @@ class AuthServiceTest {
 
         // Act & Assert
         assertThrows(BadCredentialsException.class, () ->
-                authService.authenticate(validAuthRequest));
+                authService.authenticate(validAuthRequest, "127.0.0.1"));
+    }
+
+    @Test
+    void refresh_ShouldReturnNewAccessAndRefreshTokens() {
+        // Arrange
+        RefreshTokenRequest refreshTokenRequest = new RefreshTokenRequest();
+        refreshTokenRequest.setRefreshToken("old-refresh-token");
+        when(refreshTokenService.rotate("old-refresh-token"))
+                .thenReturn(new RefreshTokenService.Rotation(testUser, "new-refresh-token"));
+        when(jwtTokenProvider.generateToken(testUser)).thenReturn("new-jwt-token");
+
+        // Act
+        AuthResponse response = authService.refresh(refreshTokenRequest);
+
+        // Assert
+        assertEquals("new-jwt-token", response.getToken());
+        assertEquals("new-refresh-token", response.getRefreshToken());
+        assertEquals(1L, response.getUserId());
+        verifyNoInteractions(authenticationManager);
+    }
+
+    @Test
+    void authenticate_Throttled_ShouldNotCheckPassword() {
+        // Arrange
+        doThrow(new TooManyRequestsException("Too many login attempts, please retry later", 30))
+                .when(loginThrottlingService).checkLoginAllowed("John Doe", "127.0.0.1");
+
+        // Act & Assert
+        assertThrows(TooManyRequestsException.class, () ->
+                authService.authenticate(validAuthRequest, "127.0.0.1"));
+        verifyNoInteractions(authenticationManager, userRepository);
     }
 
     @Test
@@ -126,13 +199,12 @@ class AuthServiceTest {
 
         // Act & Assert
         assertThrows(ResourceNotFoundException.class, () ->
-                authService.authenticate(validAuthRequest));
+                authService.authenticate(validAuthRequest, "127.0.0.1"));
     }
 
     @Test
     void register_NewUser_ShouldCreateUserAndReturnAuthResponse() {
         // Arrange
-        when(userRepository.existsByFirstNameAndLastName("Jane", "Smith")).thenReturn(false);
         when(passwordEncoder.encode("newPassword123")).thenReturn("encodedPassword");
         when(userRepository.save(any(User.class))).thenAnswer(invocation -> {
             User user = invocation.getArgument(0);
@@ -159,22 +231,41 @@ class AuthServiceTest {
         ));
     }
 
+    @Test
+    void register_ShouldNotQueryExistenceBeforeInsert() {
+        // Arrange - занятость имени проверяет уникальный индекс при вставке, а не отдельный запрос
+        when(passwordEncoder.encode("newPassword123")).thenReturn("encodedPassword");
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> {
+            User user = invocation.getArgument(0);
+            user.setId(2L);
+            return user;
+        });
+
+        // Act
+        authService.register(registerRequest);
+
+        // Assert
+        verify(userRepository, never()).existsByFirstNameAndLastName(anyString(), anyString());
+        verify(userNameFilter).added("Jane", "Smith");
+    }
+
     @Test
     void register_ExistingUser_ShouldThrowBadRequestException() {
-        // Arrange
-        when(userRepository.existsByFirstNameAndLastName("Jane", "Smith")).thenReturn(true);
+        // Arrange - имя занято (в том числе параллельной регистрацией): вставку останавливает уникальный индекс
+        when(passwordEncoder.encode("newPassword123")).thenReturn("encodedPassword");
+        when(userRepository.save(any(User.class))).thenThrow(new DataIntegrityViolationException("uk_users_first_name_last_name"));
 
         // Act & Assert
         BadRequestException exception = assertThrows(BadRequestException.class, () ->
                 authService.register(registerRequest));
 
         assertTrue(exception.getMessage().contains("User with name 'Jane Smith' already exists"));
+        verify(userNameFilter, never()).added(anyString(), anyString());
     }
 
     @Test
     void registerAdmin_NewAdminUser_ShouldCreateAdminUser() {
         // Arrange
-        when(userRepository.existsByFirstNameAndLastName("Admin", "User")).thenReturn(false);
         when(passwordEncoder.encode("adminPassword")).thenReturn("encodedAdminPassword");
         when(userRepository.save(any(User.class))).thenAnswer(invocation -> {
             User user = invocation.getArgument(0);
@@ -206,7 +297,8 @@ class AuthServiceTest {
     @Test
     void registerAdmin_ExistingUser_ShouldThrowBadRequestException() {
         // Arrange
-        when(userRepository.existsByFirstNameAndLastName("Admin", "User")).thenReturn(true);
+        when(passwordEncoder.encode("adminPassword")).thenReturn("encodedAdminPassword");
+        when(userRepository.save(any(User.class))).thenThrow(new DataIntegrityViolationException("uk_users_first_name_last_name"));
 
         AuthRequest adminRequest = new AuthRequest();
         adminRequest.setFirstName("Admin");
@@ -262,15 +354,82 @@ class AuthServiceTest {
     @Test
     void logout_ShouldClearSecurityContext() {
         // Act
-        authService.logout();
+        authService.logout(null, null);
 
         assertNull(SecurityContextHolder.getContext().getAuthentication());
+        verifyNoInteractions(tokenDenylistService, refreshTokenService);
+    }
+
+    @Test
+    void logout_ValidToken_ShouldRevokeTokenUntilItExpires() {
+        // Arrange
+        Date expiration = new Date((System.currentTimeMillis() / 1000 + 60) * 1000); // exp в JWT хранится с точностью до секунды
+        Claims claims = Jwts.claims().setId("token-id").setSubject("1").setExpiration(expiration);
+        when(jwtTokenProvider.parseValidClaims("jwt-token")).thenReturn(Optional.of(claims));
+
+        // Act
+        authService.logout("jwt-token", null);
+
+        // Assert
+        verify(tokenDenylistService).revoke("token-id", expiration);
+    }
+
+    @Test
+    void logout_WithoutRefreshToken_ShouldRevokeAllRefreshTokensOfUser() {
+        // Arrange
+        Claims claims = Jwts.claims().setId("token-id").setSubject("1").setExpiration(new Date(System.currentTimeMillis() + 60_000));
+        when(jwtTokenProvider.parseValidClaims("jwt-token")).thenReturn(Optional.of(claims));
+
+        // Act
+        authService.logout("jwt-token", null);
+
+        // Assert
+        verify(refreshTokenService).revokeAll(1L);
+        verify(refreshTokenService, never()).revoke(any());
+    }
+
+    @Test
+    void logout_WithRefreshToken_ShouldRevokeOnlyPresentedRefreshToken() {
+        // Arrange
+        Claims claims = Jwts.claims().setId("token-id").setSubject("1").setExpiration(new Date(System.currentTimeMillis() + 60_000));
+        when(jwtTokenProvider.parseValidClaims("jwt-token")).thenReturn(Optional.of(claims));
+
+        // Act
+        authService.logout("jwt-token", "refresh-token");
+
+        // Assert
+        verify(refreshTokenService).revoke("refresh-token");
+        verify(refreshTokenService, never()).revokeAll(any());
+    }
+
+    @Test
+    void logout_ExpiredAccessTokenWithRefreshToken_ShouldStillRevokeRefreshToken() {
+        // Arrange
+        when(jwtTokenProvider.parseValidClaims("expired-token")).thenReturn(Optional.empty());
+
+        // Act
+        authService.logout("expired-token", "refresh-token");
+
+        // Assert
+        verify(refreshTokenService).revoke("refresh-token");
+        verifyNoInteractions(tokenDenylistService);
+    }
+
+    @Test
+    void logout_InvalidToken_ShouldNotRevokeAnything() {
+        // Arrange
+        when(jwtTokenProvider.parseValidClaims("bad-token")).thenReturn(Optional.empty());
+
+        // Act
+        authService.logout("bad-token", null);
+
+        // Assert
+        verifyNoInteractions(tokenDenylistService, refreshTokenService);
     }
 
     @Test
     void register_PasswordEncoding_ShouldUsePasswordEncoder() {
         // Arrange
-        when(userRepository.existsByFirstNameAndLastName("Jane", "Smith")).thenReturn(false);
         when(passwordEncoder.encode("newPassword123")).thenReturn("properly-encoded-password");
         when(userRepository.save(any(User.class))).thenAnswer(invocation -> {
             User user = invocation.getArgument(0);
@@ -302,7 +461,7 @@ class AuthServiceTest {
         when(jwtTokenProvider.generateToken(testUser)).thenReturn("token");
 
         // Act
-        AuthResponse response = authService.authenticate(requestWithSpaces);
+        AuthResponse response = authService.authenticate(requestWithSpaces, "127.0.0.1");
 
         // Assert
         assertNotNull(response);
@@ -319,7 +478,6 @@ class AuthServiceTest {
         specialRequest.setLastName("Döe");
         specialRequest.setPassword("pässwörd");
 
-        when(userRepository.existsByFirstNameAndLastName("Jöhn", "Döe")).thenReturn(false);
         when(passwordEncoder.encode("pässwörd")).thenReturn("encoded");
         when(userRepository.save(any(User.class))).thenAnswer(invocation -> {
             User user = invocation.getArgument(0);
@@ -352,6 +510,6 @@ class AuthServiceTest {
 
         // Act & Assert
         assertThrows(BadCredentialsException.class, () ->
-                authService.authenticate(emptyPasswordRequest));
+                authService.authenticate(emptyPasswordRequest, "127.0.0.1"));
     }
 }
\ No newline at end of file
@@ -4,21 +4,22 @@ import com.example.bankcards.entity.BankCard;
 import com.example.bankcards.entity.CardStatus;
 import com.example.bankcards.entity.Role;
 import com.example.bankcards.entity.User;
+import com.example.bankcards.exception.BadRequestException;
 import com.example.bankcards.exception.CardOperationException;
 import com.example.bankcards.exception.ResourceNotFoundException;
 import com.example.bankcards.repository.BankCardRepository;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.CardNumberCipher;
+import com.example.bankcards.security.UserPrincipal;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.test.util.ReflectionTestUtils;
 
 import javax.crypto.Cipher;
 import javax.crypto.spec.SecretKeySpec;
@@ -42,13 +43,15 @@ class BankCardServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private LedgerService ledgerService;
+
     @Mock
     private SecurityContext securityContext;
 
     @Mock
     private Authentication authentication;
 
-    @InjectMocks
     private BankCardService bankCardService;
 
     private User adminUser;
@@ -57,8 +60,9 @@ class BankCardServiceTest {
 
     @BeforeEach
     void setUp() {
-        String validKey = "testSecretKey12345678901234567890";
-        ReflectionTestUtils.setField(bankCardService, "secretKey", validKey);
+        // Текущего пользователя сервис получает через настоящий CurrentUserService поверх мока репозитория
+        bankCardService = new BankCardService(bankCardRepository, userRepository, ledgerService, new CurrentUserService(userRepository),
+                new CardNumberCipher("testSecretKey12345678901234567890", "testBlindIndexKey"));
 
 
         // Создаем тестовых пользователей
@@ -88,10 +92,11 @@ class BankCardServiceTest {
     }
 
     private void mockAuthentication(User user) {
-        when(securityContext.getAuthentication()).thenReturn(authentication);
-        when(authentication.getName()).thenReturn(user.getFirstName() + " " + user.getLastName());
-        when(userRepository.findByFirstNameAndLastName(user.getFirstName(), user.getLastName()))
-                .thenReturn(Optional.of(user));
+        // Права администратора проверяет @PreAuthorize, поэтому часть методов вообще не обращается к SecurityContext
+        lenient().when(securityContext.getAuthentication()).thenReturn(authentication);
+        lenient().when(authentication.getPrincipal()).thenReturn(new UserPrincipal(user.getId(), user.getFirstName(), user.getLastName(), user.getRole(), user.getTokenVersion()));
+        // Проверка роли администратора читает пользователя из БД по id из токена
+        lenient().when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
     }
 
     @Test
@@ -200,6 +205,24 @@ class BankCardServiceTest {
     }
 
 
+    @Test
+    void getCardBalance_OwnCard_ShouldUseUserIdFromTokenWithoutUserLookup() {
+        // Arrange
+        mockAuthentication(regularUser);
+        testCard.setBalance(new BigDecimal("150.00"));
+        when(bankCardRepository.findByIdAndOwnerId(1L, 2L)).thenReturn(Optional.of(testCard));
+        when(ledgerService.balanceOf(testCard)).thenReturn(new BigDecimal("150.00"));
+
+        // Act
+        BigDecimal balance = bankCardService.getCardBalance(1L);
+
+        // Assert
+        assertEquals(new BigDecimal("150.00"), balance);
+        verify(userRepository, never()).findById(any());
+        verify(userRepository, never()).findByFirstNameAndLastName(any(), any());
+    }
+
+
     @Test
     void createNewCard_AdminUser_ShouldCreateEncryptedCard() {
         // Arrange
@@ -215,6 +238,69 @@ class BankCardServiceTest {
         assertNotEquals("1234567812345678", result.getCardNumber()); // Должен быть зашифрован
         assertEquals("John Doe", result.getCardOwnerName());
         assertEquals(regularUser, result.getOwner());
+        assertEquals("5678", result.getCardLast4());
+        assertEquals(64, result.getCardNumberHash().length());
+    }
+
+    @Test
+    void createNewCard_DuplicateNumber_ShouldThrowCardOperationException() {
+        // Arrange
+        mockAuthentication(adminUser);
+        when(userRepository.findById(2L)).thenReturn(Optional.of(regularUser));
+        when(bankCardRepository.existsByCardNumberHash(anyString())).thenReturn(true);
+
+        // Act & Assert
+        assertThrows(CardOperationException.class, () -> bankCardService.createNewCard("1234567812345678", "John Doe", 2L));
+        verify(bankCardRepository, never()).save(any());
+    }
+
+    @Test
+    void createNewCard_InvalidNumber_ShouldThrowBadRequestException() {
+        // Act & Assert
+        assertThrows(BadRequestException.class, () -> bankCardService.createNewCard("1234", "John Doe", 2L));
+        verify(bankCardRepository, never()).save(any());
+    }
+
+    @Test
+    void findCardByNumber_ShouldProbeBlindIndexOnly() {
+        // Arrange
+        BankCard card = createTestBankCard(1L, bankCardService.encrypt("1234567812345678"), regularUser);
+        when(bankCardRepository.findByCardNumberHash(anyString())).thenReturn(Optional.of(card));
+
+        // Act
+        BankCard result = bankCardService.findCardByNumber("1234567812345678");
+
+        // Assert - один запрос по индексу, без выборки и расшифровки всех карт
+        assertEquals(card, result);
+        verify(bankCardRepository, never()).findAll();
+    }
+
+    @Test
+    void findCardByNumber_UnknownNumber_ShouldThrowWithMaskedNumber() {
+        // Arrange
+        when(bankCardRepository.findByCardNumberHash(anyString())).thenReturn(Optional.empty());
+
+        // Act & Assert - полный номер не попадает в сообщение об ошибке
+        ResourceNotFoundException exception = assertThrows(ResourceNotFoundException.class,
+                () -> bankCardService.findCardByNumber("1234567812345678"));
+        assertFalse(exception.getMessage().contains("1234567812345678"));
+    }
+
+    @Test
+    void getMyCards_ShouldNotDecryptOrClearCardNumbers() {
+        // Arrange
+        mockAuthentication(regularUser);
+        BankCard card = createTestBankCard(1L, "not-a-ciphertext", regularUser);
+        card.setCardLast4("5678");
+        when(bankCardRepository.findByOwnerId(2L)).thenReturn(List.of(card));
+
+        // Act
+        List<BankCard> result = bankCardService.getMyCards();
+
+        // Assert - номер не расшифровать, значит маска построена из card_last4, а сущность не изменена
+        assertEquals(List.of(card), result);
+        assertEquals("5678", result.get(0).getFourDigits());
+        assertEquals("not-a-ciphertext", result.get(0).getCardNumber());
     }
 
 
@@ -0,0 +1,75 @@
+package com.example.bankcards.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedCacheTest {
+
+    @Test
+    void put_MoreThanMaxSize_ShouldEvictImmediately() {
+        // Arrange
+        BoundedCache<Integer, String> cache = new BoundedCache<>(10);
+
+        // Act
+        for (int i = 0; i < 100; i++) cache.put(i, "value-" + i);
+
+        // Assert
+        assertEquals(10, cache.size());
+    }
+
+    @Test
+    void removeIf_ShouldDropOnlyMatchingValues() {
+        // Arrange
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(10);
+        for (int i = 0; i < 6; i++) cache.put(i, i);
+
+        // Act
+        cache.removeIf(value -> value % 2 == 0);
+
+        // Assert
+        assertEquals(3, cache.size());
+        assertNull(cache.get(0));
+        assertEquals(1, cache.get(1));
+    }
+
+    @Test
+    void putAndGet_ConcurrentThreads_ShouldStayWithinMaxSize() throws Exception {
+        // Arrange
+        BoundedCache<String, Integer> cache = new BoundedCache<>(100);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+
+        // Act
+        try {
+            for (int i = 0; i < 8; i++) {
+                int thread = i;
+                results.add(pool.submit(() -> {
+                    start.await();
+                    for (int n = 0; n < 10_000; n++) {
+                        String key = thread + ":" + (n % 500);
+                        cache.put(key, n);
+                        cache.get(key);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> result : results) result.get(10, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // Assert
+        assertTrue(cache.size() <= 100);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.TransferConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardLockManagerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private TransferConfig transferConfig;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        transferConfig = new TransferConfig();
+        transferConfig.getCardLocks().setEnabled(true);
+        transferConfig.getCardLocks().setStripes(8);
+        transferConfig.getCardLocks().setTimeoutMs(100);
+    }
+
+    @Test
+    void withCardLocks_Disabled_ShouldRunActionWithoutMetrics() {
+        transferConfig.getCardLocks().setEnabled(false);
+        CardLockManager lockManager = new CardLockManager(transferConfig, meterRegistry);
+
+        assertEquals("done", lockManager.withCardLocks(List.of(1L, 2L), () -> "done"));
+        assertTrue(meterRegistry.getMeters().isEmpty());
+    }
+
+    @Test
+    void withCardLocks_ShouldRecordWaitTimePerStripe() {
+        CardLockManager lockManager = new CardLockManager(transferConfig, meterRegistry);
+
+        lockManager.withCardLocks(List.of(5L, 5L), () -> null);
+
+        String stripe = String.valueOf(lockManager.stripeOf(5L));
+        assertEquals(1, meterRegistry.get("bank.card.lock.wait").tag("stripe", stripe).timer().count());
+    }
+
+    @Test
+    void withCardLocks_SameStripeHeld_ShouldTimeOut() throws Exception {
+        CardLockManager lockManager = new CardLockManager(transferConfig, meterRegistry);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<?> holder = executor.submit(() -> lockManager.withCardLocks(List.of(1L), () -> {
+            locked.countDown();
+            try {
+                return release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+
+        assertThrows(CannotAcquireLockException.class, () -> lockManager.withCardLocks(List.of(2L, 1L), () -> null));
+
+        release.countDown();
+        holder.get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+        // После освобождения полоса снова доступна
+        assertEquals("ok", lockManager.withCardLocks(List.of(1L), () -> "ok"));
+    }
+
+    @Test
+    void stripeOf_ShouldStayWithinStripeCount() {
+        CardLockManager lockManager = new CardLockManager(transferConfig, meterRegistry);
+
+        for (long cardId = -100; cardId < 1000; cardId++) {
+            int stripe = lockManager.stripeOf(cardId);
+            assertTrue(stripe >= 0 && stripe < 8);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.security.CardNumberCipher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardNumberBackfillTest {
+
+    @Mock
+    private BankCardRepository bankCardRepository;
+
+    private final CardNumberCipher cardNumberCipher = new CardNumberCipher("testSecretKey12345678901234567890", "testBlindIndexKey");
+    private final TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+    private CardNumberBackfill cardNumberBackfill;
+
+    @BeforeEach
+    void setUp() {
+        cardNumberBackfill = new CardNumberBackfill(bankCardRepository, cardNumberCipher, transactionTemplate, 2);
+    }
+
+    @Test
+    void backfill_ShouldFillCardsBatchByBatchUntilShortBatch() {
+        // Arrange - две полные порции и последняя неполная
+        when(bankCardRepository.findCardNumbersToBackfill(eq(0L), any(Pageable.class)))
+                .thenReturn(List.of(card(1L, cardNumberCipher.encrypt("4000000000001111")), card(2L, cardNumberCipher.encrypt("4000000000002222"))));
+        when(bankCardRepository.findCardNumbersToBackfill(eq(2L), any(Pageable.class)))
+                .thenReturn(List.of(card(5L, cardNumberCipher.encrypt("4000000000005555")), card(7L, cardNumberCipher.encrypt("4000000000007777"))));
+        when(bankCardRepository.findCardNumbersToBackfill(eq(7L), any(Pageable.class)))
+                .thenReturn(List.of(card(9L, cardNumberCipher.encrypt("4000000000009999"))));
+        when(bankCardRepository.updateDerivedNumberColumns(anyLong(), anyString(), anyString())).thenReturn(1);
+
+        // Act
+        cardNumberBackfill.backfill();
+
+        // Assert
+        verify(bankCardRepository).updateDerivedNumberColumns(1L, "1111", cardNumberCipher.blindIndex("4000000000001111"));
+        verify(bankCardRepository).updateDerivedNumberColumns(2L, "2222", cardNumberCipher.blindIndex("4000000000002222"));
+        verify(bankCardRepository).updateDerivedNumberColumns(5L, "5555", cardNumberCipher.blindIndex("4000000000005555"));
+        verify(bankCardRepository).updateDerivedNumberColumns(7L, "7777", cardNumberCipher.blindIndex("4000000000007777"));
+        verify(bankCardRepository).updateDerivedNumberColumns(9L, "9999", cardNumberCipher.blindIndex("4000000000009999"));
+        verify(bankCardRepository, times(3)).findCardNumbersToBackfill(anyLong(), any(Pageable.class));
+    }
+
+    @Test
+    void backfill_UndecryptableNumber_ShouldSkipItAndContinue() {
+        // Arrange - номер, зашифрованный другим ключом, не должен зациклить заполнение
+        String foreign = new CardNumberCipher("anotherSecretKey", "testBlindIndexKey").encrypt("4000000000001111");
+        when(bankCardRepository.findCardNumbersToBackfill(eq(0L), any(Pageable.class)))
+                .thenReturn(List.of(card(1L, foreign), card(2L, cardNumberCipher.encrypt("4000000000002222"))));
+        when(bankCardRepository.findCardNumbersToBackfill(eq(2L), any(Pageable.class))).thenReturn(List.of());
+        when(bankCardRepository.updateDerivedNumberColumns(anyLong(), anyString(), anyString())).thenReturn(1);
+
+        // Act
+        cardNumberBackfill.backfill();
+
+        // Assert
+        verify(bankCardRepository, never()).updateDerivedNumberColumns(eq(1L), any(), any());
+        verify(bankCardRepository).updateDerivedNumberColumns(2L, "2222", cardNumberCipher.blindIndex("4000000000002222"));
+    }
+
+    @Test
+    void backfill_PlainNumberAndDuplicate_ShouldFillLast4AndSkipDuplicateIndex() {
+        // Arrange - тестовая карта с номером открытым текстом и зашифрованная копия номера другой карты
+        when(bankCardRepository.findCardNumbersToBackfill(eq(0L), any(Pageable.class)))
+                .thenReturn(List.of(card(1L, "4000000000001111"), card(2L, cardNumberCipher.encrypt("4000000000002222"))));
+        when(bankCardRepository.findCardNumbersToBackfill(eq(2L), any(Pageable.class))).thenReturn(List.of());
+        when(bankCardRepository.existsByCardNumberHashAndIdNot(anyString(), anyLong())).thenAnswer(invocation -> invocation.getArgument(1).equals(2L));
+        when(bankCardRepository.updateDerivedNumberColumns(anyLong(), anyString(), any())).thenReturn(1);
+
+        // Act
+        cardNumberBackfill.backfill();
+
+        // Assert
+        verify(bankCardRepository).updateDerivedNumberColumns(1L, "1111", cardNumberCipher.blindIndex("4000000000001111"));
+        verify(bankCardRepository).updateDerivedNumberColumns(2L, "2222", null);
+    }
+
+    private BankCardRepository.CardNumber card(Long id, String storedNumber) {
+        return new BankCardRepository.CardNumber() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public String getCardNumber() {
+                return storedNumber;
+            }
+        };
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.TransferConfig;
+import com.example.bankcards.entity.BankCard;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.exception.ResourceNotFoundException;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.CardNumberCipher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Поиск карты по номеру на H2: один запрос по слепому индексу card_number_hash, без перебора и расшифровки номеров
+@DataJpaTest(showSql = false, properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@Import({BankCardService.class, CardNumberCipher.class, CurrentUserService.class, LedgerService.class, TransferConfig.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CardNumberLookupTest {
+
+    @Autowired
+    private BankCardService bankCardService;
+
+    @Autowired
+    private BankCardRepository bankCardRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CardNumberCipher cardNumberCipher;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private User customer;
+
+    @BeforeEach
+    void setUp() {
+        User admin = userRepository.save(new User("encoded-password", "Admin", "User", Role.ROLE_ADMIN));
+        customer = userRepository.save(new User("encoded-password", "John", "Doe", Role.ROLE_USER));
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        SecurityContextHolder.clearContext(); // Unit-тесты сервисов оставляют в потоке мок SecurityContext
+        SecurityContextHolder.getContext().setAuthentication(TestUtils.authenticationOf(admin));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        bankCardRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void findCardByNumber_ShouldRunSingleIndexedQuery() {
+        // Arrange
+        Long created = saveCard("4000123456789010");
+        saveCard("4000123456789011");
+        statistics.clear();
+
+        // Act
+        BankCard found = bankCardService.findCardByNumber("4000123456789010");
+
+        // Assert
+        assertEquals(created, found.getId());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void findCardByNumber_UnknownNumber_ShouldThrowAfterSingleQuery() {
+        // Arrange
+        saveCard("4000123456789010");
+        statistics.clear();
+
+        // Act & Assert
+        assertThrows(ResourceNotFoundException.class, () -> bankCardService.findCardByNumber("4000123456789019"));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    private Long saveCard(String number) {
+        BankCard card = new BankCard(cardNumberCipher.encrypt(number), "John Doe", LocalDate.now().plusYears(3), customer);
+        card.setCardNumberHash(cardNumberCipher.blindIndex(number));
+        return bankCardRepository.save(card).getId();
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.bankcards.service;
+
+import org.springframework.test.context.TestPropertySource;
+
+// Тот же сценарий, что и в TransactionServiceConcurrencyTest, но переводы идут через условные UPDATE без чтения карт
+@TestPropertySource(properties = "transfer.mode=CONDITIONAL_UPDATE")
+class ConditionalUpdateTransferConcurrencyTest extends TransactionServiceConcurrencyTest {
+}
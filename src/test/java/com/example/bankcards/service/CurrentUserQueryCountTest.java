@@ -0,0 +1,196 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.TransferConfig;
+import com.example.bankcards.config.UserDetailsCacheConfig;
+import com.example.bankcards.config.UserNameFilterConfig;
+import com.example.bankcards.entity.BankCard;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.CardNumberCipher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Сколько SQL-запросов делает каждый эндпоинт: права администратора проверяются по роли из токена без обращения к БД,
+// а текущий пользователь читается из БД не больше одного раза за запрос
+@DataJpaTest(showSql = false, properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@Import({UserService.class, BankCardService.class, CardNumberCipher.class, CurrentUserService.class, TokenVersionService.class, UserDetailsServiceImpl.class, UserDetailsCacheConfig.class, UserNameFilter.class, UserNameFilterConfig.class, SimpleMeterRegistry.class, LedgerService.class, TransferConfig.class, BCryptPasswordEncoder.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CurrentUserQueryCountTest {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private BankCardService bankCardService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private BankCardRepository bankCardRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private User admin;
+    private User customer;
+    private Long cardId;
+
+    @BeforeEach
+    void setUp() {
+        admin = userRepository.save(new User("encoded-password", "Admin", "User", Role.ROLE_ADMIN));
+        customer = userRepository.save(new User("encoded-password", "John", "Doe", Role.ROLE_USER));
+        cardId = bankCardRepository.save(new BankCard("4000000000000001", "John Doe", LocalDate.now().plusYears(3), customer)).getId();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        SecurityContextHolder.clearContext(); // Unit-тесты сервисов оставляют в потоке мок SecurityContext
+        SecurityContextHolder.getContext().setAuthentication(TestUtils.authenticationOf(admin));
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+        SecurityContextHolder.clearContext();
+        bankCardRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    // Выполнить вызовы сервисов так, как их делает контроллер в одном HTTP-запросе, и вернуть число SQL-запросов
+    private long queriesPerRequest(Runnable endpoint) {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        statistics.clear();
+        try {
+            endpoint.run();
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+        return statistics.getPrepareStatementCount();
+    }
+
+    private long userLoads() {
+        return statistics.getEntityStatistics(User.class.getName()).getLoadCount();
+    }
+
+    @Test
+    void getMyAccount_ShouldRunSingleQuery() {
+        // Arrange
+        SecurityContextHolder.getContext().setAuthentication(TestUtils.authenticationOf(customer));
+
+        // Act
+        long queries = queriesPerRequest(() -> userService.getMyAccount());
+
+        // Assert
+        assertEquals(1, queries);
+    }
+
+    @Test
+    void getUserById_ShouldLoadOnlyRequestedUser() {
+        // Act
+        long queries = queriesPerRequest(() -> userService.findUserBuId(customer.getId()));
+
+        // Assert: администратор не читается из БД, только запрошенный пользователь
+        assertEquals(1, queries);
+        assertEquals(1, userLoads());
+    }
+
+    @Test
+    void getAllUsers_ShouldRunSingleQuery() {
+        // Act
+        long queries = queriesPerRequest(() -> userService.getAllUsers());
+
+        // Assert
+        assertEquals(1, queries);
+    }
+
+    @Test
+    void changeUserRole_ShouldNotLoadAdmin() {
+        // Act: PUT /users/{id}/role вызывает changeUserRole, затем findUserBuId
+        long queries = queriesPerRequest(() -> {
+            userService.changeUserRole(customer.getId(), Role.ROLE_ADMIN);
+            userService.findUserBuId(customer.getId());
+        });
+
+        // Assert: целевой пользователь в каждой из двух транзакций, плюс UPDATE роли и версии токенов
+        assertEquals(2, userLoads());
+        assertEquals(3, queries);
+        User updated = userRepository.findById(customer.getId()).orElseThrow();
+        assertEquals(Role.ROLE_ADMIN, updated.getRole());
+        assertEquals(1, updated.getTokenVersion());
+    }
+
+    @Test
+    void deleteUser_ShouldLoadOnlyDeletedUser() {
+        // Act
+        queriesPerRequest(() -> userService.deleteUser(customer.getId()));
+
+        // Assert
+        assertEquals(1, userLoads());
+        assertFalse(userRepository.existsById(customer.getId()));
+    }
+
+    @Test
+    void activateCardByAdmin_ShouldNotLoadAdmin() {
+        // Act
+        queriesPerRequest(() -> bankCardService.activateCardByAdmin(cardId));
+
+        // Assert
+        assertEquals(0, userLoads());
+    }
+
+    @Test
+    void getMyAccount_ShouldLoadCurrentUserOncePerRequest() {
+        // Arrange
+        SecurityContextHolder.getContext().setAuthentication(TestUtils.authenticationOf(customer));
+
+        // Act: два обращения к текущему пользователю в одном запросе, затем ещё один запрос
+        queriesPerRequest(() -> {
+            userService.getMyAccount();
+            userService.getMyAccount();
+        });
+        long firstRequestLoads = userLoads();
+        queriesPerRequest(() -> userService.getMyAccount());
+
+        // Assert: пользователь не переживает границу запроса
+        assertEquals(1, firstRequestLoads);
+        assertEquals(1, userLoads());
+    }
+
+    @Test
+    void withoutRequest_ShouldLoadCurrentUserOnEveryCall() {
+        // Arrange: фоновый поток, атрибутов запроса нет
+        SecurityContextHolder.getContext().setAuthentication(TestUtils.authenticationOf(customer));
+        statistics.clear();
+
+        // Act
+        userService.getMyAccount();
+        userService.getMyAccount();
+
+        // Assert
+        assertEquals(2, userLoads());
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.TransferConfig;
+import com.example.bankcards.entity.IdempotencyKey;
+import com.example.bankcards.exception.BadRequestException;
+import com.example.bankcards.repository.IdempotencyKeyRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyServiceTest {
+
+    @Mock
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    private IdempotencyService idempotencyService;
+
+    @BeforeEach
+    void setUp() {
+        TransferConfig transferConfig = new TransferConfig();
+        transferConfig.getIdempotency().setCacheSize(2);
+        idempotencyService = new IdempotencyService(idempotencyKeyRepository, transferConfig);
+    }
+
+    @Test
+    void fingerprint_ShouldIgnoreAmountScale() {
+        assertEquals(idempotencyService.fingerprint(1L, 2L, new BigDecimal("100")),
+                idempotencyService.fingerprint(1L, 2L, new BigDecimal("100.00")));
+    }
+
+    @Test
+    void findTransactionId_UnknownKey_ShouldReturnNull() {
+        when(idempotencyKeyRepository.findByUserIdAndKey(1L, "key")).thenReturn(Optional.empty());
+
+        assertNull(idempotencyService.findTransactionId(1L, "key", "1:2:100"));
+    }
+
+    @Test
+    void findTransactionId_CachedKey_ShouldNotQueryDatabase() {
+        idempotencyService.cache(1L, "key", "1:2:100", 42L);
+
+        assertEquals(42L, idempotencyService.findTransactionId(1L, "key", "1:2:100"));
+        verifyNoInteractions(idempotencyKeyRepository);
+    }
+
+    @Test
+    void findTransactionId_StoredKey_ShouldBeCachedAfterFirstLookup() {
+        when(idempotencyKeyRepository.findByUserIdAndKey(1L, "key"))
+                .thenReturn(Optional.of(new IdempotencyKey(1L, "key", "1:2:100", 42L)));
+
+        assertEquals(42L, idempotencyService.findTransactionId(1L, "key", "1:2:100"));
+        assertEquals(42L, idempotencyService.findTransactionId(1L, "key", "1:2:100"));
+        verify(idempotencyKeyRepository, times(1)).findByUserIdAndKey(1L, "key");
+    }
+
+    @Test
+    void findTransactionId_KeyReusedForDifferentTransfer_ShouldThrowException() {
+        idempotencyService.cache(1L, "key", "1:2:100", 42L);
+
+        assertThrows(BadRequestException.class, () -> idempotencyService.findTransactionId(1L, "key", "1:2:200"));
+    }
+
+    @Test
+    void findTransactionId_TooLongKey_ShouldThrowException() {
+        assertThrows(BadRequestException.class, () -> idempotencyService.findTransactionId(1L, "k".repeat(101), "1:2:100"));
+    }
+
+    @Test
+    void cache_Full_ShouldEvictKeys() {
+        when(idempotencyKeyRepository.findByUserIdAndKey(any(), any())).thenReturn(Optional.empty());
+        idempotencyService.cache(1L, "first", "1:2:100", 1L);
+        idempotencyService.cache(1L, "second", "1:2:100", 2L);
+        idempotencyService.cache(1L, "third", "1:2:100", 3L);
+
+        // В кэше размером 2 остались два ключа; за вытесненным идём в БД, где ключа (в этом тесте) уже нет
+        long cached = Stream.of("first", "second", "third")
+                .map(key -> idempotencyService.findTransactionId(1L, key, "1:2:100"))
+                .filter(Objects::nonNull)
+                .count();
+        assertEquals(2, cached);
+    }
+}
@@ -0,0 +1,381 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.JwtConfig;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.UserPrincipal;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.Authentication;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class JwtTokenProviderTest {
+
+    private static final String SECRET = "testSecretKeyForJwtTokenProvider1234567890";
+
+    private JwtConfig jwtConfig;
+    private SimpleMeterRegistry meterRegistry;
+    private UserRepository userRepository;
+    private TokenVersionService tokenVersionService;
+    private JwtTokenProvider jwtTokenProvider;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        jwtConfig = new JwtConfig();
+        jwtConfig.setSecret(SECRET);
+        jwtConfig.setExpirationMs(60_000L);
+        meterRegistry = new SimpleMeterRegistry();
+        userRepository = mock(UserRepository.class);
+        when(userRepository.findTokenVersionById(7L)).thenReturn(Optional.of(0));
+        tokenVersionService = new TokenVersionService(userRepository, jwtConfig);
+        jwtTokenProvider = new JwtTokenProvider(jwtConfig, Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)), tokenVersionService, meterRegistry);
+
+        user = new User("encoded-password", "John", "Doe", Role.ROLE_ADMIN);
+        user.setId(7L);
+    }
+
+    @Test
+    void parseValidClaims_ValidToken_ShouldReturnClaims() {
+        // Arrange
+        String token = jwtTokenProvider.generateToken(user);
+
+        // Act
+        Optional<Claims> claims = jwtTokenProvider.parseValidClaims(token);
+
+        // Assert
+        assertTrue(claims.isPresent());
+        assertEquals("7", claims.get().getSubject());
+        assertEquals(2, claims.get().get("v", Integer.class));
+        assertEquals(Role.ROLE_ADMIN.getCode(), claims.get().get("r", Integer.class));
+        assertNull(claims.get().get("username"));
+        assertNull(claims.get().getIssuedAt());
+    }
+
+    @Test
+    void getAuthentication_FromClaims_ShouldMatchTokenBasedAuthentication() {
+        // Arrange
+        String token = jwtTokenProvider.generateToken(user);
+        Claims claims = jwtTokenProvider.parseValidClaims(token).orElseThrow();
+
+        // Act
+        Authentication fromClaims = jwtTokenProvider.getAuthentication(claims);
+        Authentication fromToken = jwtTokenProvider.getAuthentication(token);
+
+        // Assert
+        assertEquals("7", fromClaims.getName());
+        assertEquals(fromToken.getName(), fromClaims.getName());
+        assertEquals(fromToken.getAuthorities(), fromClaims.getAuthorities());
+        assertEquals("ROLE_ADMIN", fromClaims.getAuthorities().iterator().next().getAuthority());
+    }
+
+    @Test
+    void getAuthentication_LegacyToken_ShouldCarryUserIdNameAndRoleInPrincipal() {
+        // Arrange
+        jwtConfig.setTokenFormat(JwtConfig.TokenFormat.LEGACY);
+        String token = jwtTokenProvider.generateToken(user);
+        jwtConfig.setTokenFormat(JwtConfig.TokenFormat.COMPACT);
+
+        // Act
+        Authentication authentication = jwtTokenProvider.getAuthentication(token);
+
+        // Assert
+        UserPrincipal principal = assertInstanceOf(UserPrincipal.class, authentication.getPrincipal());
+        assertEquals(7L, principal.getId());
+        assertEquals("John", principal.getFirstName());
+        assertEquals("Doe", principal.getLastName());
+        assertEquals(Role.ROLE_ADMIN, principal.getRole());
+        assertTrue(principal.isAdmin());
+        assertEquals("John Doe", authentication.getName());
+    }
+
+    @Test
+    void generateToken_ShouldIssueUniqueTokenIdCarriedInPrincipal() {
+        // Arrange
+        String first = jwtTokenProvider.generateToken(user);
+        String second = jwtTokenProvider.generateToken(user);
+
+        // Act
+        UserPrincipal principal = (UserPrincipal) jwtTokenProvider.getAuthentication(first).getPrincipal();
+
+        // Assert
+        assertNotNull(principal.getTokenId());
+        assertEquals(jwtTokenProvider.parseValidClaims(first).get().getId(), principal.getTokenId());
+        assertNotEquals(principal.getTokenId(), jwtTokenProvider.parseValidClaims(second).get().getId());
+    }
+
+    @Test
+    void generateToken_BothFormats_ShouldIssueTokenIdOfSameFormat() {
+        // Arrange
+        String compact = jwtTokenProvider.generateToken(user);
+        jwtConfig.setTokenFormat(JwtConfig.TokenFormat.LEGACY);
+        String legacy = jwtTokenProvider.generateToken(user);
+        jwtConfig.setTokenFormat(JwtConfig.TokenFormat.COMPACT);
+
+        // Act & Assert
+        assertEquals(22, jwtTokenProvider.parseValidClaims(compact).get().getId().length());
+        assertEquals(22, jwtTokenProvider.parseValidClaims(legacy).get().getId().length());
+    }
+
+    @Test
+    void getAuthentication_CompactToken_ShouldCarryUserIdRoleAndVersion() {
+        // Arrange
+        user.setTokenVersion(3);
+        when(userRepository.findTokenVersionById(7L)).thenReturn(Optional.of(3));
+        String token = jwtTokenProvider.generateToken(user);
+
+        // Act
+        Authentication authentication = jwtTokenProvider.authenticate(token).orElseThrow();
+
+        // Assert
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        assertEquals(7L, principal.getId());
+        assertEquals(Role.ROLE_ADMIN, principal.getRole());
+        assertEquals(3, principal.getTokenVersion());
+        assertNull(principal.getFirstName());
+        assertEquals("ROLE_ADMIN", authentication.getAuthorities().iterator().next().getAuthority());
+    }
+
+    @Test
+    void generateToken_CompactFormat_ShouldBeMuchShorterThanLegacy() {
+        // Arrange
+        jwtConfig.setTokenFormat(JwtConfig.TokenFormat.LEGACY);
+        String legacy = jwtTokenProvider.generateToken(user);
+        jwtConfig.setTokenFormat(JwtConfig.TokenFormat.COMPACT);
+
+        // Act
+        String compact = jwtTokenProvider.generateToken(user);
+
+        // Assert: заголовок Authorization короче почти вдвое
+        assertTrue(compact.length() * 10 < legacy.length() * 7, "compact=" + compact.length() + ", legacy=" + legacy.length());
+    }
+
+    @Test
+    void authenticate_UnknownTokenFormat_ShouldBeRejected() {
+        // Arrange
+        String token = Jwts.builder()
+                .setSubject("7")
+                .claim("v", 99)
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000L))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)), SignatureAlgorithm.HS256)
+                .compact();
+
+        // Act & Assert
+        assertTrue(jwtTokenProvider.authenticate(token).isEmpty());
+    }
+
+    @Test
+    void authenticate_CompactTokenWithoutRole_ShouldBeRejected() {
+        // Arrange
+        String token = Jwts.builder()
+                .setSubject("7")
+                .claim("v", 2)
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000L))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)), SignatureAlgorithm.HS256)
+                .compact();
+
+        // Act & Assert
+        assertTrue(jwtTokenProvider.authenticate(token).isEmpty());
+    }
+
+    @Test
+    void authenticate_LegacyTokenWithoutRole_ShouldBeRejected() {
+        // Arrange
+        String token = Jwts.builder()
+                .setSubject("7")
+                .claim("firstName", "John")
+                .claim("lastName", "Doe")
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000L))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)), SignatureAlgorithm.HS256)
+                .compact();
+
+        // Act & Assert
+        assertTrue(jwtTokenProvider.authenticate(token).isEmpty());
+    }
+
+    @Test
+    void parseValidClaims_TokenSignedWithOtherKey_ShouldReturnEmpty() {
+        // Arrange
+        String otherSecret = "anotherSecretKeyForJwtTokenProvider0987654321";
+        JwtTokenProvider otherProvider = new JwtTokenProvider(jwtConfig, Keys.hmacShaKeyFor(otherSecret.getBytes(StandardCharsets.UTF_8)), tokenVersionService, new SimpleMeterRegistry());
+        String token = otherProvider.generateToken(user);
+
+        // Act & Assert
+        assertTrue(jwtTokenProvider.parseValidClaims(token).isEmpty());
+        assertFalse(jwtTokenProvider.isValid(token));
+    }
+
+    @Test
+    void parseValidClaims_ExpiredOrMalformedToken_ShouldReturnEmpty() {
+        // Arrange
+        jwtConfig.setExpirationMs(-1_000L);
+        String expired = jwtTokenProvider.generateToken(user);
+
+        // Act & Assert
+        assertTrue(jwtTokenProvider.parseValidClaims(expired).isEmpty());
+        assertTrue(jwtTokenProvider.parseValidClaims("not-a-jwt").isEmpty());
+        assertTrue(jwtTokenProvider.parseValidClaims("").isEmpty());
+    }
+
+    @Test
+    void getUserIdFromToken_ShouldReturnSubject() {
+        // Arrange
+        String token = jwtTokenProvider.generateToken(user);
+
+        // Act & Assert
+        assertEquals(7L, jwtTokenProvider.getUserIdFromToken(token));
+        assertNotNull(jwtTokenProvider.getExpirationDateFromToken(token));
+    }
+
+    @Test
+    void authenticate_RepeatedToken_ShouldReturnCachedAuthentication() {
+        // Arrange
+        String token = jwtTokenProvider.generateToken(user);
+
+        // Act
+        Authentication first = jwtTokenProvider.authenticate(token).orElseThrow();
+        Authentication second = jwtTokenProvider.authenticate(token).orElseThrow();
+
+        // Assert
+        assertSame(first, second);
+        assertEquals("7", second.getName());
+        assertEquals(1.0, meterRegistry.counter("bank.jwt.cache", "result", "miss").count());
+        assertEquals(1.0, meterRegistry.counter("bank.jwt.cache", "result", "hit").count());
+        assertEquals(1.0, meterRegistry.get("bank.jwt.cache.size").gauge().value());
+    }
+
+    @Test
+    void authenticate_InvalidToken_ShouldNotBeCached() {
+        // Act
+        Optional<Authentication> first = jwtTokenProvider.authenticate("not-a-jwt");
+        Optional<Authentication> second = jwtTokenProvider.authenticate("not-a-jwt");
+
+        // Assert
+        assertTrue(first.isEmpty());
+        assertTrue(second.isEmpty());
+        assertEquals(2.0, meterRegistry.counter("bank.jwt.cache", "result", "miss").count());
+        assertEquals(0.0, meterRegistry.get("bank.jwt.cache.size").gauge().value());
+    }
+
+    @Test
+    void authenticate_CacheEntryExpired_ShouldVerifyTokenAgain() {
+        // Arrange
+        jwtConfig.getCache().setMaxTtl(Duration.ZERO);
+        String token = jwtTokenProvider.generateToken(user);
+
+        // Act
+        Authentication first = jwtTokenProvider.authenticate(token).orElseThrow();
+        Authentication second = jwtTokenProvider.authenticate(token).orElseThrow();
+
+        // Assert
+        assertNotSame(first, second);
+        assertEquals(2.0, meterRegistry.counter("bank.jwt.cache", "result", "miss").count());
+        assertEquals(0.0, meterRegistry.counter("bank.jwt.cache", "result", "hit").count());
+    }
+
+    @Test
+    void authenticate_CacheFull_ShouldStayWithinMaxSize() {
+        // Arrange
+        jwtConfig.getCache().setMaxSize(2);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        JwtTokenProvider provider = new JwtTokenProvider(jwtConfig, Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)), tokenVersionService, registry);
+        for (long id = 1; id <= 5; id++) {
+            user.setId(id);
+            // Act
+            provider.authenticate(provider.generateToken(user));
+        }
+
+        // Assert
+        assertEquals(2.0, registry.get("bank.jwt.cache.size").gauge().value());
+    }
+
+    @Test
+    void authenticate_CacheDisabled_ShouldAlwaysVerifyToken() {
+        // Arrange
+        jwtConfig.getCache().setEnabled(false);
+        String token = jwtTokenProvider.generateToken(user);
+
+        // Act
+        Authentication first = jwtTokenProvider.authenticate(token).orElseThrow();
+        Authentication second = jwtTokenProvider.authenticate(token).orElseThrow();
+
+        // Assert
+        assertNotSame(first, second);
+        assertEquals(0.0, meterRegistry.counter("bank.jwt.cache", "result", "hit").count());
+    }
+
+    @Test
+    void authenticate_TokenIssuedBeforeRoleChange_ShouldBeRejected() {
+        // Arrange
+        String token = jwtTokenProvider.generateToken(user);
+        assertTrue(jwtTokenProvider.authenticate(token).isPresent());
+
+        // Act: смена роли увеличивает версию токенов (вне транзакции кэш версий обновляется сразу)
+        tokenVersionService.revokeTokens(user);
+        Optional<Authentication> stale = jwtTokenProvider.authenticate(token);
+        Optional<Authentication> fresh = jwtTokenProvider.authenticate(jwtTokenProvider.generateToken(user));
+
+        // Assert
+        assertTrue(stale.isEmpty());
+        assertTrue(fresh.isPresent());
+        assertEquals(1, ((UserPrincipal) fresh.get().getPrincipal()).getTokenVersion());
+    }
+
+    @Test
+    void authenticate_RepeatedRequests_ShouldReadTokenVersionFromDatabaseOnce() {
+        // Arrange
+        String token = jwtTokenProvider.generateToken(user);
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            assertTrue(jwtTokenProvider.authenticate(token).isPresent());
+        }
+
+        // Assert
+        verify(userRepository, times(1)).findTokenVersionById(7L);
+    }
+
+    @Test
+    void authenticate_DeletedUser_ShouldBeRejected() {
+        // Arrange
+        String token = jwtTokenProvider.generateToken(user);
+        when(userRepository.findTokenVersionById(7L)).thenReturn(Optional.empty());
+
+        // Act & Assert
+        assertTrue(jwtTokenProvider.authenticate(token).isEmpty());
+    }
+
+    @Test
+    void authenticate_TokenWithoutVersionClaim_ShouldBeTreatedAsVersionZero() {
+        // Arrange: токен старого формата, выданный до появления claim "ver"
+        String token = Jwts.builder()
+                .setSubject("7")
+                .claim("username", "John Doe")
+                .claim("firstName", "John")
+                .claim("lastName", "Doe")
+                .claim("role", "ROLE_ADMIN")
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000L))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)), SignatureAlgorithm.HS256)
+                .compact();
+
+        // Act
+        Optional<Authentication> authentication = jwtTokenProvider.authenticate(token);
+
+        // Assert
+        assertTrue(authentication.isPresent());
+        assertEquals(0, ((UserPrincipal) authentication.get().getPrincipal()).getTokenVersion());
+    }
+}
@@ -0,0 +1,265 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.TransferConfig;
+import com.example.bankcards.dto.request.TransferRequest;
+import com.example.bankcards.entity.BalanceSnapshot;
+import com.example.bankcards.entity.BankCard;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.LedgerEntry;
+import com.example.bankcards.entity.LedgerEntryType;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.BalanceSnapshotRepository;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.LedgerEntryRepository;
+import com.example.bankcards.repository.TransactionBatchRepository;
+import com.example.bankcards.repository.TransactionRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.CardNumberCipher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Журнал проводок на H2: переводы не трогают строки карт, снимки сворачивают журнал без изменения балансов
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@Import({TransactionService.class, IdempotencyService.class, CardLockManager.class, LedgerService.class, TransactionBatchRepository.class, TransferConfig.class, SimpleMeterRegistry.class,
+        BankCardService.class, CurrentUserService.class, CardNumberCipher.class})
+@TestPropertySource(properties = "transfer.mode=LEDGER")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class LedgerServiceTest {
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private BankCardService bankCardService;
+
+    @Autowired
+    private BankCardRepository bankCardRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Autowired
+    private BalanceSnapshotRepository balanceSnapshotRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransferConfig transferConfig;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Long salaryCardId;
+    private Long savingsCardId;
+
+    @BeforeEach
+    void setUp() {
+        User owner = userRepository.save(new User("encoded-password", "John", "Doe", Role.ROLE_USER));
+        salaryCardId = bankCardRepository.save(card("4000000000000001", "1000.00", owner)).getId();
+        savingsCardId = bankCardRepository.save(card("4000000000000002", "0.00", owner)).getId();
+        SecurityContextHolder.clearContext(); // Unit-тесты сервисов оставляют в потоке мок SecurityContext
+        SecurityContextHolder.getContext().setAuthentication(TestUtils.authenticationOf(owner));
+    }
+
+    @AfterEach
+    void tearDown() {
+        transferConfig.setMode(TransferConfig.Mode.LEDGER);
+        SecurityContextHolder.clearContext();
+        balanceSnapshotRepository.deleteAll();
+        ledgerEntryRepository.deleteAll();
+        transactionRepository.deleteAll();
+        bankCardRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void transfer_ShouldAppendEntriesWithoutUpdatingCards() {
+        transactionService.transferBetweenMyCards(salaryCardId, savingsCardId, new BigDecimal("300.00"), "rent");
+        transactionService.transferBetweenMyCards(savingsCardId, salaryCardId, new BigDecimal("100.00"), "back");
+
+        assertEquals(4, ledgerEntryRepository.count());
+        assertBalance("800.00", salaryCardId);
+        assertBalance("200.00", savingsCardId);
+        // Строки карт не обновлялись
+        assertEquals(0, new BigDecimal("1000.00").compareTo(bankCardRepository.findById(salaryCardId).orElseThrow().getBalance()));
+    }
+
+    @Test
+    void transferBatch_ShouldAppendEntriesForAppliedTransfers() {
+        transactionService.transferBatch(List.of(
+                transfer(salaryCardId, savingsCardId, "600.00"),
+                transfer(salaryCardId, savingsCardId, "600.00"),
+                transfer(savingsCardId, salaryCardId, "50.00")), false);
+
+        assertEquals(4, ledgerEntryRepository.count());
+        assertBalance("450.00", salaryCardId);
+        assertBalance("550.00", savingsCardId);
+    }
+
+    @Test
+    void snapshot_ShouldCompactJournalAndSyncCardBalance() {
+        transactionService.transferBetweenMyCards(salaryCardId, savingsCardId, new BigDecimal("300.00"), "first");
+        ledgerService.snapshot();
+        transactionService.transferBetweenMyCards(salaryCardId, savingsCardId, new BigDecimal("200.00"), "second");
+        ledgerService.snapshot();
+
+        // Для каждой карты остаётся только последний снимок
+        List<BalanceSnapshot> snapshots = balanceSnapshotRepository.findAll();
+        assertEquals(2, snapshots.size());
+        assertBalance("500.00", salaryCardId);
+        assertBalance("500.00", savingsCardId);
+        assertEquals(0, new BigDecimal("500.00").compareTo(bankCardRepository.findById(salaryCardId).orElseThrow().getBalance()));
+
+        // Проводки после снимка продолжают учитываться
+        transactionService.transferBetweenMyCards(savingsCardId, salaryCardId, new BigDecimal("50.00"), "third");
+        assertBalance("550.00", salaryCardId);
+        assertBalance("450.00", savingsCardId);
+    }
+
+    @Test
+    void snapshot_WithoutNewEntries_ShouldDoNothing() {
+        ledgerService.snapshot();
+
+        assertEquals(0, balanceSnapshotRepository.count());
+        assertBalance("1000.00", salaryCardId);
+    }
+
+    @Test
+    void snapshot_WithTransferInFlight_ShouldWaitForItsEntries() throws Exception {
+        transactionService.transferBetweenMyCards(salaryCardId, savingsCardId, new BigDecimal("300.00"), "first");
+        Long transactionId = transactionRepository.findAll().get(0).getId();
+
+        // Незакоммиченный перевод держит блокировку карты зачисления, пока его проводка не закоммичена
+        CountDownLatch locked = new CountDownLatch(1);
+        CompletableFuture<Void> inFlight = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(status -> {
+            bankCardRepository.findByIdForUpdate(savingsCardId).orElseThrow();
+            ledgerEntryRepository.saveAndFlush(new LedgerEntry(savingsCardId, transactionId, LedgerEntryType.CREDIT, new BigDecimal("100.00")));
+            locked.countDown();
+            sleep(300);
+        }));
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+
+        ledgerService.snapshot();
+        inFlight.get(5, TimeUnit.SECONDS);
+
+        // Снимок дождался коммита и включил проводку, а не пропустил её навсегда
+        BalanceSnapshot snapshot = balanceSnapshotRepository.findFirstByCardIdOrderByLastEntryIdDesc(savingsCardId).orElseThrow();
+        assertEquals(0, new BigDecimal("400.00").compareTo(snapshot.getBalance()));
+        assertEquals(ledgerEntryRepository.findMaxIdByCardId(savingsCardId), snapshot.getLastEntryId());
+        assertTrue(ledgerEntryRepository.findCardIdsWithEntriesAfterSnapshot().isEmpty());
+        assertBalance("400.00", savingsCardId);
+    }
+
+    @Test
+    void deleteCard_AfterLedgerTransfers_ShouldRemoveEntriesAndKeepCounterpartBalances() {
+        User owner = userRepository.findAll().get(0);
+        Long depositCardId = bankCardRepository.save(card("4000000000000003", "0.00", owner)).getId();
+        transactionService.transferBetweenMyCards(salaryCardId, savingsCardId, new BigDecimal("300.00"), "rent");
+        transactionService.transferBetweenMyCards(savingsCardId, depositCardId, new BigDecimal("300.00"), "deposit");
+
+        bankCardService.deleteCardByAdmin(savingsCardId);
+
+        // Транзакции карты удалены вместе с проводками обеих сторон, балансы других карт сохранены в снимках
+        assertFalse(bankCardRepository.existsById(savingsCardId));
+        assertEquals(0, transactionRepository.count());
+        assertEquals(0, ledgerEntryRepository.count());
+        assertBalance("700.00", salaryCardId);
+        assertBalance("300.00", depositCardId);
+    }
+
+    @Test
+    void reconcileMode_LeavingLedger_ShouldFoldEntriesIntoCardBalances() {
+        transactionService.transferBetweenMyCards(salaryCardId, savingsCardId, new BigDecimal("300.00"), "first");
+        ledgerService.snapshot();
+        transactionService.transferBetweenMyCards(salaryCardId, savingsCardId, new BigDecimal("200.00"), "not yet in snapshot");
+
+        // Перезапуск в другом режиме
+        transferConfig.setMode(TransferConfig.Mode.PESSIMISTIC);
+        ledgerService.reconcileMode();
+
+        assertEquals(0, new BigDecimal("500.00").compareTo(bankCardRepository.findById(salaryCardId).orElseThrow().getBalance()));
+        assertEquals(0, new BigDecimal("500.00").compareTo(bankCardRepository.findById(savingsCardId).orElseThrow().getBalance()));
+        assertBalance("500.00", salaryCardId);
+
+        // Повторный запуск ничего не прибавляет второй раз
+        ledgerService.reconcileMode();
+        assertEquals(0, new BigDecimal("500.00").compareTo(bankCardRepository.findById(salaryCardId).orElseThrow().getBalance()));
+    }
+
+    @Test
+    void reconcileMode_ReturningToLedger_ShouldKeepTransfersMadeInOtherMode() {
+        transactionService.transferBetweenMyCards(salaryCardId, savingsCardId, new BigDecimal("300.00"), "in ledger");
+        transferConfig.setMode(TransferConfig.Mode.PESSIMISTIC);
+        ledgerService.reconcileMode();
+        transactionService.transferBetweenMyCards(salaryCardId, savingsCardId, new BigDecimal("100.00"), "outside ledger");
+
+        // Снова LEDGER: снимки выравниваются по балансам карт
+        transferConfig.setMode(TransferConfig.Mode.LEDGER);
+        ledgerService.reconcileMode();
+
+        assertBalance("600.00", salaryCardId);
+        assertBalance("400.00", savingsCardId);
+        transactionService.transferBetweenMyCards(savingsCardId, salaryCardId, new BigDecimal("50.00"), "back in ledger");
+        assertBalance("650.00", salaryCardId);
+        assertBalance("350.00", savingsCardId);
+    }
+
+    private void assertBalance(String expected, Long cardId) {
+        BankCard card = bankCardRepository.findById(cardId).orElseThrow();
+        assertEquals(0, new BigDecimal(expected).compareTo(ledgerService.balanceOf(card)), "Balance of card " + cardId);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private TransferRequest transfer(Long from, Long to, String amount) {
+        TransferRequest request = new TransferRequest();
+        request.setFromCardId(from);
+        request.setToCardId(to);
+        request.setAmount(new BigDecimal(amount));
+        return request;
+    }
+
+    private BankCard card(String number, String balance, User owner) {
+        BankCard card = new BankCard(number, "John Doe", LocalDate.now().plusYears(3), owner);
+        card.setStatus(CardStatus.ACTIVE);
+        card.setBalance(new BigDecimal(balance));
+        return card;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.bankcards.service;
+
+import org.springframework.test.context.TestPropertySource;
+
+// Тот же сценарий, что и в TransactionServiceConcurrencyTest, но переводы дописывают проводки в журнал,
+// а балансы считаются по журналу
+@TestPropertySource(properties = "transfer.mode=LEDGER")
+class LedgerTransferConcurrencyTest extends TransactionServiceConcurrencyTest {
+}
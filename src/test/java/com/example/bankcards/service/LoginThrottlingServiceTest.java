@@ -0,0 +1,97 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.LoginThrottlingConfig;
+import com.example.bankcards.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoginThrottlingServiceTest {
+
+    private LoginThrottlingConfig config;
+    private SimpleMeterRegistry meterRegistry;
+    private AtomicLong clock;
+    private LoginThrottlingService loginThrottlingService;
+
+    @BeforeEach
+    void setUp() {
+        config = new LoginThrottlingConfig();
+        config.setUsername(new LoginThrottlingConfig.Limit(3, Duration.ofSeconds(10)));
+        config.setIp(new LoginThrottlingConfig.Limit(5, Duration.ofSeconds(1)));
+        config.setMaxKeys(100);
+        meterRegistry = new SimpleMeterRegistry();
+        clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+        loginThrottlingService = new LoginThrottlingService(config, meterRegistry, clock::get);
+    }
+
+    @Test
+    void checkLoginAllowed_UsernameBurstExceeded_ShouldThrowWithRetryAfter() {
+        // Arrange
+        for (int i = 0; i < 3; i++) loginThrottlingService.checkLoginAllowed("John Doe", "10.0.0." + i);
+
+        // Act
+        TooManyRequestsException ex = assertThrows(TooManyRequestsException.class, () ->
+                loginThrottlingService.checkLoginAllowed("John Doe", "10.0.0.9"));
+
+        // Assert
+        assertEquals(10, ex.getRetryAfterSeconds());
+        assertEquals(1, meterRegistry.counter("bank.login.throttled", "key", "username").count());
+    }
+
+    @Test
+    void checkLoginAllowed_AfterRefillInterval_ShouldAllowOneMoreAttempt() {
+        // Arrange
+        for (int i = 0; i < 3; i++) loginThrottlingService.checkLoginAllowed("John Doe", null);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        // Act & Assert
+        assertDoesNotThrow(() -> loginThrottlingService.checkLoginAllowed("John Doe", null));
+        assertThrows(TooManyRequestsException.class, () -> loginThrottlingService.checkLoginAllowed("John Doe", null));
+    }
+
+    @Test
+    void checkLoginAllowed_IpRejected_ShouldNotSpendUsernameToken() {
+        // Arrange
+        for (int i = 0; i < 5; i++) loginThrottlingService.checkLoginAllowed("User " + i, "10.0.0.1");
+        assertThrows(TooManyRequestsException.class, () -> loginThrottlingService.checkLoginAllowed("John Doe", "10.0.0.1"));
+
+        // Act & Assert
+        for (int i = 0; i < 3; i++) loginThrottlingService.checkLoginAllowed("John Doe", "10.0.0.2");
+        assertEquals(1, meterRegistry.counter("bank.login.throttled", "key", "ip").count());
+    }
+
+    @Test
+    void checkLoginAllowed_MaxKeysReached_ShouldThrottleNewKeysUntilEviction() {
+        // Arrange
+        config.setMaxKeys(2);
+        meterRegistry = new SimpleMeterRegistry();
+        loginThrottlingService = new LoginThrottlingService(config, meterRegistry, clock::get);
+        loginThrottlingService.checkLoginAllowed("User 1", null);
+        loginThrottlingService.checkLoginAllowed("User 2", null);
+
+        // Act & Assert - пока бакеты заняты, новое имя ограничивается, а не проходит без лимита
+        TooManyRequestsException ex = assertThrows(TooManyRequestsException.class, () ->
+                loginThrottlingService.checkLoginAllowed("User 3", null));
+        assertEquals(10, ex.getRetryAfterSeconds());
+        assertEquals(1, meterRegistry.get("bank.login.throttling.overflow").tag("key", "username").functionCounter().count());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        for (int i = 0; i < 3; i++) loginThrottlingService.checkLoginAllowed("User 3", null);
+        assertThrows(TooManyRequestsException.class, () -> loginThrottlingService.checkLoginAllowed("User 3", null));
+    }
+
+    @Test
+    void checkLoginAllowed_Disabled_ShouldNeverThrow() {
+        // Arrange
+        config.setEnabled(false);
+
+        // Act & Assert
+        for (int i = 0; i < 10; i++) loginThrottlingService.checkLoginAllowed("John Doe", "10.0.0.1");
+    }
+}
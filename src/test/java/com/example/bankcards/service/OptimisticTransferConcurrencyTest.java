@@ -0,0 +1,14 @@
+package com.example.bankcards.service;
+
+import org.springframework.test.context.TestPropertySource;
+
+// Тот же сценарий, что и в TransactionServiceConcurrencyTest, но в оптимистичном режиме с повторами.
+// Бюджет повторов большой: на 4 картах и 16 потоках конфликты версий идут постоянно
+@TestPropertySource(properties = {
+        "transfer.mode=OPTIMISTIC",
+        "transfer.max-attempts=100",
+        "transfer.initial-backoff-ms=1",
+        "transfer.max-backoff-ms=20"
+})
+class OptimisticTransferConcurrencyTest extends TransactionServiceConcurrencyTest {
+}
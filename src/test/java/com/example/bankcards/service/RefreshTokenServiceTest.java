@@ -0,0 +1,147 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.JwtConfig;
+import com.example.bankcards.entity.RefreshToken;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.RefreshTokenRepository;
+import com.example.bankcards.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Ротация refresh-токенов на реальной БД: атомарная пометка использования и отзыв всех токенов при повторном предъявлении
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@Import(RefreshTokenService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RefreshTokenServiceTest {
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JwtConfig jwtConfig;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(new User("encoded-password", "John", "Doe", Role.ROLE_USER));
+    }
+
+    @AfterEach
+    void tearDown() {
+        refreshTokenRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void issue_ShouldStoreOnlyHashOfToken() {
+        // Act
+        String token = refreshTokenService.issue(user);
+
+        // Assert
+        RefreshToken stored = refreshTokenRepository.findAll().get(0);
+        assertNotEquals(token, stored.getTokenHash());
+        assertEquals(64, stored.getTokenHash().length());
+        assertEquals(user.getId(), stored.getUserId());
+        assertTrue(stored.getExpiresAt().isAfter(LocalDateTime.now().plus(jwtConfig.getRefreshToken().getTtl()).minusMinutes(1)));
+    }
+
+    @Test
+    void rotate_ShouldReturnUserAndNewTokenAndMarkOldTokenUsed() {
+        // Arrange
+        String token = refreshTokenService.issue(user);
+
+        // Act
+        RefreshTokenService.Rotation rotation = refreshTokenService.rotate(token);
+
+        // Assert
+        assertEquals(user.getId(), rotation.getUser().getId());
+        assertNotEquals(token, rotation.getRefreshToken());
+        assertEquals(2, refreshTokenRepository.count());
+        assertDoesNotThrow(() -> refreshTokenService.rotate(rotation.getRefreshToken()));
+    }
+
+    @Test
+    void rotate_ReusedToken_ShouldRevokeAllUserTokens() {
+        // Arrange
+        String token = refreshTokenService.issue(user);
+        String rotated = refreshTokenService.rotate(token).getRefreshToken();
+        refreshTokenService.issue(user); // Сессия на другом устройстве
+
+        // Act & Assert
+        assertThrows(BadCredentialsException.class, () -> refreshTokenService.rotate(token));
+        assertEquals(0, refreshTokenRepository.count());
+        assertThrows(BadCredentialsException.class, () -> refreshTokenService.rotate(rotated));
+    }
+
+    @Test
+    void rotate_ExpiredToken_ShouldThrowAndPurgeShouldDeleteIt() {
+        // Arrange
+        String token = refreshTokenService.issue(user);
+        RefreshToken stored = refreshTokenRepository.findAll().get(0);
+        stored.setExpiresAt(LocalDateTime.now().minusSeconds(1));
+        refreshTokenRepository.save(stored);
+
+        // Act & Assert
+        assertThrows(BadCredentialsException.class, () -> refreshTokenService.rotate(token));
+        refreshTokenService.purgeExpired();
+        assertEquals(0, refreshTokenRepository.count());
+    }
+
+    @Test
+    void revoke_ShouldInvalidateOnlyPresentedToken() {
+        // Arrange
+        String token = refreshTokenService.issue(user);
+        String otherDevice = refreshTokenService.issue(user);
+
+        // Act
+        refreshTokenService.revoke(token);
+        refreshTokenService.revoke("unknown-token");
+
+        // Assert
+        assertThrows(BadCredentialsException.class, () -> refreshTokenService.rotate(token));
+        assertDoesNotThrow(() -> refreshTokenService.rotate(otherDevice));
+    }
+
+    @Test
+    void revokeAll_ShouldInvalidateAllUserTokens() {
+        // Arrange
+        String token = refreshTokenService.issue(user);
+        refreshTokenService.issue(user);
+
+        // Act
+        int revoked = refreshTokenService.revokeAll(user.getId());
+
+        // Assert
+        assertEquals(2, revoked);
+        assertThrows(BadCredentialsException.class, () -> refreshTokenService.rotate(token));
+    }
+
+    @Test
+    void rotate_UnknownToken_ShouldThrow() {
+        // Act & Assert
+        assertThrows(BadCredentialsException.class, () -> refreshTokenService.rotate("unknown-token"));
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.bankcards.service;
+
+import org.springframework.test.context.TestPropertySource;
+
+// Тот же сценарий, что и в TransactionServiceConcurrencyTest, но конкурирующие переводы сначала ждут блокировки карт в JVM.
+// Мало полос, чтобы разные карты гарантированно делили полосы
+@TestPropertySource(properties = {
+        "transfer.card-locks.enabled=true",
+        "transfer.card-locks.stripes=3"
+})
+class StripedLockTransferConcurrencyTest extends TransactionServiceConcurrencyTest {
+}
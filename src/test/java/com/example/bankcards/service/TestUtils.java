@@ -3,10 +3,15 @@ package com.example.bankcards.service;
 import com.example.bankcards.entity.*;
 import com.example.bankcards.dto.request.AuthRequest;
 import com.example.bankcards.dto.response.AuthResponse;
+import com.example.bankcards.security.UserPrincipal;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -29,6 +34,12 @@ public class TestUtils {
 
 
 
+    // Authentication, которую JwtAuthenticationFilter кладёт в SecurityContext для этого пользователя
+    public static Authentication authenticationOf(User user) {
+        UserPrincipal principal = new UserPrincipal(user.getId(), user.getFirstName(), user.getLastName(), user.getRole(), user.getTokenVersion());
+        return new UsernamePasswordAuthenticationToken(principal, null, List.of(new SimpleGrantedAuthority(user.getRole().name())));
+    }
+
     public static BankCard createTestBankCard(Long id, String cardNumber, User owner) {
         BankCard card = new BankCard();
         card.setId(id);
@@ -0,0 +1,151 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.JwtConfig;
+import com.example.bankcards.entity.RevokedToken;
+import com.example.bankcards.repository.RevokedTokenRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Denylist отозванных токенов: проверка из памяти, восстановление из таблицы после рестарта, очистка истёкших записей
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@Import({TokenDenylistService.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TokenDenylistServiceTest {
+
+    @Autowired
+    private RevokedTokenRepository revokedTokenRepository;
+
+    @Autowired
+    private JwtConfig jwtConfig;
+
+    @Autowired
+    private TokenDenylistService tokenDenylistService;
+
+    @AfterEach
+    void tearDown() {
+        jwtConfig.getDenylist().setPersistent(true);
+        tokenDenylistService.purgeExpired();
+        revokedTokenRepository.deleteAll();
+    }
+
+    @Test
+    void revoke_ShouldDenyTokenAndPersistIt() {
+        // Act
+        tokenDenylistService.revoke("token-1", inSeconds(60));
+
+        // Assert
+        assertTrue(tokenDenylistService.isRevoked("token-1"));
+        assertFalse(tokenDenylistService.isRevoked("token-2"));
+        assertFalse(tokenDenylistService.isRevoked(null));
+        assertTrue(revokedTokenRepository.existsById("token-1"));
+    }
+
+    @Test
+    void revoke_AlreadyExpiredToken_ShouldNotBeStored() {
+        // Act
+        tokenDenylistService.revoke("expired-token", inSeconds(-1));
+
+        // Assert
+        assertFalse(tokenDenylistService.isRevoked("expired-token"));
+        assertFalse(revokedTokenRepository.existsById("expired-token"));
+    }
+
+    @Test
+    void loadRevokedTokens_AfterRestart_ShouldRestoreOnlyLiveEntries() {
+        // Arrange
+        tokenDenylistService.revoke("token-1", inSeconds(60));
+        revokedTokenRepository.save(new RevokedToken("token-2", LocalDateTime.now().minusSeconds(1)));
+        TokenDenylistService restarted = new TokenDenylistService(revokedTokenRepository, jwtConfig, new SimpleMeterRegistry());
+
+        // Act
+        restarted.loadRevokedTokens();
+
+        // Assert
+        assertTrue(restarted.isRevoked("token-1"));
+        assertFalse(restarted.isRevoked("token-2"));
+    }
+
+    @Test
+    void refresh_TokenRevokedByAnotherInstance_ShouldBeDeniedWithoutRestart() {
+        // Arrange - второй экземпляр уже прочитал таблицу при старте
+        TokenDenylistService otherInstance = new TokenDenylistService(revokedTokenRepository, jwtConfig, new SimpleMeterRegistry());
+        otherInstance.loadRevokedTokens();
+        tokenDenylistService.revoke("token-1", inSeconds(60));
+        assertFalse(otherInstance.isRevoked("token-1"));
+
+        // Act
+        otherInstance.refresh();
+
+        // Assert
+        assertTrue(otherInstance.isRevoked("token-1"));
+    }
+
+    @Test
+    void refresh_RevocationCommittedLate_ShouldBeReadWithinOverlap() {
+        // Arrange - отзыв с revoked_at раньше прошлого чтения (транзакция зафиксирована позже или часы отстают)
+        TokenDenylistService otherInstance = new TokenDenylistService(revokedTokenRepository, jwtConfig, new SimpleMeterRegistry());
+        otherInstance.loadRevokedTokens();
+        RevokedToken late = new RevokedToken("late-token", LocalDateTime.now().plusSeconds(60));
+        late.setRevokedAt(LocalDateTime.now().minusSeconds(10));
+        revokedTokenRepository.save(late);
+
+        // Act
+        otherInstance.refresh();
+
+        // Assert
+        assertTrue(otherInstance.isRevoked("late-token"));
+    }
+
+    @Test
+    void purgeExpired_ShouldDropEntriesOfExpiredTokensOnly() throws Exception {
+        // Arrange
+        tokenDenylistService.revoke("short-lived", inMillis(50));
+        tokenDenylistService.revoke("long-lived", inSeconds(60));
+        Thread.sleep(100);
+
+        // Act
+        tokenDenylistService.purgeExpired();
+
+        // Assert
+        assertFalse(tokenDenylistService.isRevoked("short-lived"));
+        assertTrue(tokenDenylistService.isRevoked("long-lived"));
+        assertFalse(revokedTokenRepository.existsById("short-lived"));
+        assertTrue(revokedTokenRepository.existsById("long-lived"));
+    }
+
+    @Test
+    void revoke_NotPersistent_ShouldKeepEntryOnlyInMemory() {
+        // Arrange
+        jwtConfig.getDenylist().setPersistent(false);
+
+        // Act
+        tokenDenylistService.revoke("memory-only-token", inSeconds(60));
+
+        // Assert
+        assertTrue(tokenDenylistService.isRevoked("memory-only-token"));
+        assertFalse(revokedTokenRepository.existsById("memory-only-token"));
+    }
+
+    private Date inSeconds(long seconds) {
+        return inMillis(seconds * 1000);
+    }
+
+    private Date inMillis(long millis) {
+        return new Date(System.currentTimeMillis() + millis);
+    }
+}
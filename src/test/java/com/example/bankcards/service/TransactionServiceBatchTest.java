@@ -0,0 +1,126 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.TransferConfig;
+import com.example.bankcards.dto.request.TransferRequest;
+import com.example.bankcards.dto.response.BatchTransferResponse;
+import com.example.bankcards.entity.BankCard;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.Transaction;
+import com.example.bankcards.entity.TransactionStatus;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.TransactionBatchRepository;
+import com.example.bankcards.repository.TransactionRepository;
+import com.example.bankcards.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Пакетный перевод на H2: проверяем, что JDBC-батчи реально пишут балансы и транзакции
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@Import({TransactionService.class, IdempotencyService.class, CardLockManager.class, LedgerService.class, TransactionBatchRepository.class, TransferConfig.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TransactionServiceBatchTest {
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private BankCardRepository bankCardRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private Long salaryCardId;
+    private Long savingsCardId;
+
+    @BeforeEach
+    void setUp() {
+        User owner = userRepository.save(new User("encoded-password", "John", "Doe", Role.ROLE_USER));
+        salaryCardId = bankCardRepository.save(card("4000000000000001", "1000.00", owner)).getId();
+        savingsCardId = bankCardRepository.save(card("4000000000000002", "0.00", owner)).getId();
+        SecurityContextHolder.clearContext(); // Unit-тесты сервисов оставляют в потоке мок SecurityContext
+        SecurityContextHolder.getContext().setAuthentication(TestUtils.authenticationOf(owner));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        transactionRepository.deleteAll();
+        bankCardRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void transferBatch_BestEffort_ShouldPersistBalancesAndTransactions() {
+        List<TransferRequest> transfers = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            transfers.add(transfer(salaryCardId, savingsCardId, "10.00"));
+        }
+
+        BatchTransferResponse response = transactionService.transferBatch(transfers, false);
+
+        // Денег хватает ровно на 100 переводов
+        assertEquals(100, response.getSucceeded());
+        assertEquals(20, response.getFailed());
+        assertEquals(0, new BigDecimal("0.00").compareTo(bankCardRepository.findById(salaryCardId).orElseThrow().getBalance()));
+        assertEquals(0, new BigDecimal("1000.00").compareTo(bankCardRepository.findById(savingsCardId).orElseThrow().getBalance()));
+
+        List<Transaction> saved = transactionRepository.findAll();
+        assertEquals(100, saved.size());
+        assertTrue(saved.stream().allMatch(Transaction::isSuccessful));
+        assertTrue(response.getResults().stream()
+                .filter(r -> r.getStatus() == TransactionStatus.SUCCESS)
+                .allMatch(r -> transactionRepository.existsById(r.getTransactionId())));
+    }
+
+    @Test
+    void transferBatch_AllOrNothing_ShouldLeaveBalancesUntouched() {
+        List<TransferRequest> transfers = List.of(
+                transfer(salaryCardId, savingsCardId, "500.00"),
+                transfer(salaryCardId, savingsCardId, "600.00"));
+
+        BatchTransferResponse response = transactionService.transferBatch(transfers, true);
+
+        assertEquals(0, response.getSucceeded());
+        assertEquals(0, new BigDecimal("1000.00").compareTo(bankCardRepository.findById(salaryCardId).orElseThrow().getBalance()));
+        assertEquals(0, transactionRepository.count());
+    }
+
+    private BankCard card(String number, String balance, User owner) {
+        BankCard card = new BankCard(number, "John Doe", LocalDate.now().plusYears(3), owner);
+        card.setStatus(CardStatus.ACTIVE);
+        card.setBalance(new BigDecimal(balance));
+        return card;
+    }
+
+    private TransferRequest transfer(Long fromCardId, Long toCardId, String amount) {
+        TransferRequest request = new TransferRequest();
+        request.setFromCardId(fromCardId);
+        request.setToCardId(toCardId);
+        request.setAmount(new BigDecimal(amount));
+        return request;
+    }
+}
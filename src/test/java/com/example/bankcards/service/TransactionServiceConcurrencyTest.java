@@ -0,0 +1,183 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.TransferConfig;
+import com.example.bankcards.entity.BankCard;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.exception.InsufficientFundsException;
+import com.example.bankcards.repository.BalanceSnapshotRepository;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.IdempotencyKeyRepository;
+import com.example.bankcards.repository.LedgerEntryRepository;
+import com.example.bankcards.repository.TransactionBatchRepository;
+import com.example.bankcards.repository.TransactionRepository;
+import com.example.bankcards.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Интеграционный тест на H2: много параллельных переводов между одними и теми же картами
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@Import({TransactionService.class, IdempotencyService.class, CardLockManager.class, LedgerService.class, TransactionBatchRepository.class, TransferConfig.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TransactionServiceConcurrencyTest {
+
+    private static final int CARDS = 4;
+    private static final int THREADS = 16;
+    private static final int TRANSFERS = 400;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private BankCardRepository bankCardRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Autowired
+    private BalanceSnapshotRepository balanceSnapshotRepository;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    private User owner;
+    private final List<Long> cardIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        owner = userRepository.save(new User("encoded-password", "John", "Doe", Role.ROLE_USER));
+        for (int i = 0; i < CARDS; i++) {
+            BankCard card = new BankCard(String.format("%016d", 4000000000000000L + i), "John Doe", LocalDate.now().plusYears(3), owner);
+            card.setStatus(CardStatus.ACTIVE);
+            card.setBalance(new BigDecimal("1000.00"));
+            cardIds.add(bankCardRepository.save(card).getId());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        idempotencyKeyRepository.deleteAll();
+        balanceSnapshotRepository.deleteAll();
+        ledgerEntryRepository.deleteAll();
+        transactionRepository.deleteAll();
+        bankCardRepository.deleteAll();
+        userRepository.deleteAll();
+        cardIds.clear();
+    }
+
+    @Test
+    void parallelTransfers_ShouldConserveTotalBalance() throws Exception {
+        BigDecimal totalBefore = totalBalance();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger succeeded = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < TRANSFERS; i++) {
+            Random random = new Random(i);
+            Long from = cardIds.get(random.nextInt(CARDS));
+            Long to = cardIds.get(random.nextInt(CARDS));
+            // На 4 картах случайные пары дают много встречных переводов A->B / B->A
+            BigDecimal amount = BigDecimal.valueOf(1 + random.nextInt(50));
+            futures.add(executor.submit(() -> {
+                start.await();
+                SecurityContextHolder.getContext().setAuthentication(TestUtils.authenticationOf(owner));
+                try {
+                    transactionService.transferBetweenMyCards(from, to, amount, "concurrency test");
+                    succeeded.incrementAndGet();
+                } catch (InsufficientFundsException ignored) {
+                    // Допустимый исход: на карте закончились деньги
+                } finally {
+                    SecurityContextHolder.clearContext();
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS); // Любое другое исключение (дедлок, таймаут блокировки) валит тест
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(0, totalBefore.compareTo(totalBalance()));
+        assertEquals(succeeded.get(), transactionRepository.count());
+        for (BankCard card : bankCardRepository.findAllById(cardIds)) {
+            assertTrue(ledgerService.balanceOf(card).signum() >= 0, "Balance went negative on card " + card.getId());
+        }
+    }
+
+    @Test
+    void parallelRetriesWithSameIdempotencyKey_ShouldDebitOnce() throws Exception {
+        Long from = cardIds.get(0);
+        Long to = cardIds.get(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> futures = new ArrayList<>();
+
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                SecurityContextHolder.getContext().setAuthentication(TestUtils.authenticationOf(owner));
+                try {
+                    return transactionService.transferBetweenMyCards(from, to, new BigDecimal("100.00"), "retry", "client-retry-1").getId();
+                } finally {
+                    SecurityContextHolder.clearContext();
+                }
+            }));
+        }
+
+        start.countDown();
+        Long firstId = futures.get(0).get(60, TimeUnit.SECONDS);
+        for (Future<Long> future : futures) {
+            assertEquals(firstId, future.get(60, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertEquals(1, transactionRepository.count());
+        assertEquals(0, new BigDecimal("900.00").compareTo(ledgerService.balanceOf(bankCardRepository.findById(from).orElseThrow())));
+    }
+
+    private BigDecimal totalBalance() {
+        return bankCardRepository.findAllById(cardIds).stream()
+                .map(ledgerService::balanceOf)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+}
@@ -1,30 +1,43 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.config.TransferConfig;
+import com.example.bankcards.dto.request.TransferRequest;
+import com.example.bankcards.dto.response.BatchTransferResponse;
 import com.example.bankcards.entity.*;
 import com.example.bankcards.exception.CardOperationException;
 import com.example.bankcards.exception.InsufficientFundsException;
 import com.example.bankcards.exception.ResourceNotFoundException;
 import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.TransactionBatchRepository;
 import com.example.bankcards.repository.TransactionRepository;
-import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.UserPrincipal;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -35,10 +48,16 @@ class TransactionServiceTest {
     private TransactionRepository transactionRepository;
 
     @Mock
-    private BankCardRepository bankCardRepository;
+    private TransactionBatchRepository transactionBatchRepository;
+
+    @Mock
+    private IdempotencyService idempotencyService;
 
     @Mock
-    private UserRepository userRepository;
+    private LedgerService ledgerService;
+
+    @Mock
+    private BankCardRepository bankCardRepository;
 
     @Mock
     private SecurityContext securityContext;
@@ -46,6 +65,18 @@ class TransactionServiceTest {
     @Mock
     private Authentication authentication;
 
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+
+    @Spy
+    private TransferConfig transferConfig = new TransferConfig();
+
+    @Spy
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private CardLockManager cardLockManager = new CardLockManager(new TransferConfig(), new SimpleMeterRegistry());
+
     @InjectMocks
     private TransactionService transactionService;
 
@@ -85,13 +116,22 @@ class TransactionServiceTest {
         toCard.activateCard();
 
         SecurityContextHolder.setContext(securityContext);
+        // Вне режима LEDGER баланс берётся из самой карты
+        lenient().when(ledgerService.balanceOf(any(BankCard.class))).thenAnswer(invocation -> ((BankCard) invocation.getArgument(0)).getBalance());
+    }
+
+    private TransferRequest transferRequest(Long fromCardId, Long toCardId, String amount) {
+        TransferRequest request = new TransferRequest();
+        request.setFromCardId(fromCardId);
+        request.setToCardId(toCardId);
+        request.setAmount(new BigDecimal(amount));
+        return request;
     }
 
     private void mockAuthentication(User user) {
-        when(securityContext.getAuthentication()).thenReturn(authentication);
-        when(authentication.getName()).thenReturn(user.getFirstName() + " " + user.getLastName());
-        when(userRepository.findByFirstNameAndLastName(user.getFirstName(), user.getLastName()))
-                .thenReturn(Optional.of(user));
+        // Права администратора проверяет @PreAuthorize, поэтому часть методов вообще не обращается к SecurityContext
+        lenient().when(securityContext.getAuthentication()).thenReturn(authentication);
+        lenient().when(authentication.getPrincipal()).thenReturn(new UserPrincipal(user.getId(), user.getFirstName(), user.getLastName(), user.getRole(), user.getTokenVersion()));
     }
 
     @Test
@@ -100,8 +140,8 @@ class TransactionServiceTest {
         mockAuthentication(testUser);
 
         // Используем правильные ID: карта ID и пользователь ID (2L)
-        when(bankCardRepository.findByIdAndOwnerId(eq(1L), eq(2L))).thenReturn(Optional.of(fromCard));
-        when(bankCardRepository.findByIdAndOwnerId(eq(2L), eq(2L))).thenReturn(Optional.of(toCard));
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(1L), eq(2L))).thenReturn(Optional.of(fromCard));
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(2L), eq(2L))).thenReturn(Optional.of(toCard));
 
         when(bankCardRepository.save(any(BankCard.class))).thenAnswer(invocation -> invocation.getArgument(0));
         when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> {
@@ -121,6 +161,7 @@ class TransactionServiceTest {
         assertEquals(fromCard, result.getFromCard());
         assertEquals(toCard, result.getToCard());
         assertEquals("Test transfer", result.getDescription());
+        assertEquals(TransactionStatus.SUCCESS, result.getStatus());
 
         // Проверяем что балансы изменились
         assertEquals(new BigDecimal("900.00"), fromCard.getBalance());
@@ -135,8 +176,8 @@ class TransactionServiceTest {
         // Arrange
         mockAuthentication(testUser);
 
-        when(bankCardRepository.findByIdAndOwnerId(eq(1L), eq(2L))).thenReturn(Optional.of(fromCard));
-        when(bankCardRepository.findByIdAndOwnerId(eq(2L), eq(2L))).thenReturn(Optional.of(toCard));
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(1L), eq(2L))).thenReturn(Optional.of(fromCard));
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(2L), eq(2L))).thenReturn(Optional.of(toCard));
 
         BigDecimal transferAmount = new BigDecimal("1500.00"); // Больше чем на карте
 
@@ -152,8 +193,8 @@ class TransactionServiceTest {
 
         fromCard.blockCard("Test block"); // Блокируем исходную карту
 
-        when(bankCardRepository.findByIdAndOwnerId(eq(1L), eq(2L))).thenReturn(Optional.of(fromCard));
-        when(bankCardRepository.findByIdAndOwnerId(eq(2L), eq(2L))).thenReturn(Optional.of(toCard));
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(1L), eq(2L))).thenReturn(Optional.of(fromCard));
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(2L), eq(2L))).thenReturn(Optional.of(toCard));
 
         // Act & Assert
         assertThrows(CardOperationException.class, () ->
@@ -167,8 +208,8 @@ class TransactionServiceTest {
 
         toCard.blockCard("Test block"); // Блокируем целевую карту
 
-        when(bankCardRepository.findByIdAndOwnerId(eq(1L), eq(2L))).thenReturn(Optional.of(fromCard));
-        when(bankCardRepository.findByIdAndOwnerId(eq(2L), eq(2L))).thenReturn(Optional.of(toCard));
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(1L), eq(2L))).thenReturn(Optional.of(fromCard));
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(2L), eq(2L))).thenReturn(Optional.of(toCard));
 
         // Act & Assert
         assertThrows(CardOperationException.class, () ->
@@ -180,7 +221,7 @@ class TransactionServiceTest {
         // Arrange
         mockAuthentication(testUser);
 
-        when(bankCardRepository.findByIdAndOwnerId(eq(1L), eq(2L))).thenReturn(Optional.empty());
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(1L), eq(2L))).thenReturn(Optional.empty());
 
         // Act & Assert
         assertThrows(AccessDeniedException.class, () ->
@@ -192,8 +233,8 @@ class TransactionServiceTest {
         // Arrange
         mockAuthentication(testUser);
 
-        when(bankCardRepository.findByIdAndOwnerId(eq(1L), eq(2L))).thenReturn(Optional.of(fromCard));
-        when(bankCardRepository.findByIdAndOwnerId(eq(2L), eq(2L))).thenReturn(Optional.empty());
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(1L), eq(2L))).thenReturn(Optional.of(fromCard));
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(2L), eq(2L))).thenReturn(Optional.empty());
 
         // Act & Assert
         assertThrows(AccessDeniedException.class, () ->
@@ -205,8 +246,8 @@ class TransactionServiceTest {
         // Arrange
         mockAuthentication(testUser);
 
-        when(bankCardRepository.findByIdAndOwnerId(eq(1L), eq(2L))).thenReturn(Optional.of(fromCard));
-        when(bankCardRepository.findByIdAndOwnerId(eq(2L), eq(2L))).thenReturn(Optional.of(toCard));
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(1L), eq(2L))).thenReturn(Optional.of(fromCard));
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(2L), eq(2L))).thenReturn(Optional.of(toCard));
 
         when(bankCardRepository.save(any(BankCard.class))).thenAnswer(invocation -> invocation.getArgument(0));
         when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> {
@@ -273,8 +314,8 @@ class TransactionServiceTest {
         // Arrange
         mockAuthentication(testUser);
 
-        when(bankCardRepository.findByIdAndOwnerId(eq(1L), eq(2L))).thenReturn(Optional.of(fromCard));
-        when(bankCardRepository.findByIdAndOwnerId(eq(2L), eq(2L))).thenReturn(Optional.of(toCard));
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(1L), eq(2L))).thenReturn(Optional.of(fromCard));
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(2L), eq(2L))).thenReturn(Optional.of(toCard));
 
         // Act & Assert
         assertThrows(CardOperationException.class, () ->
@@ -286,11 +327,380 @@ class TransactionServiceTest {
         // Arrange
         mockAuthentication(testUser);
 
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(1L), eq(2L))).thenReturn(Optional.of(fromCard));
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(2L), eq(2L))).thenReturn(Optional.of(toCard));
+
+        // Act & Assert
+        assertThrows(CardOperationException.class, () ->
+                transactionService.transferBetweenMyCards(1L, 2L, new BigDecimal("-100.00"), "Test transfer"));
+    }
+
+    @Test
+    void transferBetweenMyCards_OptimisticMode_ShouldRetryOnVersionConflict() {
+        // Arrange
+        mockAuthentication(testUser);
+        transferConfig.setMode(TransferConfig.Mode.OPTIMISTIC);
+        transferConfig.setInitialBackoffMs(0);
+
+        when(bankCardRepository.findByIdAndOwnerId(eq(1L), eq(2L))).thenReturn(Optional.of(fromCard));
+        when(bankCardRepository.findByIdAndOwnerId(eq(2L), eq(2L))).thenReturn(Optional.of(toCard));
+        when(bankCardRepository.save(any(BankCard.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(transactionRepository.save(any(Transaction.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(BankCard.class, 1L))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        Transaction result = transactionService.transferBetweenMyCards(1L, 2L, new BigDecimal("100.00"), "Test transfer");
+
+        // Assert
+        assertNotNull(result);
+        verify(bankCardRepository, never()).findByIdAndOwnerIdForUpdate(anyLong(), anyLong());
+        verify(transactionRepository, times(2)).save(any(Transaction.class));
+        assertEquals(1.0, meterRegistry.counter("bank.transfer.optimistic.retries").count());
+    }
+
+    @Test
+    void transferBetweenMyCards_OptimisticMode_RetriesExhausted_ShouldThrowException() {
+        // Arrange
+        mockAuthentication(testUser);
+        transferConfig.setMode(TransferConfig.Mode.OPTIMISTIC);
+        transferConfig.setInitialBackoffMs(0);
+        transferConfig.setMaxAttempts(3);
+
         when(bankCardRepository.findByIdAndOwnerId(eq(1L), eq(2L))).thenReturn(Optional.of(fromCard));
         when(bankCardRepository.findByIdAndOwnerId(eq(2L), eq(2L))).thenReturn(Optional.of(toCard));
+        when(bankCardRepository.save(any(BankCard.class))).thenThrow(new ObjectOptimisticLockingFailureException(BankCard.class, 1L));
+
+        // Act & Assert
+        assertThrows(ObjectOptimisticLockingFailureException.class, () ->
+                transactionService.transferBetweenMyCards(1L, 2L, new BigDecimal("100.00"), "Test transfer"));
+        verify(bankCardRepository, times(3)).save(any(BankCard.class));
+        assertEquals(2.0, meterRegistry.counter("bank.transfer.optimistic.retries").count());
+        assertEquals(1.0, meterRegistry.counter("bank.transfer.optimistic.exhausted").count());
+    }
+
+    @Test
+    void transferBetweenMyCards_ConditionalUpdateMode_ShouldNotLoadCards() {
+        // Arrange
+        mockAuthentication(testUser);
+        transferConfig.setMode(TransferConfig.Mode.CONDITIONAL_UPDATE);
+        BigDecimal transferAmount = new BigDecimal("100.00");
+
+        when(bankCardRepository.debitIfSufficient(1L, 2L, transferAmount)).thenReturn(1);
+        when(bankCardRepository.creditIfActive(2L, 2L, transferAmount)).thenReturn(1);
+        when(bankCardRepository.getReferenceById(1L)).thenReturn(fromCard);
+        when(bankCardRepository.getReferenceById(2L)).thenReturn(toCard);
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        Transaction result = transactionService.transferBetweenMyCards(1L, 2L, transferAmount, "Test transfer");
+
+        // Assert
+        assertEquals(transferAmount, result.getAmount());
+        assertEquals(fromCard, result.getFromCard());
+        assertEquals(toCard, result.getToCard());
+        verify(bankCardRepository, never()).findByIdAndOwnerId(anyLong(), anyLong());
+        verify(bankCardRepository, never()).save(any(BankCard.class));
+    }
+
+    @Test
+    void transferBetweenMyCards_ConditionalUpdateMode_InsufficientFunds_ShouldThrowException() {
+        // Arrange
+        mockAuthentication(testUser);
+        transferConfig.setMode(TransferConfig.Mode.CONDITIONAL_UPDATE);
+        BigDecimal transferAmount = new BigDecimal("1500.00");
+
+        when(bankCardRepository.debitIfSufficient(1L, 2L, transferAmount)).thenReturn(0);
+        when(bankCardRepository.findByIdAndOwnerId(eq(1L), eq(2L))).thenReturn(Optional.of(fromCard));
+
+        // Act & Assert
+        assertThrows(InsufficientFundsException.class, () ->
+                transactionService.transferBetweenMyCards(1L, 2L, transferAmount, "Test transfer"));
+        verify(bankCardRepository, never()).creditIfActive(anyLong(), anyLong(), any(BigDecimal.class));
+        verify(transactionRepository, never()).save(any(Transaction.class));
+    }
+
+    @Test
+    void transferBetweenMyCards_ConditionalUpdateMode_DestinationNotActive_ShouldThrowException() {
+        // Arrange
+        mockAuthentication(testUser);
+        transferConfig.setMode(TransferConfig.Mode.CONDITIONAL_UPDATE);
+        BigDecimal transferAmount = new BigDecimal("100.00");
+        toCard.blockCard("Test block");
+
+        // Зачисление идёт первым, так как id карты получателя меньше
+        when(bankCardRepository.creditIfActive(1L, 2L, transferAmount)).thenReturn(0);
+        when(bankCardRepository.findByIdAndOwnerId(eq(1L), eq(2L))).thenReturn(Optional.of(toCard));
 
         // Act & Assert
         assertThrows(CardOperationException.class, () ->
-                transactionService.transferBetweenMyCards(1L, 2L, new BigDecimal("-100.00"), "Test transfer"));
+                transactionService.transferBetweenMyCards(2L, 1L, transferAmount, "Test transfer"));
+        verify(bankCardRepository, never()).debitIfSufficient(anyLong(), anyLong(), any(BigDecimal.class));
+    }
+
+    @Test
+    void transferBetweenMyCards_LedgerMode_ShouldAppendEntriesWithoutUpdatingCards() {
+        // Arrange
+        mockAuthentication(testUser);
+        transferConfig.setMode(TransferConfig.Mode.LEDGER);
+        BigDecimal transferAmount = new BigDecimal("100.00");
+
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(1L, 2L)).thenReturn(Optional.of(fromCard));
+        when(bankCardRepository.findByIdAndOwnerIdForShare(2L, 2L)).thenReturn(Optional.of(toCard));
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        Transaction result = transactionService.transferBetweenMyCards(1L, 2L, transferAmount, "Test transfer");
+
+        // Assert
+        verify(ledgerService).record(result);
+        verify(bankCardRepository, never()).save(any(BankCard.class));
+        // Карта зачисления берётся разделяемой блокировкой, а не FOR UPDATE
+        verify(bankCardRepository, never()).findByIdAndOwnerIdForUpdate(eq(2L), anyLong());
+        verify(bankCardRepository).findByIdAndOwnerIdForShare(2L, 2L);
+        assertEquals(0, BigDecimal.valueOf(1000.00).compareTo(fromCard.getBalance()));
+    }
+
+    @Test
+    void transferBetweenMyCards_LedgerMode_InsufficientFunds_ShouldThrowException() {
+        // Arrange
+        mockAuthentication(testUser);
+        transferConfig.setMode(TransferConfig.Mode.LEDGER);
+
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(1L, 2L)).thenReturn(Optional.of(fromCard));
+        when(bankCardRepository.findByIdAndOwnerIdForShare(2L, 2L)).thenReturn(Optional.of(toCard));
+        // Баланс по журналу меньше, чем значение в колонке карты
+        when(ledgerService.balanceOf(fromCard)).thenReturn(new BigDecimal("50.00"));
+
+        // Act & Assert
+        InsufficientFundsException exception = assertThrows(InsufficientFundsException.class, () ->
+                transactionService.transferBetweenMyCards(1L, 2L, new BigDecimal("100.00"), "Test transfer"));
+        assertTrue(exception.getMessage().endsWith("50.00"));
+        verify(transactionRepository, never()).save(any(Transaction.class));
+        verify(ledgerService, never()).record(any(Transaction.class));
+    }
+
+    @Test
+    void transferBatch_LedgerMode_ShouldInsertEntriesInsteadOfBalances() {
+        // Arrange
+        mockAuthentication(testUser);
+        when(ledgerService.isEnabled()).thenReturn(true);
+        when(bankCardRepository.findAllByIdInAndOwnerIdForUpdate(any(), eq(2L))).thenReturn(List.of(fromCard, toCard));
+        when(transactionBatchRepository.insertTransactions(any())).thenReturn(List.of(10L));
+        List<LedgerEntry> entries = List.of(new LedgerEntry(1L, 10L, LedgerEntryType.DEBIT, new BigDecimal("100.00")),
+                new LedgerEntry(2L, 10L, LedgerEntryType.CREDIT, new BigDecimal("100.00")));
+        when(ledgerService.entriesOf(any())).thenReturn(entries);
+
+        // Act
+        BatchTransferResponse response = transactionService.transferBatch(List.of(transferRequest(1L, 2L, "100.00")), true);
+
+        // Assert
+        assertEquals(1, response.getSucceeded());
+        verify(transactionBatchRepository).insertLedgerEntries(entries);
+        verify(transactionBatchRepository, never()).updateBalances(any());
+    }
+
+    @Test
+    void createPendingTransfer_ShouldSavePendingTransactionWithoutMovingMoney() {
+        // Arrange
+        mockAuthentication(testUser);
+        when(bankCardRepository.findByIdAndOwnerId(1L, 2L)).thenReturn(Optional.of(fromCard));
+        when(bankCardRepository.findByIdAndOwnerId(2L, 2L)).thenReturn(Optional.of(toCard));
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        Transaction result = transactionService.createPendingTransfer(1L, 2L, new BigDecimal("100.00"), "Async", null);
+
+        // Assert
+        assertTrue(result.isPending());
+        assertEquals(fromCard, result.getFromCard());
+        assertEquals(toCard, result.getToCard());
+        assertEquals(0, BigDecimal.valueOf(1000.00).compareTo(fromCard.getBalance()));
+        verify(bankCardRepository, never()).save(any(BankCard.class));
+    }
+
+    @Test
+    void completePendingTransfer_ShouldMoveMoneyAndMarkSuccess() {
+        // Arrange
+        Transaction pending = new Transaction();
+        pending.setId(5L);
+        pending.setAmount(new BigDecimal("100.00"));
+        pending.setFromCard(fromCard);
+        pending.setToCard(toCard);
+
+        when(transactionRepository.findById(5L)).thenReturn(Optional.of(pending));
+        when(transactionRepository.findOwnerIdById(5L)).thenReturn(Optional.of(2L));
+        when(transactionRepository.findByIdForUpdate(5L)).thenReturn(Optional.of(pending));
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(1L, 2L)).thenReturn(Optional.of(fromCard));
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(2L, 2L)).thenReturn(Optional.of(toCard));
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        Transaction result = transactionService.completePendingTransfer(5L);
+
+        // Assert
+        assertSame(pending, result);
+        assertEquals(TransactionStatus.SUCCESS, result.getStatus());
+        assertEquals(new BigDecimal("900.00"), fromCard.getBalance());
+        assertEquals(new BigDecimal("600.00"), toCard.getBalance());
+    }
+
+    @Test
+    void completePendingTransfer_AlreadyProcessed_ShouldNotMoveMoney() {
+        // Arrange
+        Transaction processed = new Transaction();
+        processed.setId(5L);
+        processed.setStatus(TransactionStatus.FAILED);
+        when(transactionRepository.findById(5L)).thenReturn(Optional.of(processed));
+
+        // Act
+        Transaction result = transactionService.completePendingTransfer(5L);
+
+        // Assert
+        assertSame(processed, result);
+        verify(transactionRepository, never()).findByIdForUpdate(anyLong());
+        verifyNoInteractions(bankCardRepository);
+    }
+
+    @Test
+    void failPendingTransfer_ShouldTruncateLongReason() {
+        // Act
+        transactionService.failPendingTransfer(5L, "x".repeat(300));
+
+        // Assert
+        verify(transactionRepository).markFailed(5L, "x".repeat(255));
+    }
+
+    @Test
+    void getMyTransaction_OtherUsersTransaction_ShouldThrowAccessDenied() {
+        // Arrange
+        mockAuthentication(testUser);
+        User otherUser = new User();
+        otherUser.setId(3L);
+        fromCard.setOwner(otherUser);
+        toCard.setOwner(otherUser);
+        Transaction transaction = new Transaction();
+        transaction.setFromCard(fromCard);
+        transaction.setToCard(toCard);
+        when(transactionRepository.findById(5L)).thenReturn(Optional.of(transaction));
+
+        // Act & Assert
+        assertThrows(AccessDeniedException.class, () -> transactionService.getMyTransaction(5L));
+    }
+
+    @Test
+    void transferBatch_BestEffort_ShouldApplyValidTransfersAndReportFailures() {
+        // Arrange
+        mockAuthentication(testUser);
+        when(bankCardRepository.findAllByIdInAndOwnerIdForUpdate(any(), eq(2L))).thenReturn(List.of(fromCard, toCard));
+        when(transactionBatchRepository.insertTransactions(any())).thenReturn(List.of(10L, 11L));
+
+        List<TransferRequest> transfers = List.of(
+                transferRequest(1L, 2L, "600.00"),
+                transferRequest(1L, 2L, "600.00"), // Не хватает денег после первого перевода
+                transferRequest(2L, 1L, "100.00"),
+                transferRequest(1L, 3L, "10.00"));  // Чужая карта
+
+        // Act
+        BatchTransferResponse response = transactionService.transferBatch(transfers, false);
+
+        // Assert
+        assertEquals(2, response.getSucceeded());
+        assertEquals(2, response.getFailed());
+        assertEquals(TransactionStatus.SUCCESS, response.getResults().get(0).getStatus());
+        assertEquals(10L, response.getResults().get(0).getTransactionId());
+        assertEquals(TransactionStatus.FAILED, response.getResults().get(1).getStatus());
+        assertTrue(response.getResults().get(1).getError().startsWith("Insufficient funds"));
+        assertEquals(11L, response.getResults().get(2).getTransactionId());
+        assertEquals("Destination card not found or access denied", response.getResults().get(3).getError());
+
+        verify(transactionBatchRepository).updateBalances(Map.of(1L, new BigDecimal("500.00"), 2L, new BigDecimal("1000.00")));
+        verify(bankCardRepository, never()).save(any(BankCard.class));
+    }
+
+    @Test
+    void transferBatch_AllOrNothing_WithFailure_ShouldWriteNothing() {
+        // Arrange
+        mockAuthentication(testUser);
+        when(bankCardRepository.findAllByIdInAndOwnerIdForUpdate(any(), eq(2L))).thenReturn(List.of(fromCard, toCard));
+
+        List<TransferRequest> transfers = List.of(
+                transferRequest(1L, 2L, "100.00"),
+                transferRequest(2L, 1L, "5000.00"));
+
+        // Act
+        BatchTransferResponse response = transactionService.transferBatch(transfers, true);
+
+        // Assert
+        assertEquals(0, response.getSucceeded());
+        assertEquals(2, response.getFailed());
+        assertTrue(response.getResults().stream().allMatch(r -> r.getStatus() == TransactionStatus.FAILED));
+        verifyNoInteractions(transactionBatchRepository);
+    }
+
+    @Test
+    void transferBetweenMyCards_RepeatedIdempotencyKey_ShouldReturnOriginalTransaction() {
+        // Arrange
+        mockAuthentication(testUser);
+        Transaction original = new Transaction();
+        original.setId(42L);
+
+        when(idempotencyService.fingerprint(1L, 2L, new BigDecimal("100.00"))).thenReturn("1:2:100");
+        when(idempotencyService.findTransactionId(2L, "key-1", "1:2:100")).thenReturn(42L);
+        when(transactionRepository.findById(42L)).thenReturn(Optional.of(original));
+
+        // Act
+        Transaction result = transactionService.transferBetweenMyCards(1L, 2L, new BigDecimal("100.00"), "Test transfer", "key-1");
+
+        // Assert
+        assertSame(original, result);
+        verify(bankCardRepository, never()).findByIdAndOwnerIdForUpdate(anyLong(), anyLong());
+        verify(transactionRepository, never()).save(any(Transaction.class));
+    }
+
+    @Test
+    void transferBetweenMyCards_NewIdempotencyKey_ShouldStoreKeyWithTransaction() {
+        // Arrange
+        mockAuthentication(testUser);
+        when(idempotencyService.fingerprint(1L, 2L, new BigDecimal("100.00"))).thenReturn("1:2:100");
+        when(idempotencyService.findTransactionId(2L, "key-2", "1:2:100")).thenReturn(null);
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(1L), eq(2L))).thenReturn(Optional.of(fromCard));
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(2L), eq(2L))).thenReturn(Optional.of(toCard));
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> {
+            Transaction transaction = invocation.getArgument(0);
+            transaction.setId(43L);
+            return transaction;
+        });
+
+        // Act
+        transactionService.transferBetweenMyCards(1L, 2L, new BigDecimal("100.00"), "Test transfer", "key-2");
+
+        // Assert
+        verify(idempotencyService).save(2L, "key-2", "1:2:100", 43L);
+        verify(idempotencyService).cache(2L, "key-2", "1:2:100", 43L);
+    }
+
+    @Test
+    void transferBetweenMyCards_ConcurrentDuplicateKey_ShouldReturnWinnerTransaction() {
+        // Arrange
+        mockAuthentication(testUser);
+        Transaction winner = new Transaction();
+        winner.setId(44L);
+
+        when(idempotencyService.fingerprint(1L, 2L, new BigDecimal("100.00"))).thenReturn("1:2:100");
+        when(idempotencyService.findTransactionId(2L, "key-3", "1:2:100")).thenReturn(null, 44L);
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(1L), eq(2L))).thenReturn(Optional.of(fromCard));
+        when(bankCardRepository.findByIdAndOwnerIdForUpdate(eq(2L), eq(2L))).thenReturn(Optional.of(toCard));
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        doThrow(new DataIntegrityViolationException("uk_idempotency_keys_user_key"))
+                .when(idempotencyService).save(eq(2L), eq("key-3"), eq("1:2:100"), any());
+        when(transactionRepository.findById(44L)).thenReturn(Optional.of(winner));
+
+        // Act
+        Transaction result = transactionService.transferBetweenMyCards(1L, 2L, new BigDecimal("100.00"), "Test transfer", "key-3");
+
+        // Assert
+        assertSame(winner, result);
+        verify(idempotencyService, never()).cache(anyLong(), anyString(), anyString(), any());
     }
-}
\ No newline at end of file
+}
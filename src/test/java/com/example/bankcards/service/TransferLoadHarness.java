@@ -0,0 +1,146 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.User;
+import com.example.bankcards.exception.InsufficientFundsException;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Нагрузочный прогон переводов: N потоков, M карт, доля переводов через "горячую" карту.
+// Параметры задаются системными свойствами, например:
+// mvn test -Dtest=TransferLoadTest -Dload.threads=32 -Dload.cards=100 -Dload.transfers=20000 -Dload.hot-card-share=0.8 -Dtransfer.mode=LEDGER
+class TransferLoadHarness {
+
+    static class Settings {
+        int threads = Integer.getInteger("load.threads", 16);
+        int cards = Integer.getInteger("load.cards", 20);
+        int transfers = Integer.getInteger("load.transfers", 500);
+        // Доля переводов, в которых одна из сторон - первая карта
+        double hotCardShare = Double.parseDouble(System.getProperty("load.hot-card-share", "0.5"));
+        long seed = Long.getLong("load.seed", 42L);
+    }
+
+    static class Report {
+        int succeeded;
+        int rejected;
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        long elapsedNanos;
+        long[] latenciesNanos;
+
+        double throughputPerSecond() {
+            return (succeeded + rejected) / (elapsedNanos / 1_000_000_000.0);
+        }
+
+        double percentileMillis(double percentile) {
+            if (latenciesNanos.length == 0) return 0;
+            int index = (int) Math.ceil(percentile / 100.0 * latenciesNanos.length) - 1;
+            return latenciesNanos[Math.max(0, Math.min(index, latenciesNanos.length - 1))] / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("succeeded=%d rejected=%d errors=%d throughput=%.1f/s latency p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms",
+                    succeeded, rejected, errors.size(), throughputPerSecond(),
+                    percentileMillis(50), percentileMillis(95), percentileMillis(99), percentileMillis(100));
+        }
+    }
+
+    private final TransactionService transactionService;
+    private final Settings settings;
+
+    TransferLoadHarness(TransactionService transactionService, Settings settings) {
+        this.transactionService = transactionService;
+        this.settings = settings;
+    }
+
+    // Выполнить переводы между картами cardIds от имени user. InsufficientFundsException - допустимый исход,
+    // любые другие исключения попадают в Report.errors
+    Report run(List<Long> cardIds, User user) throws InterruptedException {
+        Random random = new Random(settings.seed);
+        List<Runnable> transfers = new ArrayList<>(settings.transfers);
+        long[] latencies = new long[settings.transfers];
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        Report report = new Report();
+
+        for (int i = 0; i < settings.transfers; i++) {
+            Long[] pair = nextPair(random, cardIds);
+            BigDecimal amount = BigDecimal.valueOf(1 + random.nextInt(50));
+            int index = i;
+            transfers.add(() -> {
+                long start = System.nanoTime();
+                try {
+                    transactionService.transferBetweenMyCards(pair[0], pair[1], amount, "load test");
+                    succeeded.incrementAndGet();
+                } catch (InsufficientFundsException e) {
+                    rejected.incrementAndGet();
+                } catch (RuntimeException e) {
+                    report.errors.add(e);
+                } finally {
+                    latencies[index] = System.nanoTime() - start;
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(settings.threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>(transfers.size());
+        for (Runnable transfer : transfers) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                SecurityContextHolder.getContext().setAuthentication(TestUtils.authenticationOf(user));
+                try {
+                    transfer.run();
+                } finally {
+                    SecurityContextHolder.clearContext();
+                }
+                return null;
+            }));
+        }
+
+        long startedAt = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            try {
+                future.get(5, TimeUnit.MINUTES);
+            } catch (Exception e) {
+                report.errors.add(e);
+            }
+        }
+        report.elapsedNanos = System.nanoTime() - startedAt;
+        executor.shutdown();
+
+        report.succeeded = succeeded.get();
+        report.rejected = rejected.get();
+        Arrays.sort(latencies);
+        report.latenciesNanos = latencies;
+        return report;
+    }
+
+    // Пара различных карт. С вероятностью hotCardShare одна из сторон - горячая карта (первая в списке)
+    private Long[] nextPair(Random random, List<Long> cardIds) {
+        int from;
+        int to;
+        if (random.nextDouble() < settings.hotCardShare) {
+            int other = 1 + random.nextInt(cardIds.size() - 1);
+            boolean hotIsSource = random.nextBoolean();
+            from = hotIsSource ? 0 : other;
+            to = hotIsSource ? other : 0;
+        } else {
+            from = random.nextInt(cardIds.size());
+            to = (from + 1 + random.nextInt(cardIds.size() - 1)) % cardIds.size();
+        }
+        return new Long[]{cardIds.get(from), cardIds.get(to)};
+    }
+}
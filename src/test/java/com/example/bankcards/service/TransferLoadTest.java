@@ -0,0 +1,113 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.TransferConfig;
+import com.example.bankcards.entity.BankCard;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.BalanceSnapshotRepository;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.IdempotencyKeyRepository;
+import com.example.bankcards.repository.LedgerEntryRepository;
+import com.example.bankcards.repository.TransactionBatchRepository;
+import com.example.bankcards.repository.TransactionRepository;
+import com.example.bankcards.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Нагрузочный прогон на H2 в режиме PostgreSQL с проверкой инвариантов: деньги не появляются и не пропадают,
+// баланс не уходит в минус. Режим перевода выбирается свойством -Dtransfer.mode
+@Slf4j
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@Import({TransactionService.class, IdempotencyService.class, CardLockManager.class, LedgerService.class, TransactionBatchRepository.class, TransferConfig.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TransferLoadTest {
+
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000.00");
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private TransferConfig transferConfig;
+
+    @Autowired
+    private BankCardRepository bankCardRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Autowired
+    private BalanceSnapshotRepository balanceSnapshotRepository;
+
+    @Autowired
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @AfterEach
+    void tearDown() {
+        idempotencyKeyRepository.deleteAll();
+        balanceSnapshotRepository.deleteAll();
+        ledgerEntryRepository.deleteAll();
+        transactionRepository.deleteAll();
+        bankCardRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void skewedLoad_ShouldConserveMoneyAndKeepBalancesNonNegative() throws Exception {
+        TransferLoadHarness.Settings settings = new TransferLoadHarness.Settings();
+        SecurityContextHolder.clearContext(); // Unit-тесты сервисов оставляют в потоке мок SecurityContext
+        User owner = userRepository.save(new User("encoded-password", "Load", "Tester", Role.ROLE_USER));
+        List<Long> cardIds = new ArrayList<>();
+        for (int i = 0; i < settings.cards; i++) {
+            BankCard card = new BankCard(String.format("%016d", 5000000000000000L + i), "Load Tester", LocalDate.now().plusYears(3), owner);
+            card.setStatus(CardStatus.ACTIVE);
+            card.setBalance(INITIAL_BALANCE);
+            cardIds.add(bankCardRepository.save(card).getId());
+        }
+
+        TransferLoadHarness.Report report = new TransferLoadHarness(transactionService, settings).run(cardIds, owner);
+        log.info("Transfer load [mode={}, threads={}, cards={}, transfers={}, hotCardShare={}]: {}", transferConfig.getMode(),
+                settings.threads, settings.cards, settings.transfers, settings.hotCardShare, report);
+
+        assertTrue(report.errors.isEmpty(), () -> "Unexpected errors: " + report.errors);
+        assertEquals(settings.transfers, report.succeeded + report.rejected);
+        assertEquals(report.succeeded, transactionRepository.count());
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (BankCard card : bankCardRepository.findAllById(cardIds)) {
+            BigDecimal balance = ledgerService.balanceOf(card);
+            assertTrue(balance.signum() >= 0, "Balance went negative on card " + card.getId() + ": " + balance);
+            total = total.add(balance);
+        }
+        assertEquals(0, INITIAL_BALANCE.multiply(BigDecimal.valueOf(settings.cards)).compareTo(total), "Total balance changed");
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.UserDetailsCacheConfig;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.BankUserDetails;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserDetailsServiceImplTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private UserNameFilter userNameFilter;
+
+    private UserDetailsCacheConfig cacheConfig;
+    private SimpleMeterRegistry meterRegistry;
+    private UserDetailsServiceImpl userDetailsService;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        cacheConfig = new UserDetailsCacheConfig();
+        meterRegistry = new SimpleMeterRegistry();
+        userDetailsService = new UserDetailsServiceImpl(userRepository, cacheConfig, userNameFilter, meterRegistry);
+        lenient().when(userNameFilter.mightExist("John", "Doe")).thenReturn(true);
+
+        user = new User("encoded-password", "John", "Doe", Role.ROLE_ADMIN);
+        user.setId(7L);
+        user.setTokenVersion(2);
+    }
+
+    @Test
+    void loadUserByUsername_ShouldReturnUserDetailsWithIdAndRole() {
+        // Arrange
+        when(userRepository.findByFirstNameAndLastName("John", "Doe")).thenReturn(Optional.of(user));
+
+        // Act
+        BankUserDetails userDetails = (BankUserDetails) userDetailsService.loadUserByUsername("John Doe");
+
+        // Assert
+        assertEquals("John Doe", userDetails.getUsername());
+        assertEquals("encoded-password", userDetails.getPassword());
+        assertEquals(7L, userDetails.getId());
+        assertEquals(2, userDetails.getTokenVersion());
+        assertTrue(userDetails.getAuthorities().stream().anyMatch(a -> a.getAuthority().equals("ROLE_ADMIN")));
+    }
+
+    @Test
+    void loadUserByUsername_Repeated_ShouldQueryDatabaseOnce() {
+        // Arrange
+        when(userRepository.findByFirstNameAndLastName("John", "Doe")).thenReturn(Optional.of(user));
+
+        // Act
+        UserDetails first = userDetailsService.loadUserByUsername("John Doe");
+        UserDetails second = userDetailsService.loadUserByUsername("John Doe");
+
+        // Assert
+        assertNotSame(first, second);
+        assertEquals(first.getPassword(), second.getPassword());
+        verify(userRepository, times(1)).findByFirstNameAndLastName("John", "Doe");
+        assertEquals(1, meterRegistry.counter("bank.user.details.cache", "result", "hit").count());
+    }
+
+    @Test
+    void loadUserByUsername_AfterEvict_ShouldQueryDatabaseAgain() {
+        // Arrange
+        when(userRepository.findByFirstNameAndLastName("John", "Doe")).thenReturn(Optional.of(user));
+        userDetailsService.loadUserByUsername("John Doe");
+
+        // Act
+        userDetailsService.evict(user);
+        userDetailsService.loadUserByUsername("John Doe");
+
+        // Assert
+        verify(userRepository, times(2)).findByFirstNameAndLastName("John", "Doe");
+    }
+
+    @Test
+    void loadUserByUsername_ExpiredEntry_ShouldQueryDatabaseAgain() {
+        // Arrange
+        cacheConfig.setTtl(Duration.ZERO);
+        when(userRepository.findByFirstNameAndLastName("John", "Doe")).thenReturn(Optional.of(user));
+
+        // Act
+        userDetailsService.loadUserByUsername("John Doe");
+        userDetailsService.loadUserByUsername("John Doe");
+
+        // Assert
+        verify(userRepository, times(2)).findByFirstNameAndLastName("John", "Doe");
+    }
+
+    @Test
+    void loadUserByUsername_UnknownUser_ShouldThrowAndNotCache() {
+        // Arrange
+        when(userRepository.findByFirstNameAndLastName("John", "Doe")).thenReturn(Optional.empty());
+
+        // Act & Assert
+        assertThrows(UsernameNotFoundException.class, () -> userDetailsService.loadUserByUsername("John Doe"));
+        assertThrows(UsernameNotFoundException.class, () -> userDetailsService.loadUserByUsername("John Doe"));
+        verify(userRepository, times(2)).findByFirstNameAndLastName("John", "Doe");
+    }
+
+    @Test
+    void loadUserByUsername_NameAbsentFromFilter_ShouldNotQueryDatabase() {
+        // Arrange
+        when(userNameFilter.mightExist("Unknown", "Person")).thenReturn(false);
+
+        // Act & Assert
+        assertThrows(UsernameNotFoundException.class, () -> userDetailsService.loadUserByUsername("Unknown Person"));
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void authenticate_Twice_ShouldSucceedFromCacheAfterCredentialsAreErased() {
+        // Arrange
+        BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder(4);
+        user.setPassword(passwordEncoder.encode("password123"));
+        when(userRepository.findByFirstNameAndLastName("John", "Doe")).thenReturn(Optional.of(user));
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+        provider.setUserDetailsService(userDetailsService);
+        provider.setPasswordEncoder(passwordEncoder);
+        AuthenticationManager authenticationManager = new ProviderManager(provider);
+
+        // Act
+        authenticationManager.authenticate(new UsernamePasswordAuthenticationToken("John Doe", "password123"));
+        Authentication authentication = authenticationManager.authenticate(new UsernamePasswordAuthenticationToken("John Doe", "password123"));
+
+        // Assert
+        BankUserDetails principal = (BankUserDetails) authentication.getPrincipal();
+        assertNull(principal.getPassword());
+        assertEquals(7L, principal.toUser().getId());
+        verify(userRepository, times(1)).findByFirstNameAndLastName("John", "Doe");
+    }
+}
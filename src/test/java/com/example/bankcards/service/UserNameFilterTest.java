@@ -0,0 +1,122 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.UserNameFilterConfig;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Фильтр имён строится потоковым запросом из БД и отвечает "точно нет" только для имён, которых в БД нет
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@Import({UserNameFilter.class, UserNameFilterConfig.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class UserNameFilterTest {
+
+    @Autowired
+    private UserNameFilter userNameFilter;
+
+    @Autowired
+    private UserNameFilterConfig config;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @BeforeEach
+    void setUp() {
+        userRepository.save(new User("encoded-password", "John", "Doe", Role.ROLE_USER));
+        userRepository.save(new User("encoded-password", "Jane Ann", "Smith", Role.ROLE_ADMIN));
+    }
+
+    @AfterEach
+    void tearDown() {
+        userRepository.deleteAll();
+        config.setEnabled(true);
+    }
+
+    @Test
+    void mightExist_BeforeRebuild_ShouldAlwaysAnswerMaybe() {
+        // Arrange
+        UserNameFilter notBuilt = new UserNameFilter(userRepository, config, new SimpleMeterRegistry());
+
+        // Act & Assert
+        assertTrue(notBuilt.mightExist("Unknown", "Person"));
+    }
+
+    @Test
+    void rebuild_ShouldContainAllExistingNames() {
+        // Act
+        userNameFilter.rebuild();
+
+        // Assert
+        assertTrue(userNameFilter.mightExist("John", "Doe"));
+        assertTrue(userNameFilter.mightExist("Jane Ann", "Smith"));
+        assertFalse(userNameFilter.mightExist("Unknown", "Person"));
+    }
+
+    @Test
+    void added_ShouldMakeNameVisibleWithoutRebuild() {
+        // Arrange
+        userNameFilter.rebuild();
+
+        // Act
+        userNameFilter.added("New", "User");
+
+        // Assert
+        assertTrue(userNameFilter.mightExist("New", "User"));
+    }
+
+    @Test
+    void refresh_ShouldPickUpUsersCreatedElsewhere() {
+        // Arrange
+        userNameFilter.rebuild();
+        userRepository.save(new User("encoded-password", "Other", "Instance", Role.ROLE_USER));
+        assertFalse(userNameFilter.mightExist("Other", "Instance"));
+
+        // Act
+        userNameFilter.refresh();
+
+        // Assert
+        assertTrue(userNameFilter.mightExist("Other", "Instance"));
+    }
+
+    @Test
+    void mightExist_Disabled_ShouldAlwaysAnswerMaybe() {
+        // Arrange
+        userNameFilter.rebuild();
+        config.setEnabled(false);
+
+        // Act & Assert
+        assertTrue(userNameFilter.mightExist("Unknown", "Person"));
+    }
+
+    @Test
+    void bloomFilter_ShouldKeepFalsePositiveRateNearTarget() {
+        // Arrange
+        UserNameFilter.BloomFilter filter = new UserNameFilter.BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) filter.put("User" + i + " Existing");
+
+        // Act
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("User" + i + " Absent")) falsePositives++;
+        }
+
+        // Assert
+        for (int i = 0; i < 10_000; i++) assertTrue(filter.mightContain("User" + i + " Existing"));
+        assertTrue(falsePositives < 2_000, "false positives: " + falsePositives);
+    }
+}
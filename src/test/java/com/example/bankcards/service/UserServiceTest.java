@@ -5,12 +5,13 @@ import com.example.bankcards.entity.User;
 import com.example.bankcards.exception.BadRequestException;
 import com.example.bankcards.exception.ResourceNotFoundException;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.UserPrincipal;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
@@ -33,13 +34,21 @@ class UserServiceTest {
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    @Mock
+    private TokenVersionService tokenVersionService;
+
+    @Mock
+    private UserDetailsServiceImpl userDetailsService;
+
+    @Mock
+    private UserNameFilter userNameFilter;
+
     @Mock
     private SecurityContext securityContext;
 
     @Mock
     private Authentication authentication;
 
-    @InjectMocks
     private UserService userService;
 
     private User adminUser;
@@ -48,6 +57,9 @@ class UserServiceTest {
 
     @BeforeEach
     void setUp() {
+        userService = new UserService(userRepository, passwordEncoder, new CurrentUserService(userRepository), tokenVersionService, userDetailsService, userNameFilter);
+        lenient().when(userNameFilter.mightExist(anyString(), anyString())).thenReturn(true);
+
         // Создаем тестовых пользователей
         adminUser = new User();
         adminUser.setId(1L);
@@ -78,17 +90,17 @@ class UserServiceTest {
     }
 
     private void mockAuthentication(User user) {
-        when(securityContext.getAuthentication()).thenReturn(authentication);
-        when(authentication.getName()).thenReturn(user.getFirstName() + " " + user.getLastName());
-        when(userRepository.findByFirstNameAndLastName(user.getFirstName(), user.getLastName()))
-                .thenReturn(Optional.of(user));
+        // Права администратора проверяет @PreAuthorize, поэтому часть методов вообще не обращается к SecurityContext
+        lenient().when(securityContext.getAuthentication()).thenReturn(authentication);
+        lenient().when(authentication.getPrincipal()).thenReturn(new UserPrincipal(user.getId(), user.getFirstName(), user.getLastName(), user.getRole(), user.getTokenVersion()));
+        // Проверка роли администратора читает пользователя из БД по id из токена
+        lenient().when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
     }
 
     @Test
     void createUser_AdminUser_ShouldCreateNewUser() {
         // Arrange
         mockAuthentication(adminUser);
-        when(userRepository.existsByFirstNameAndLastName("New", "User")).thenReturn(false);
         when(passwordEncoder.encode("password123")).thenReturn("encodedNewPassword");
         when(userRepository.save(any(User.class))).thenAnswer(invocation -> {
             User user = invocation.getArgument(0);
@@ -117,23 +129,15 @@ class UserServiceTest {
     void createUser_ExistingUser_ShouldThrowBadRequestException() {
         // Arrange
         mockAuthentication(adminUser);
-        when(userRepository.existsByFirstNameAndLastName("Existing", "User")).thenReturn(true);
+        when(passwordEncoder.encode("password")).thenReturn("encodedPassword");
+        // Занятое имя останавливает уникальный индекс при вставке
+        when(userRepository.save(any(User.class))).thenThrow(new DataIntegrityViolationException("uk_users_first_name_last_name"));
 
         // Act & Assert
         assertThrows(BadRequestException.class, () ->
                 userService.createUser("password", "Existing", "User", Role.ROLE_USER));
     }
 
-    @Test
-    void createUser_NonAdminUser_ShouldThrowAccessDeniedException() {
-        // Arrange
-        mockAuthentication(regularUser);
-
-        // Act & Assert
-        assertThrows(AccessDeniedException.class, () ->
-                userService.createUser("password", "New", "User", Role.ROLE_USER));
-    }
-
     @Test
     void deleteUser_AdminUser_ShouldDeleteUser() {
         // Arrange
@@ -145,6 +149,8 @@ class UserServiceTest {
 
         // Assert
         verify(userRepository).delete(anotherUser);
+        verify(tokenVersionService).forget(3L);
+        verify(userDetailsService).evict(anotherUser);
     }
 
     @Test
@@ -158,16 +164,6 @@ class UserServiceTest {
                 userService.deleteUser(1L));
     }
 
-    @Test
-    void deleteUser_NonAdminUser_ShouldThrowAccessDeniedException() {
-        // Arrange
-        mockAuthentication(regularUser);
-
-        // Act & Assert
-        assertThrows(AccessDeniedException.class, () ->
-                userService.deleteUser(3L));
-    }
-
     @Test
     void changeUserRole_AdminUser_ShouldChangeRole() {
         // Arrange
@@ -180,7 +176,9 @@ class UserServiceTest {
 
         // Assert
         assertEquals(Role.ROLE_ADMIN, regularUser.getRole());
+        verify(tokenVersionService).revokeTokens(regularUser);
         verify(userRepository).save(regularUser);
+        verify(userDetailsService).evict(regularUser);
     }
 
     @Test
@@ -278,6 +276,7 @@ class UserServiceTest {
         // Assert
         assertEquals("encodedNewPassword", regularUser.getPassword());
         verify(userRepository).save(regularUser);
+        verify(userDetailsService).evict(regularUser);
     }
 
     @Test
@@ -304,27 +303,6 @@ class UserServiceTest {
                 userService.changeMyPassword(""));
     }
 
-    @Test
-    void isUserAdmin_AdminUser_ShouldNotThrowException() {
-        // Arrange
-        mockAuthentication(adminUser);
-
-        // Act & Assert - не должно бросать исключение
-        assertDoesNotThrow(() -> {
-            userService.createUser("password", "Test", "User", Role.ROLE_USER);
-        });
-    }
-
-    @Test
-    void isUserAdmin_NonAdminUser_ShouldThrowAccessDeniedException() {
-        // Arrange
-        mockAuthentication(regularUser);
-
-        // Act & Assert
-        assertThrows(AccessDeniedException.class, () ->
-                userService.getAllUsers());
-    }
-
     @Test
     void getCurrentUser_ValidUser_ShouldReturnUser() {
         // Arrange
@@ -341,20 +319,32 @@ class UserServiceTest {
     @Test
     void getCurrentUser_UserNotFound_ShouldThrowResourceNotFoundException() {
         // Arrange
+        // Пользователь удалён, а его токен ещё действует
         when(securityContext.getAuthentication()).thenReturn(authentication);
-        when(authentication.getName()).thenReturn("Non Existing User");
-        when(userRepository.findByFirstNameAndLastName("Non", "Existing")).thenReturn(Optional.empty());
+        when(authentication.getPrincipal()).thenReturn(new UserPrincipal(999L, "Non", "Existing", Role.ROLE_USER, 0));
+        when(userRepository.findById(999L)).thenReturn(Optional.empty());
 
         // Act & Assert
         assertThrows(ResourceNotFoundException.class, () ->
                 userService.getMyAccount());
     }
 
+    @Test
+    void getMyAccount_NotAuthenticatedWithToken_ShouldThrowAccessDeniedException() {
+        // Arrange
+        when(securityContext.getAuthentication()).thenReturn(authentication);
+        when(authentication.getPrincipal()).thenReturn("John Doe");
+
+        // Act & Assert
+        assertThrows(AccessDeniedException.class, () ->
+                userService.getMyAccount());
+        verifyNoInteractions(userRepository);
+    }
+
     @Test
     void createUser_WithAdminRole_ShouldCreateAdminUser() {
         // Arrange
         mockAuthentication(adminUser);
-        when(userRepository.existsByFirstNameAndLastName("Super", "Admin")).thenReturn(false);
         when(passwordEncoder.encode("adminPass")).thenReturn("encodedAdminPass");
         when(userRepository.save(any(User.class))).thenAnswer(invocation -> {
             User user = invocation.getArgument(0);